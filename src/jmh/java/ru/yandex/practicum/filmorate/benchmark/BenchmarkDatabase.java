@@ -0,0 +1,229 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.FriendsIndex;
+import ru.yandex.practicum.filmorate.service.PopularityIndex;
+import ru.yandex.practicum.filmorate.service.RecommendationIndex;
+import ru.yandex.practicum.filmorate.service.SearchIndex;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.friends.DbFriendsStorage;
+import ru.yandex.practicum.filmorate.storage.review.DbReviewStorage;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts the application without the web layer and seeds it with generated data.
+ * Volumes are JMH parameters, e.g. -p films=100000 -p likesPerUser=50.
+ * The profile parameter picks the database: "ci" is in-memory H2, "default" is the Postgres from docker-compose.
+ * Seeding deletes everything the application has in that database.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+    static final String[] WORDS = {"dark", "night", "love", "star", "river", "city", "king", "ghost", "summer",
+            "winter", "road", "secret", "last", "blue", "iron", "dream", "storm", "garden", "silent", "wild"};
+    private static final int BATCH_SIZE = 1000;
+
+    @Param("ci")
+    public String profile;
+
+    @Param("10000")
+    public int films;
+
+    @Param("10000")
+    public int users;
+
+    @Param("20")
+    public int likesPerUser;
+
+    @Param("20")
+    public int friendsPerUser;
+
+    @Param("5")
+    public int reviewsPerFilm;
+
+    FilmService filmService;
+    UserService userService;
+    DbFriendsStorage friendsStorage;
+    DbReviewStorage reviewStorage;
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(profile)
+                .run("--logging.level.root=warn",
+                        "--logging.level.org.springframework.jdbc.core=warn",
+                        "--logging.level.org.springframework.web.servlet.DispatcherServlet=warn");
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        filmService = context.getBean(FilmService.class);
+        userService = context.getBean(UserService.class);
+        friendsStorage = context.getBean(DbFriendsStorage.class);
+        reviewStorage = context.getBean(DbReviewStorage.class);
+
+        clean();
+        seedUsers();
+        seedFilms();
+        seedLikes();
+        seedFriends();
+        seedReviews();
+        context.getBean(PopularityIndex.class).rebuild();
+        context.getBean(RecommendationIndex.class).rebuild();
+        context.getBean(SearchIndex.class).rebuild();
+        context.getBean(FriendsIndex.class).rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    long randomUserId() {
+        return ThreadLocalRandom.current().nextLong(users) + 1;
+    }
+
+    long randomFilmId() {
+        return ThreadLocalRandom.current().nextLong(films) + 1;
+    }
+
+    String randomWord() {
+        return WORDS[ThreadLocalRandom.current().nextInt(WORDS.length)];
+    }
+
+    private void clean() {
+        for (String table : List.of("events", "review_like", "review", "likes", "friends", "film_directors",
+                "film_genre", "films", "director", "filmorate_users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    private void seedUsers() {
+        List<Object[]> rows = new ArrayList<>();
+        for (long id = 1; id <= users; id++) {
+            rows.add(new Object[]{id, "user" + id + "@mail.ru", "user" + id, "User " + id,
+                    Date.valueOf(LocalDate.of(1970, 1, 1).plusDays(random.nextInt(15000)))});
+        }
+        insert("INSERT INTO filmorate_users (user_id, email, login, name, birthday) VALUES (?, ?, ?, ?, ?)", rows);
+    }
+
+    private void seedFilms() {
+        List<Long> mpaIds = jdbcTemplate.queryForList("SELECT mpa_id FROM mpa", Long.class);
+        List<Long> genreIds = jdbcTemplate.queryForList("SELECT genre_id FROM genre", Long.class);
+        int directors = Math.max(1, films / 10);
+
+        List<Object[]> rows = new ArrayList<>();
+        for (long id = 1; id <= directors; id++) {
+            rows.add(new Object[]{id, randomName() + " " + id});
+        }
+        insert("INSERT INTO director (director_id, name) VALUES (?, ?)", rows);
+
+        rows = new ArrayList<>();
+        List<Object[]> filmGenres = new ArrayList<>();
+        List<Object[]> filmDirectors = new ArrayList<>();
+        for (long id = 1; id <= films; id++) {
+            rows.add(new Object[]{id, randomName() + " " + randomName() + " " + id, "Description of film " + id,
+                    Date.valueOf(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(27000))),
+                    60 + random.nextInt(120), mpaIds.get(random.nextInt(mpaIds.size()))});
+            int first = random.nextInt(genreIds.size());
+            filmGenres.add(new Object[]{id, genreIds.get(first)});
+            if (random.nextBoolean()) {
+                filmGenres.add(new Object[]{id, genreIds.get((first + 1) % genreIds.size())});
+            }
+            filmDirectors.add(new Object[]{id, (long) random.nextInt(directors) + 1});
+        }
+        insert("INSERT INTO films (film_id, name, description, release_date, duration, mpa_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", rows);
+        insert("INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)", filmGenres);
+        insert("INSERT INTO film_directors (film_id, director_id) VALUES (?, ?)", filmDirectors);
+    }
+
+    // Likes are skewed towards low film ids, so there is a clear top and a long tail like in real data
+    private void seedLikes() {
+        List<Object[]> rows = new ArrayList<>();
+        for (long userId = 1; userId <= users; userId++) {
+            Set<Long> liked = new HashSet<>();
+            while (liked.size() < Math.min(likesPerUser, films)) {
+                liked.add((long) (films * Math.pow(random.nextDouble(), 3)) + 1);
+            }
+            for (Long filmId : liked) {
+                rows.add(new Object[]{filmId, userId});
+            }
+        }
+        insert("INSERT INTO likes (film_id, user_id) VALUES (?, ?)", rows);
+        jdbcTemplate.update("UPDATE films SET like_count = " +
+                "(SELECT COUNT(*) FROM likes WHERE likes.film_id = films.film_id)");
+    }
+
+    private void seedFriends() {
+        List<Object[]> rows = new ArrayList<>();
+        for (long userId = 1; userId <= users; userId++) {
+            Set<Long> friends = new HashSet<>();
+            while (friends.size() < Math.min(friendsPerUser, users - 1)) {
+                long friendId = random.nextInt(users) + 1;
+                if (friendId != userId) {
+                    friends.add(friendId);
+                }
+            }
+            for (Long friendId : friends) {
+                rows.add(new Object[]{userId, friendId});
+            }
+        }
+        insert("INSERT INTO friends (user1_id, user2_id) VALUES (?, ?)", rows);
+    }
+
+    private void seedReviews() {
+        List<Object[]> rows = new ArrayList<>();
+        List<Object[]> reviewLikes = new ArrayList<>();
+        long reviewId = 0;
+        for (long filmId = 1; filmId <= films; filmId++) {
+            for (int i = 0; i < reviewsPerFilm; i++) {
+                reviewId++;
+                rows.add(new Object[]{reviewId, "Review " + reviewId + " of film " + filmId, random.nextBoolean(),
+                        (long) random.nextInt(users) + 1, filmId});
+                Set<Long> raters = new HashSet<>();
+                int ratings = random.nextInt(Math.min(6, users + 1));
+                while (raters.size() < ratings) {
+                    raters.add((long) random.nextInt(users) + 1);
+                }
+                for (Long userId : raters) {
+                    reviewLikes.add(new Object[]{userId, reviewId, random.nextBoolean()});
+                }
+            }
+        }
+        insert("INSERT INTO review (review_id, content, is_positive, user_id, film_id) VALUES (?, ?, ?, ?, ?)", rows);
+        insert("INSERT INTO review_like (user_id, review_id, is_liked) VALUES (?, ?, ?)", reviewLikes);
+        jdbcTemplate.update("UPDATE review SET useful = COALESCE((SELECT SUM(CASE WHEN is_liked THEN 1 ELSE -1 END) " +
+                "FROM review_like WHERE review_like.review_id = review.review_id), 0)");
+    }
+
+    private String randomName() {
+        String word = WORDS[random.nextInt(WORDS.length)];
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    private void insert(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FilmBenchmark {
+
+    @Benchmark
+    public List<Film> getTopFilms(BenchmarkDatabase database) {
+        return database.filmService.getTopFilms(10);
+    }
+
+    @Benchmark
+    public List<Film> getSearch(BenchmarkDatabase database) {
+        return database.filmService.getSearch(database.randomWord(), "title,director", 0, 10);
+    }
+
+    @Benchmark
+    public List<Film> getFilms(BenchmarkDatabase database) {
+        return database.filmService.getFilms(database.randomFilmId(), 100);
+    }
+}
@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UserBenchmark {
+
+    @Benchmark
+    public List<Film> recomendFilms(BenchmarkDatabase database) {
+        return database.userService.recomendFilms(database.randomUserId());
+    }
+
+    // the query UserService falls back to when the friends index is off
+    @Benchmark
+    public List<User> getCommonFriendsQuery(BenchmarkDatabase database) {
+        return database.friendsStorage.getCommonFriends(database.randomUserId(), database.randomUserId());
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends(BenchmarkDatabase database) {
+        return database.userService.getCommonFriends(database.randomUserId(), database.randomUserId());
+    }
+}
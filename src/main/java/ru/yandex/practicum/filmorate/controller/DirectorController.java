@@ -2,9 +2,13 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.ResourceVersions;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -14,22 +18,29 @@ import java.util.List;
 @RequestMapping("/directors")
 public class DirectorController {
     private final DirectorService directorService;
+    private final ResourceVersions resourceVersions;
 
     @Autowired
-    public DirectorController(DirectorService directorService) {
+    public DirectorController(DirectorService directorService, ResourceVersions resourceVersions) {
         this.directorService = directorService;
+        this.resourceVersions = resourceVersions;
     }
 
     @GetMapping
-    public List<Director> getAll() {
+    public ResponseEntity<List<Director>> getAll(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                 String ifNoneMatch) {
         log.info("GET request");
-        return directorService.getAllDirectors();
+        return ConditionalGet.of(ifNoneMatch, resourceVersions.directorsTag(), CacheControl.noCache(),
+                directorService::getAllDirectors);
     }
 
     @GetMapping("/{id}")
-    public Director getDirector(@PathVariable Long id) {
+    public ResponseEntity<Director> getDirector(@PathVariable Long id,
+                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                String ifNoneMatch) {
         log.info("GET request /{}", id);
-        return directorService.getDirectorById(id);
+        return ConditionalGet.of(ifNoneMatch, resourceVersions.directorTag(id), CacheControl.noCache(),
+                () -> directorService.getDirectorById(id));
     }
 
     @PostMapping
@@ -1,14 +1,27 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeOperationResult;
+import ru.yandex.practicum.filmorate.service.FilmImporter;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.ResourceVersions;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Positive;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -16,10 +29,17 @@ import java.util.List;
 @RequestMapping("/films")
 public class FilmController {
     private final FilmService filmService;
+    private final FilmImporter filmImporter;
+    private final ObjectMapper objectMapper;
+    private final ResourceVersions resourceVersions;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, FilmImporter filmImporter, ObjectMapper objectMapper,
+                          ResourceVersions resourceVersions) {
         this.filmService = filmService;
+        this.filmImporter = filmImporter;
+        this.objectMapper = objectMapper;
+        this.resourceVersions = resourceVersions;
     }
 
     @PostMapping
@@ -35,10 +55,37 @@ public class FilmController {
     }
 
     @GetMapping
-    public List<Film> getFilms() {
-        List<Film> films = filmService.getFilms();
-        log.info("Currently {} films saved.", films.size());
-        return films;
+    public List<Film> getFilms(@RequestParam(required = false) Integer limit,
+                               @RequestParam(required = false, defaultValue = "0") Long after) {
+        if (limit == null) {
+            List<Film> films = filmService.getFilms();
+            log.info("Currently {} films saved.", films.size());
+            return films;
+        }
+        log.info("Getting {} films after id {}", limit, after);
+        return filmService.getFilms(after, limit);
+    }
+
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamFilms(@RequestParam(required = false) String view) {
+        log.info("Streaming all films");
+        return JsonArrayStream.of(objectMapper.writer(FilmViews.filters(view)), filmService::streamFilms);
+    }
+
+    /**
+     * Bulk import, one film per line in the POST /films format. Returns how many films were imported
+     * and why the rest of the lines were rejected.
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public FilmImportResult importFilms(InputStream body) throws IOException {
+        log.info("Importing films");
+        return filmImporter.importFilms(body);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportFilms() {
+        log.info("Exporting all films");
+        return NdjsonStream.of(objectMapper, filmService::streamFilms);
     }
 
     @PutMapping("/{filmId}/like/{userId}")
@@ -53,6 +100,16 @@ public class FilmController {
         filmService.removeLike(filmId, userId);
     }
 
+    /**
+     * Likes and unlikes replayed by clients in bulk, e.g. [{"filmId": 1, "userId": 2, "operation": "ADD"}].
+     * Returns a result per operation in request order.
+     */
+    @PostMapping("/likes")
+    public List<LikeOperationResult> applyLikes(@NotNull @RequestBody List<LikeOperation> operations) {
+        log.info("Applying {} like operations", operations.size());
+        return filmService.applyLikes(operations);
+    }
+
     @GetMapping("/popular")
     public List<Film> findPopularFilms(@RequestParam(required = false, defaultValue = "10") Integer count,
                                        @RequestParam(required = false, defaultValue = "0") Long genreId,
@@ -68,15 +125,23 @@ public class FilmController {
 
     @GetMapping("/search")
     public List<Film> findPopularFilms(@RequestParam(defaultValue = "10") String query,
-                                       @RequestParam(required = false, defaultValue = "title") String by) {
-        log.info("Search films. Text: {}, by: {}", query, by);
-        return filmService.getSearch(query, by);
+                                       @RequestParam(required = false, defaultValue = "title") String by,
+                                       @RequestParam(defaultValue = "0") Integer offset,
+                                       @RequestParam(required = false) Integer limit) {
+        log.info("Search films. Text: {}, by: {}, offset: {}, limit: {}", query, by, offset, limit);
+        return filmService.getSearch(query, by, offset, limit);
     }
 
+    /**
+     * Clients poll a film with If-None-Match; while its tag is unchanged they get 304 without a storage call.
+     */
     @GetMapping("/{id}")
-    public Film findFilm(@PathVariable Long id) {
+    public ResponseEntity<Film> findFilm(@PathVariable Long id,
+                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                         String ifNoneMatch) {
         log.info("Looking for film ID {}", id);
-        return filmService.findFilm(id);
+        return ConditionalGet.of(ifNoneMatch, resourceVersions.filmTag(id), CacheControl.noCache(),
+                () -> filmService.findFilm(id));
     }
 
     @GetMapping("/common")
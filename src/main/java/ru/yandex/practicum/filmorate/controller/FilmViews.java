@@ -0,0 +1,135 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.AbstractMappingJacksonResponseBodyAdvice;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmSummaries;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Film views picked with ?view= on any endpoint that returns a film or a collection of films; other endpoints
+ * ignore the parameter. full, the default, writes the film as stored; summary writes the stored like_count
+ * in place of the likes list, which grows with the film's popularity, and the likes are not read for it.
+ * The view is applied by a Jackson filter while the response is written, so no copies of the films are made.
+ */
+@ControllerAdvice
+public class FilmViews extends AbstractMappingJacksonResponseBodyAdvice
+        implements Jackson2ObjectMapperBuilderCustomizer, HandlerInterceptor, WebMvcConfigurer {
+    private static final String VIEW_PARAMETER = "view";
+    private static final FilterProvider FULL = new SimpleFilterProvider()
+            .addFilter(Film.VIEW_FILTER, SimpleBeanPropertyFilter.serializeAll());
+    private static final FilterProvider SUMMARY = new SimpleFilterProvider()
+            .addFilter(Film.VIEW_FILTER, new SummaryFilter());
+
+    private final FilmSummaries filmSummaries;
+
+    @Autowired
+    public FilmViews(FilmSummaries filmSummaries) {
+        this.filmSummaries = filmSummaries;
+    }
+
+    static FilterProvider filters(String view) {
+        if (view == null) {
+            return FULL;
+        }
+        switch (view.toLowerCase(Locale.ROOT)) {
+            case "full":
+                return FULL;
+            case "summary":
+                return SUMMARY;
+            default:
+                throw new IllegalArgumentException("Unknown view: " + view);
+        }
+    }
+
+    // writers that get no filters from a request, e.g. the streams, write the full view
+    @Override
+    public void customize(Jackson2ObjectMapperBuilder builder) {
+        builder.filters(FULL);
+    }
+
+    static boolean isFilmBody(MethodParameter returnType) {
+        ResolvableType type = ResolvableType.forMethodParameter(returnType);
+        if (HttpEntity.class.isAssignableFrom(type.toClass())) {
+            type = type.as(HttpEntity.class).getGeneric(0);
+        }
+        if (Collection.class.isAssignableFrom(type.toClass())) {
+            type = type.asCollection().getGeneric(0);
+        }
+        return Film.class.isAssignableFrom(type.toClass());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this);
+    }
+
+    // the view is checked before the handler runs, so an unknown one is a 400 and a summary skips reading likes
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod && isFilmBody(((HandlerMethod) handler).getReturnType())
+                && filters(request.getParameter(VIEW_PARAMETER)) == SUMMARY) {
+            filmSummaries.begin();
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        filmSummaries.end();
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return super.supports(returnType, converterType) && isFilmBody(returnType);
+    }
+
+    @Override
+    protected void beforeBodyWriteInternal(MappingJacksonValue bodyContainer, MediaType contentType,
+                                           MethodParameter returnType, ServerHttpRequest request,
+                                           ServerHttpResponse response) {
+        if (request instanceof ServletServerHttpRequest) {
+            String view = ((ServletServerHttpRequest) request).getServletRequest().getParameter(VIEW_PARAMETER);
+            bodyContainer.setFilters(filters(view));
+        }
+    }
+
+    private static class SummaryFilter extends SimpleBeanPropertyFilter {
+        @Override
+        public void serializeAsField(Object pojo, JsonGenerator generator, SerializerProvider provider,
+                                     PropertyWriter writer) throws Exception {
+            if (!"likes".equals(writer.getName())) {
+                writer.serializeAsField(pojo, generator, provider);
+                return;
+            }
+            generator.writeNumberField("likeCount", ((Film) pojo).getLikeCount());
+        }
+    }
+}
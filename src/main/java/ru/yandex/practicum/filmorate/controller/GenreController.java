@@ -2,13 +2,20 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.ResourceVersions;
 
+import java.time.Duration;
 import java.util.List;
 
 @Slf4j
@@ -17,19 +24,30 @@ import java.util.List;
 public class GenreController {
 
     private final GenreService genreService;
+    private final ResourceVersions resourceVersions;
+    private final CacheControl cacheControl;
 
+    // the tables only change with a migration, so clients may keep them without asking
     @Autowired
-    public GenreController(GenreService genreService) {
+    public GenreController(GenreService genreService, ResourceVersions resourceVersions,
+                           @Value("${filmorate.http.reference-max-age:PT1H}") Duration maxAge) {
         this.genreService = genreService;
+        this.resourceVersions = resourceVersions;
+        this.cacheControl = CacheControl.maxAge(maxAge);
     }
 
     @GetMapping
-    public List<Genre> getAllMpa() {
-        return genreService.getAllGenres();
+    public ResponseEntity<List<Genre>> getAllMpa(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return ConditionalGet.of(ifNoneMatch, resourceVersions.referenceTag(), cacheControl,
+                genreService::getAllGenres);
     }
 
     @GetMapping("/{genreId}")
-    public Genre findGenre(@PathVariable Long genreId) {
-        return genreService.findGenre(genreId);
+    public ResponseEntity<Genre> findGenre(
+            @PathVariable Long genreId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return ConditionalGet.of(ifNoneMatch, resourceVersions.referenceTag(), cacheControl,
+                () -> genreService.findGenre(genreId));
     }
 }
@@ -2,13 +2,20 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.service.MpaService;
+import ru.yandex.practicum.filmorate.service.ResourceVersions;
 
+import java.time.Duration;
 import java.util.List;
 
 @Slf4j
@@ -16,19 +23,29 @@ import java.util.List;
 @RestController
 public class MpaController {
     private final MpaService mpaService;
+    private final ResourceVersions resourceVersions;
+    private final CacheControl cacheControl;
 
+    // the tables only change with a migration, so clients may keep them without asking
     @Autowired
-    public MpaController(MpaService mpaService) {
+    public MpaController(MpaService mpaService, ResourceVersions resourceVersions,
+                         @Value("${filmorate.http.reference-max-age:PT1H}") Duration maxAge) {
         this.mpaService = mpaService;
+        this.resourceVersions = resourceVersions;
+        this.cacheControl = CacheControl.maxAge(maxAge);
     }
 
     @GetMapping
-    public List<Mpa> getAllMpa() {
-        return mpaService.getAllMpa();
+    public ResponseEntity<List<Mpa>> getAllMpa(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return ConditionalGet.of(ifNoneMatch, resourceVersions.referenceTag(), cacheControl, mpaService::getAllMpa);
     }
 
     @GetMapping("/{mpaId}")
-    public Mpa findMpa(@PathVariable Long mpaId) {
-        return mpaService.findMpa(mpaId);
+    public ResponseEntity<Mpa> findMpa(
+            @PathVariable Long mpaId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return ConditionalGet.of(ifNoneMatch, resourceVersions.referenceTag(), cacheControl,
+                () -> mpaService.findMpa(mpaId));
     }
 }
@@ -2,8 +2,10 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewPage;
 import ru.yandex.practicum.filmorate.service.ReviewService;
 
 import javax.validation.Valid;
@@ -14,6 +16,7 @@ import java.util.List;
 @RestController
 @Slf4j
 public class ReviewController {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
     private final ReviewService reviewService;
 
@@ -46,14 +49,23 @@ public class ReviewController {
         return reviewService.getReview(id);
     }
 
+    /**
+     * Reviews sorted by usefulness. When there are more, the X-Next-Cursor header holds the cursor
+     * to pass back for the next page.
+     */
     @GetMapping()
-    public List<Review> getFilmReviews(@RequestParam(required = false) Long filmId, @RequestParam(required = false, defaultValue = "10") Integer count) {
-        log.info("Looking for {} reviews of film id {}", count, filmId);
-        if (filmId == null) {
-            return reviewService.getReviews(count);
-        } else {
-            return reviewService.getFilmReviews(filmId, count);
+    public ResponseEntity<List<Review>> getFilmReviews(@RequestParam(required = false) Long filmId,
+                                                       @RequestParam(required = false, defaultValue = "10") Integer count,
+                                                       @RequestParam(required = false) String cursor) {
+        log.info("Looking for {} reviews of film id {} after cursor {}", count, filmId, cursor);
+        ReviewPage page = filmId == null
+                ? reviewService.getReviews(count, cursor)
+                : reviewService.getFilmReviews(filmId, count, cursor);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
         }
+        return response.body(page.getReviews());
     }
 
     @PutMapping("/{id}/like/{userId}")
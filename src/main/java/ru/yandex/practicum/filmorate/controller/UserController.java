@@ -1,8 +1,11 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
@@ -17,17 +20,30 @@ import java.util.List;
 @RestController
 public class UserController {
     private final UserService userService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
-    public List<User> getUsers() {
-        List<User> users = userService.getUsers();
-        log.info("Currently {} users registered.", users.size());
-        return users;
+    public List<User> getUsers(@RequestParam(required = false) Integer limit,
+                               @RequestParam(required = false, defaultValue = "0") Long after) {
+        if (limit == null) {
+            List<User> users = userService.getUsers();
+            log.info("Currently {} users registered.", users.size());
+            return users;
+        }
+        log.info("Getting {} users after id {}", limit, after);
+        return userService.getUsers(after, limit);
+    }
+
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamUsers() {
+        log.info("Streaming all users");
+        return JsonArrayStream.of(objectMapper.writer(), userService::streamUsers);
     }
 
     @PostMapping
@@ -86,8 +102,11 @@ public class UserController {
     }
 
     @GetMapping("/{id}/feed")
-    public List<Event> getFeed(@PathVariable() Long id) {
-        log.info("Getting feed for user id {}", id);
-        return userService.getFeedForUser(id);
+    public List<Event> getFeed(@PathVariable() Long id,
+                               @RequestParam(required = false) Long since,
+                               @RequestParam(required = false) Long before,
+                               @RequestParam(required = false) Integer limit) {
+        log.info("Getting feed for user id {}, since {}, before {}, limit {}", id, since, before, limit);
+        return userService.getFeedForUser(id, since, before, limit);
     }
 }
\ No newline at end of file
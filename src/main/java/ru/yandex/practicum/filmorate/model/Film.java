@@ -1,5 +1,7 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -17,7 +19,10 @@ import java.util.Set;
 @Data
 @AllArgsConstructor
 @Builder
+@JsonFilter(Film.VIEW_FILTER)
 public class Film {
+    // picks the fields written for a request, see FilmViews
+    public static final String VIEW_FILTER = "filmView";
 
     private long id;
     @NotBlank
@@ -33,6 +38,9 @@ public class Film {
     private Mpa mpa;
     private List<Genre> genres;
     private List<Long> likes;
+    // films.like_count, or the size of likes once they are loaded; written in place of likes by the summary view
+    @JsonIgnore
+    private long likeCount;
     @Builder.Default
     private Set<Director> directors = new HashSet<>();
 }
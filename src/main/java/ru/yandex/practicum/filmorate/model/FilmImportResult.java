@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class FilmImportResult {
+    // only the first errors are listed, rejected counts all of them
+    private static final int MAX_ERRORS = 100;
+
+    private long imported;
+    private long rejected;
+    private final List<String> errors = new ArrayList<>();
+
+    public void reject(long line, String reason) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(String.format("line %s: %s", line, reason));
+        }
+    }
+}
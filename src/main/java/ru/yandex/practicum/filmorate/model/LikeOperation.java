@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * One item of a bulk like request: ADD likes the film, REMOVE takes the like back.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class LikeOperation {
+    private final Long filmId;
+    private final Long userId;
+    private final Operation operation;
+}
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class LikeOperationResult {
+    private final Long filmId;
+    private final Long userId;
+    private final Operation operation;
+    private final Status status;
+
+    public LikeOperationResult(LikeOperation operation, Status status) {
+        this(operation.getFilmId(), operation.getUserId(), operation.getOperation(), status);
+    }
+
+    public enum Status {
+        // the like was added or removed
+        APPLIED,
+        // the film was already liked, or not liked when removing
+        UNCHANGED,
+        NOT_FOUND,
+        // ids or operation missing or not valid
+        INVALID
+    }
+}
@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in a review listing sorted by useful descending, then review id ascending.
+ * Clients get it as an opaque token and pass it back to read the reviews that follow the last one they have.
+ */
+@Data
+@AllArgsConstructor
+public class ReviewCursor {
+    private final int useful;
+    private final long reviewId;
+
+    public static ReviewCursor after(Review review) {
+        return new ReviewCursor(review.getUseful(), review.getReviewId());
+    }
+
+    public static ReviewCursor parse(String token) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(token);
+            }
+            return new ReviewCursor(Integer.parseInt(parts[0]), Long.parseLong(parts[1]));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(String.format("Invalid review cursor %s", token), e);
+        }
+    }
+
+    public String toToken() {
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString((useful + ":" + reviewId).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Published once a user is deleted, for whatever keeps its likes besides the likes table.
+ */
+@Data
+@AllArgsConstructor
+public class UserDeletedEvent {
+    private final Long userId;
+}
@@ -15,10 +15,15 @@ import java.util.List;
 public class DirectorService {
 
     private final DirectorStorage directorStorage;
+    private final SearchIndex searchIndex;
+    private final ResourceVersions resourceVersions;
 
     @Autowired
-    public DirectorService(@Qualifier("dbStorage") DirectorStorage directorStorage) {
+    public DirectorService(@Qualifier("dbStorage") DirectorStorage directorStorage, SearchIndex searchIndex,
+                           ResourceVersions resourceVersions) {
         this.directorStorage = directorStorage;
+        this.searchIndex = searchIndex;
+        this.resourceVersions = resourceVersions;
     }
 
 
@@ -39,16 +44,24 @@ public class DirectorService {
 
     public Director createDirector(Director director) {
         log.info("Create director {}", director);
-        return directorStorage.createDirector(director);
+        Director created = directorStorage.createDirector(director);
+        searchIndex.putDirector(created);
+        resourceVersions.directorChanged(created.getId());
+        return created;
     }
 
     public void deleteDirector(Long id) {
         log.info("Delete director {}", id);
         directorStorage.deleteDirector(id);
+        searchIndex.removeDirector(id);
+        resourceVersions.directorChanged(id);
     }
 
     public Director updateDirector(Director director) {
         log.info("Update director {}", director);
-        return directorStorage.updateDirector(director);
+        Director updated = directorStorage.updateDirector(director);
+        searchIndex.putDirector(updated);
+        resourceVersions.directorChanged(updated.getId());
+        return updated;
     }
 }
\ No newline at end of file
@@ -0,0 +1,212 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.storage.feed.EventStorage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue of feed events drained by one background thread with batch inserts.
+ * A single writer keeps the queue order, so events of one user get increasing ids in the order they were added.
+ * A batch is written once it reaches batchSize, flushInterval after its first event, or as soon as a reader
+ * waits for it. When the queue is full add() blocks until the writer catches up.
+ * Written events, with their ids, are handed to the listener from the writer thread.
+ */
+@Slf4j
+class EventWriter {
+    private final EventStorage eventStorage;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int capacity;
+    private final Consumer<List<Event>> listener;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition written = lock.newCondition();
+    private final Queue<Event> queue = new ArrayDeque<>();
+    private final Map<Long, Integer> pendingByUser = new HashMap<>();
+    private final Thread thread;
+    private long addedCount;
+    private long writtenCount;
+    private int flushWaiters;
+    private boolean running = true;
+
+    EventWriter(EventStorage eventStorage, int batchSize, long flushIntervalMs, int capacity,
+                Consumer<List<Event>> listener) {
+        this.eventStorage = eventStorage;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.capacity = capacity;
+        this.listener = listener;
+        this.thread = new Thread(this::run, "event-writer");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+        log.info("Event writer started, batch size {}, queue capacity {}", batchSize, capacity);
+    }
+
+    void add(Event event) {
+        addAll(List.of(event));
+    }
+
+    /**
+     * Queues the events in order under one lock; blocks while the queue is full like add().
+     */
+    void addAll(List<Event> events) {
+        int queued = 0;
+        lock.lock();
+        try {
+            for (Event event : events) {
+                if (queue.size() >= capacity) {
+                    log.warn("Event queue is full, waiting for the writer");
+                }
+                while (running && queue.size() >= capacity) {
+                    notFull.awaitUninterruptibly();
+                }
+                if (!running) {
+                    break;
+                }
+                queue.add(event);
+                queued++;
+                addedCount++;
+                pendingByUser.merge(event.getUserId(), 1, Integer::sum);
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (queued < events.size()) {
+            // after shutdown there is no writer thread left, so late events are written by the caller
+            write(events.subList(queued, events.size()));
+        }
+    }
+
+    /**
+     * Blocks until every event of the user added so far is written.
+     */
+    void awaitWritten(Long userId) {
+        lock.lock();
+        try {
+            if (!pendingByUser.containsKey(userId)) {
+                return;
+            }
+            long target = addedCount;
+            flushWaiters++;
+            notEmpty.signal();
+            try {
+                while (writtenCount < target) {
+                    written.awaitUninterruptibly();
+                }
+            } finally {
+                flushWaiters--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting events into the queue and waits until the writer has drained it.
+     */
+    void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Event writer stopped, {} events written", writtenCount);
+    }
+
+    private void run() {
+        while (true) {
+            List<Event> batch = nextBatch();
+            if (batch == null) {
+                return;
+            }
+            write(batch);
+            lock.lock();
+            try {
+                writtenCount += batch.size();
+                for (Event event : batch) {
+                    pendingByUser.computeIfPresent(event.getUserId(), (id, count) -> count == 1 ? null : count - 1);
+                }
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private List<Event> nextBatch() {
+        lock.lock();
+        try {
+            while (running && queue.isEmpty()) {
+                notEmpty.awaitUninterruptibly();
+            }
+            if (queue.isEmpty()) {
+                return null;
+            }
+            long deadline = System.nanoTime() + flushIntervalNanos;
+            long remaining = flushIntervalNanos;
+            while (running && queue.size() < batchSize && flushWaiters == 0 && remaining > 0) {
+                try {
+                    notEmpty.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+            List<Event> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+            while (!queue.isEmpty() && batch.size() < batchSize) {
+                batch.add(queue.poll());
+            }
+            notFull.signalAll();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(List<Event> batch) {
+        List<Event> saved;
+        try {
+            saved = eventStorage.addEvents(batch);
+        } catch (RuntimeException e) {
+            log.warn("Batch of {} events failed, writing them one by one: {}", batch.size(), e.getMessage());
+            // one bad row (e.g. a user deleted while its events were queued) must not drop the whole batch
+            saved = new ArrayList<>(batch.size());
+            for (Event event : batch) {
+                try {
+                    saved.addAll(eventStorage.addEvents(List.of(event)));
+                } catch (RuntimeException rowFailure) {
+                    log.error("Event {} dropped: {}", event, rowFailure.getMessage());
+                }
+            }
+        }
+        try {
+            listener.accept(saved);
+        } catch (RuntimeException e) {
+            log.error("Failed to publish {} written events", saved.size(), e);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.storage.datasource.ReadRouting;
+import ru.yandex.practicum.filmorate.storage.feed.EventStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Writes feed events and serves feed pages.
+ * Events are written in the background by an EventWriter; a feed read first waits for the user's own
+ * queued events, so a user always sees what they just did.
+ * The latest events of recently active users are kept in a bounded buffer per user,
+ * so the usual "latest page" request is answered without a query.
+ * Buffers are filled on the first read and then appended to as events are written;
+ * the least recently used buffer is dropped once more than cached-users are kept.
+ */
+@Service
+@Slf4j
+public class FeedService {
+    private final EventStorage eventStorage;
+    private final int recentEvents;
+    private final int maxPageSize;
+    private final Map<Long, RecentEvents> recent;
+    private final EventWriter eventWriter;
+    private final ReadRouting readRouting;
+
+    @Autowired
+    public FeedService(@Qualifier("dbStorage") EventStorage eventStorage,
+                       @Value("${filmorate.feed.recent-events:100}") int recentEvents,
+                       @Value("${filmorate.feed.cached-users:10000}") int cachedUsers,
+                       @Value("${filmorate.feed.writer.batch-size:500}") int batchSize,
+                       @Value("${filmorate.feed.writer.flush-interval-ms:50}") long flushIntervalMs,
+                       @Value("${filmorate.feed.writer.queue-capacity:10000}") int queueCapacity,
+                       @Value("${filmorate.http.max-page-size:1000}") int maxPageSize,
+                       ReadRouting readRouting) {
+        this.eventStorage = eventStorage;
+        this.maxPageSize = maxPageSize;
+        this.readRouting = readRouting;
+        this.recentEvents = recentEvents;
+        this.eventWriter = new EventWriter(eventStorage, batchSize, flushIntervalMs, queueCapacity, this::addWritten);
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, RecentEvents> eldest) {
+                return size() > cachedUsers;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void start() {
+        eventWriter.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        eventWriter.shutdown();
+    }
+
+    public void addEvent(Long userId, EventType eventType, Operation operation, Long entityId) {
+        Event event = Event.builder()
+                .timestamp(System.currentTimeMillis())
+                .userId(userId)
+                .eventType(eventType)
+                .operation(operation)
+                .entityId(entityId)
+                .build();
+        log.debug("Queueing event {}", event);
+        // every write a user makes produces an event, so this is where their reads get pinned to the primary
+        readRouting.wrote(userId);
+        eventWriter.add(event);
+    }
+
+    /**
+     * Queues events of a bulk request in order, with one round trip to the writer for all of them.
+     */
+    public void addEvents(List<Event> events) {
+        log.debug("Queueing {} events", events.size());
+        events.stream()
+                .map(Event::getUserId)
+                .distinct()
+                .forEach(readRouting::wrote);
+        eventWriter.addAll(events);
+    }
+
+    public List<Event> getFeed(Long userId, Long since, Long before, Integer limit) {
+        if (limit != null && limit <= 0) {
+            log.error("Limit must be more than zero");
+            throw new IllegalArgumentException("Limit must be more than zero");
+        }
+        if (limit != null && limit > maxPageSize) {
+            log.error("Limit must not exceed {}", maxPageSize);
+            throw new IllegalArgumentException("Limit must not exceed " + maxPageSize);
+        }
+        eventWriter.awaitWritten(userId);
+        List<Event> cached = getCached(userId, since, before, limit);
+        if (cached != null) {
+            log.debug("Feed for user id {} served from memory", userId);
+            return cached;
+        }
+        return readRouting.readFor(userId, () -> eventStorage.getFeedForUser(userId, since, before, limit));
+    }
+
+    public void evict(Long userId) {
+        synchronized (recent) {
+            recent.remove(userId);
+        }
+    }
+
+    private void addWritten(List<Event> events) {
+        synchronized (recent) {
+            for (Event event : events) {
+                RecentEvents buffer = recent.get(event.getUserId());
+                if (buffer == null) {
+                    continue;
+                }
+                if (event.getEventId() == null) {
+                    recent.remove(event.getUserId());
+                } else {
+                    buffer.add(event);
+                }
+            }
+        }
+    }
+
+    private List<Event> getCached(Long userId, Long since, Long before, Integer limit) {
+        RecentEvents buffer;
+        synchronized (recent) {
+            buffer = recent.get(userId);
+            if (buffer != null) {
+                return buffer.loading ? null : buffer.find(since, before, limit);
+            }
+            // events written while the buffer is loading are kept and merged with the loaded ones
+            buffer = new RecentEvents();
+            recent.put(userId, buffer);
+        }
+
+        List<Event> loaded;
+        // always from the primary: a buffer filled from a lagging replica would keep missing events
+        try {
+            loaded = eventStorage.getFeedForUser(userId, null, null, recentEvents);
+        } catch (RuntimeException e) {
+            evict(userId);
+            throw e;
+        }
+        synchronized (recent) {
+            buffer.fill(loaded, loaded.size() < recentEvents);
+            if (recent.get(userId) != buffer) {
+                return null;
+            }
+            return buffer.find(since, before, limit);
+        }
+    }
+
+    // Guarded by the recent map monitor
+    private class RecentEvents {
+        private final NavigableMap<Long, Event> events = new TreeMap<>();
+        private boolean loading = true;
+        // true while the buffer holds every event the user has, not just the latest ones
+        private boolean complete;
+
+        void add(Event event) {
+            events.put(event.getEventId(), event);
+            trim();
+        }
+
+        void fill(List<Event> loaded, boolean all) {
+            for (Event event : loaded) {
+                events.putIfAbsent(event.getEventId(), event);
+            }
+            complete = all;
+            loading = false;
+            trim();
+        }
+
+        // Returns null when the answer may include events that are no longer buffered
+        List<Event> find(Long since, Long before, Integer limit) {
+            boolean covered = complete || (since != null && !events.isEmpty() && since >= events.firstKey());
+            boolean oldestFirst = since != null && before == null;
+            if (since != null && before != null && since >= before) {
+                return new ArrayList<>();
+            }
+            NavigableMap<Long, Event> range = events;
+            if (before != null) {
+                range = range.headMap(before, false);
+            }
+            if (since != null) {
+                range = range.tailMap(since, false);
+            }
+            // the buffer is a suffix of the feed, so only the newest events of a range are safe to serve from it
+            if (!covered && (oldestFirst || limit == null || range.size() < limit)) {
+                return null;
+            }
+            List<Event> result = new ArrayList<>(limit == null ? range.size() : Math.min(limit, range.size()));
+            if (oldestFirst) {
+                for (Event event : range.values()) {
+                    if (limit != null && result.size() == limit) {
+                        break;
+                    }
+                    result.add(event);
+                }
+                return result;
+            }
+            for (Event event : range.descendingMap().values()) {
+                if (limit != null && result.size() == limit) {
+                    break;
+                }
+                result.add(event);
+            }
+            Collections.reverse(result);
+            return result;
+        }
+
+        private void trim() {
+            while (events.size() > recentEvents) {
+                events.pollFirstEntry();
+                complete = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Imports films from newline delimited JSON, one film per line, without reading the whole input into memory.
+ * Every line gets the same bean validation as POST /films and a line that fails validation or refers to an unknown
+ * MPA, genre or director is skipped and reported. Valid films are written in chunks of import-batch-size,
+ * each chunk in its own transaction. Malformed JSON stops the import, the films read before it are still written.
+ */
+@Slf4j
+@Service
+public class FilmImporter {
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final MpaStorage mpaStorage;
+    private final GenreStorage genreStorage;
+    private final DirectorStorage directorStorage;
+    private final FilmService filmService;
+    private final int batchSize;
+
+    @Autowired
+    public FilmImporter(ObjectMapper objectMapper,
+                        Validator validator,
+                        @Qualifier("dbStorage") MpaStorage mpaStorage,
+                        @Qualifier("dbStorage") GenreStorage genreStorage,
+                        @Qualifier("dbStorage") DirectorStorage directorStorage,
+                        FilmService filmService,
+                        @Value("${filmorate.films.import-batch-size:1000}") int batchSize) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.mpaStorage = mpaStorage;
+        this.genreStorage = genreStorage;
+        this.directorStorage = directorStorage;
+        this.filmService = filmService;
+        this.batchSize = batchSize;
+    }
+
+    public FilmImportResult importFilms(InputStream input) throws IOException {
+        FilmImportResult result = new FilmImportResult();
+        Map<Long, Film> chunk = new LinkedHashMap<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            while (true) {
+                long line;
+                JsonNode node;
+                try {
+                    if (parser.nextToken() == null) {
+                        break;
+                    }
+                    line = parser.getTokenLocation().getLineNr();
+                    node = parser.readValueAsTree();
+                } catch (JsonParseException e) {
+                    result.reject(e.getLocation().getLineNr(), "malformed JSON, import stopped: " + e.getOriginalMessage());
+                    break;
+                }
+                Film film = readFilm(line, node, result);
+                if (film != null) {
+                    chunk.put(line, film);
+                }
+                if (chunk.size() == batchSize) {
+                    addChunk(chunk, result);
+                    chunk.clear();
+                }
+            }
+        }
+        addChunk(chunk, result);
+        log.info("Import finished, {} films imported, {} lines rejected", result.getImported(), result.getRejected());
+        return result;
+    }
+
+    private Film readFilm(long line, JsonNode node, FilmImportResult result) {
+        Film film;
+        try {
+            film = objectMapper.treeToValue(node, Film.class);
+        } catch (JsonProcessingException e) {
+            result.reject(line, e.getOriginalMessage());
+            return null;
+        }
+        if (film == null) {
+            result.reject(line, "film expected");
+            return null;
+        }
+        Set<ConstraintViolation<Film>> violations = validator.validate(film);
+        if (!violations.isEmpty()) {
+            result.reject(line, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+            return null;
+        }
+        return film;
+    }
+
+    private void addChunk(Map<Long, Film> chunk, FilmImportResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Map<Long, Mpa> mpas = mpaStorage.getAllMpa().stream()
+                .collect(Collectors.toMap(Mpa::getId, Function.identity()));
+        Map<Long, Genre> genres = genreStorage.getAllGenres().stream()
+                .collect(Collectors.toMap(Genre::getId, Function.identity()));
+        Map<Long, Director> directors = directorStorage.getDirectorsByIds(chunk.values().stream()
+                .filter(film -> film.getDirectors() != null)
+                .flatMap(film -> film.getDirectors().stream())
+                .map(Director::getId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+
+        List<Film> films = new ArrayList<>(chunk.size());
+        for (Map.Entry<Long, Film> entry : chunk.entrySet()) {
+            String error = resolve(entry.getValue(), mpas, genres, directors);
+            if (error == null) {
+                films.add(entry.getValue());
+            } else {
+                result.reject(entry.getKey(), error);
+            }
+        }
+        if (!films.isEmpty()) {
+            filmService.addFilms(films);
+            result.setImported(result.getImported() + films.size());
+        }
+    }
+
+    // replaces references by the stored MPA, genres and directors, returns an error if one of them does not exist
+    private static String resolve(Film film, Map<Long, Mpa> mpas, Map<Long, Genre> genres,
+                                  Map<Long, Director> directors) {
+        Mpa mpa = mpas.get(film.getMpa().getId());
+        if (mpa == null) {
+            return String.format("mpa %s not found", film.getMpa().getId());
+        }
+        Map<Long, Genre> filmGenres = new LinkedHashMap<>();
+        if (film.getGenres() != null) {
+            for (Genre genre : film.getGenres()) {
+                Genre stored = genre == null ? null : genres.get(genre.getId());
+                if (stored == null) {
+                    return String.format("genre %s not found", genre == null ? null : genre.getId());
+                }
+                filmGenres.putIfAbsent(stored.getId(), stored);
+            }
+        }
+        Set<Director> filmDirectors = new HashSet<>();
+        if (film.getDirectors() != null) {
+            for (Director director : film.getDirectors()) {
+                Director stored = director == null ? null : directors.get(director.getId());
+                if (stored == null) {
+                    return String.format("director %s not found", director == null ? null : director.getId());
+                }
+                filmDirectors.add(stored);
+            }
+        }
+        film.setMpa(mpa);
+        film.setGenres(new ArrayList<>(filmGenres.values()));
+        film.setDirectors(filmDirectors);
+        return null;
+    }
+}
@@ -3,21 +3,35 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.dao.DuplicateKeyException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmDeletedEvent;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeOperationResult;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.datasource.ReadRouting;
 import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
-import ru.yandex.practicum.filmorate.storage.feed.EventStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.likes.LikesStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static ru.yandex.practicum.filmorate.model.EventType.LIKE;
@@ -27,55 +41,147 @@ import static ru.yandex.practicum.filmorate.model.Operation.REMOVE;
 @Service
 @Slf4j
 public class FilmService {
+    // Upper bound for ids in one IN (...) list, Postgres allows at most 32767 bind parameters per statement
+    private static final int ENRICH_BATCH_SIZE = 1000;
+    private static final int STREAM_PAGE_SIZE = ENRICH_BATCH_SIZE;
+
     private final FilmStorage filmStorage;
     private final GenreStorage genreStorage;
     private final MpaStorage mpaStorage;
     private final LikesStorage likesStorage;
-    private final EventStorage eventStorage;
+    private final FeedService feedService;
     private final DirectorStorage directorStorage;
+    private final PopularityIndex popularityIndex;
+    private final RecommendationIndex recommendationIndex;
+    private final SearchIndex searchIndex;
+    private final ReadRouting readRouting;
+    private final ResourceVersions resourceVersions;
+    private final FilmSummaries filmSummaries;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int bulkMaxOperations;
+    private final int maxPageSize;
 
     @Autowired
     public FilmService(@Qualifier("dbStorage") FilmStorage filmStorage,
                        @Qualifier("dbStorage") GenreStorage genreStorage,
                        @Qualifier("dbStorage") MpaStorage mpaStorage,
                        @Qualifier("dbStorage") LikesStorage likesStorage,
-                       @Qualifier("dbStorage") EventStorage eventStorage,
-                       @Qualifier("dbStorage") DirectorStorage directorStorage) {
+                       @Qualifier("dbStorage") DirectorStorage directorStorage,
+                       PopularityIndex popularityIndex,
+                       RecommendationIndex recommendationIndex,
+                       SearchIndex searchIndex,
+                       FeedService feedService,
+                       ReadRouting readRouting,
+                       ResourceVersions resourceVersions,
+                       FilmSummaries filmSummaries,
+                       ApplicationEventPublisher eventPublisher,
+                       @Value("${filmorate.likes.bulk-max-operations:10000}") int bulkMaxOperations,
+                       @Value("${filmorate.http.max-page-size:1000}") int maxPageSize) {
         this.filmStorage = filmStorage;
         this.genreStorage = genreStorage;
         this.mpaStorage = mpaStorage;
         this.likesStorage = likesStorage;
-        this.eventStorage = eventStorage;
         this.directorStorage = directorStorage;
+        this.popularityIndex = popularityIndex;
+        this.recommendationIndex = recommendationIndex;
+        this.searchIndex = searchIndex;
+        this.feedService = feedService;
+        this.readRouting = readRouting;
+        this.resourceVersions = resourceVersions;
+        this.filmSummaries = filmSummaries;
+        this.eventPublisher = eventPublisher;
+        this.bulkMaxOperations = bulkMaxOperations;
+        this.maxPageSize = maxPageSize;
     }
 
+    @Transactional
     public Film addFilm(Film film) {
         log.info("Trying to add film {}", film);
-        filmStorage.addFilm(film);
         setMpaToFilm(film);
+        filmStorage.addFilm(film);
         updateFilmGenres(film);
-        directorStorage.setDirectorsToFilm(film.getDirectors(), film.getId());
-        return findFilm(film.getId());
+        film.setDirectors(directorStorage.setDirectorsToFilm(film.getDirectors(), film.getId()));
+        film.setLikes(new ArrayList<>());
+        popularityIndex.addFilm(film);
+        searchIndex.putFilm(film);
+        // an id freed by a reset identity must not match a tag of the film it had before
+        resourceVersions.filmChanged(film.getId());
+        return film;
     }
 
+    /**
+     * Stores films with batch inserts, MPA, genres and directors must already be resolved.
+     * Used by bulk import, one call per chunk.
+     */
+    @Transactional
+    public List<Film> addFilms(List<Film> films) {
+        log.info("Adding {} films", films.size());
+        filmStorage.addFilms(films);
+        genreStorage.addFilmGenres(films);
+        directorStorage.addFilmDirectors(films);
+        films.forEach(film -> film.setLikes(new ArrayList<>()));
+        popularityIndex.addFilms(films);
+        searchIndex.putFilms(films);
+        // as in addFilm, an id freed by a reset identity must not match a tag of the film it had before
+        resourceVersions.filmsChanged(films.stream()
+                .map(Film::getId)
+                .collect(Collectors.toList()));
+        return films;
+    }
+
+    @Transactional
     public Film putFilm(Film film) {
         log.info("Trying to put film {}", film);
-        filmStorage.putFilm(film);
         setMpaToFilm(film);
+        filmStorage.putFilm(film);
         updateFilmGenres(film);
-        directorStorage.setDirectorsToFilm(film.getDirectors(), film.getId());
-        return findFilm(film.getId());
+        film.setDirectors(directorStorage.setDirectorsToFilm(film.getDirectors(), film.getId()));
+        film.setLikes(likesStorage.getLikesByFilms(List.of(film.getId())).getOrDefault(film.getId(), new ArrayList<>()));
+        film.setLikeCount(film.getLikes().size());
+        popularityIndex.updateFilm(film);
+        searchIndex.putFilm(film);
+        resourceVersions.filmChanged(film.getId());
+        return film;
     }
 
     public List<Film> getFilms() {
         List<Film> films = filmStorage.getFilms();
-        for (Film film : films) {
-            enrichFilm(film);
-        }
+        enrichFilms(films);
         log.info("Number of films registered: {}", films.size());
         return films;
     }
 
+    public List<Film> getFilms(Long after, Integer limit) {
+        if (limit <= 0) {
+            log.error("Limit must be more than zero");
+            throw new IllegalArgumentException("Limit must be more than zero");
+        }
+        if (limit > maxPageSize) {
+            log.error("Limit must not exceed {}", maxPageSize);
+            throw new IllegalArgumentException("Limit must not exceed " + maxPageSize);
+        }
+        List<Film> films = readRouting.read(() -> enrichFilms(filmStorage.getFilms(after, limit)));
+        log.info("Returning {} films after id {}", films.size(), after);
+        return films;
+    }
+
+    public void streamFilms(Consumer<Film> consumer) {
+        long after = 0;
+        List<Film> page;
+        do {
+            page = getFilms(after, STREAM_PAGE_SIZE);
+            page.forEach(consumer);
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == STREAM_PAGE_SIZE);
+    }
+
+    public List<Film> findFilms(List<Long> ids) {
+        log.info("Looking for {} films by id", ids.size());
+        return findFilmsInOrder(ids);
+    }
+
     public Film findFilm(Long id) {
         log.info("Looking for film with id: {}", id);
         Film film = filmStorage.findFilm(id);
@@ -89,8 +195,12 @@ public class FilmService {
             throw new IllegalArgumentException("FilmId and User Id must be more than zero");
         }
         log.info("Adding like from id {} to film id {}", userId, filmId);
-        eventStorage.addEvent(userId, LIKE, ADD, filmId);
-        likesStorage.addLike(filmId, userId);
+        feedService.addEvent(userId, LIKE, ADD, filmId);
+        if (likesStorage.addLike(filmId, userId)) {
+            popularityIndex.addLike(filmId);
+            recommendationIndex.addLike(userId, filmId);
+            resourceVersions.filmChanged(filmId);
+        }
     }
 
     public void removeLike(Long filmId, Long userId) {
@@ -100,8 +210,67 @@ public class FilmService {
         }
         log.info("Removing like from user id {} to film id {}", userId, filmId);
         likesStorage.removeLike(filmId, userId);
+        popularityIndex.removeLike(filmId);
+        recommendationIndex.removeLike(userId, filmId);
+        resourceVersions.filmChanged(filmId);
         log.info("Like from id {} to film {} removed", userId, filmId);
-        eventStorage.addEvent(userId, LIKE, REMOVE, filmId);
+        feedService.addEvent(userId, LIKE, REMOVE, filmId);
+    }
+
+    /**
+     * Applies a burst of likes and unlikes in one transaction and returns a result per operation.
+     * Indexes and the feed are updated once for the whole batch; only applied operations make events.
+     */
+    public List<LikeOperationResult> applyLikes(List<LikeOperation> operations) {
+        if (operations.size() > bulkMaxOperations) {
+            log.error("Too many like operations: {}", operations.size());
+            throw new IllegalArgumentException(String.format("At most %s like operations are accepted at once",
+                    bulkMaxOperations));
+        }
+        log.info("Applying {} like operations", operations.size());
+        List<LikeOperation> valid = operations.stream()
+                .filter(FilmService::isValid)
+                .collect(Collectors.toList());
+        List<LikeOperationResult> stored = valid.isEmpty() ? List.of() : likesStorage.applyLikes(valid);
+
+        Iterator<LikeOperationResult> storedResults = stored.iterator();
+        List<LikeOperationResult> results = new ArrayList<>(operations.size());
+        List<LikeOperation> applied = new ArrayList<>();
+        Map<Long, Integer> deltas = new HashMap<>();
+        List<Event> events = new ArrayList<>();
+        long timestamp = System.currentTimeMillis();
+        for (LikeOperation operation : operations) {
+            if (!isValid(operation)) {
+                results.add(new LikeOperationResult(operation, LikeOperationResult.Status.INVALID));
+                continue;
+            }
+            LikeOperationResult result = storedResults.next();
+            results.add(result);
+            if (result.getStatus() == LikeOperationResult.Status.APPLIED) {
+                applied.add(operation);
+                deltas.merge(operation.getFilmId(), operation.getOperation() == ADD ? 1 : -1, Integer::sum);
+                events.add(Event.builder()
+                        .timestamp(timestamp)
+                        .userId(operation.getUserId())
+                        .eventType(LIKE)
+                        .operation(operation.getOperation())
+                        .entityId(operation.getFilmId())
+                        .build());
+            }
+        }
+        popularityIndex.changeLikes(deltas);
+        recommendationIndex.applyLikes(applied);
+        resourceVersions.filmsChanged(deltas.keySet());
+        feedService.addEvents(events);
+        log.info("{} of {} like operations applied", applied.size(), operations.size());
+        return results;
+    }
+
+    private static boolean isValid(LikeOperation operation) {
+        return operation != null
+                && operation.getFilmId() != null && operation.getFilmId() > 0
+                && operation.getUserId() != null && operation.getUserId() > 0
+                && (operation.getOperation() == ADD || operation.getOperation() == REMOVE);
     }
 
     public List<Film> getTopFilms(Integer count) {
@@ -109,20 +278,20 @@ public class FilmService {
             log.error("Count must be more than zero");
             throw new IllegalArgumentException("Count must be more than zero");
         }
-        List<Film> popularFilms = filmStorage.getPopularFilms(count);
-        for (Film film : popularFilms) {
-            enrichFilm(film);
+        if (count > maxPageSize) {
+            log.error("Count must not exceed {}", maxPageSize);
+            throw new IllegalArgumentException("Count must not exceed " + maxPageSize);
         }
+        List<Long> filmIds = popularityIndex.getTopFilmIds(count, 0, 0);
+        List<Film> popularFilms = findIndexedFilms(filmIds);
         log.info("Returning top liked films, count {}", count);
         return popularFilms;
     }
 
     public List<Film> getCommonFilms(Long userId, Long friendId) {
         var films = filmStorage.getCommonFilms(userId, friendId);
-        for (Film film : films) {
-            enrichFilm(film);
-        }
-        films = films.stream().sorted((c1, c2) -> Integer.compare(c2.getLikes().size(), c1.getLikes().size()))
+        enrichFilms(films);
+        films = films.stream().sorted((c1, c2) -> Long.compare(c2.getLikeCount(), c1.getLikeCount()))
                 .collect(Collectors.toList());
         return films;
     }
@@ -130,18 +299,19 @@ public class FilmService {
     public void deleteFilm(Long id) {
         log.info("Deleting film with id {}", id);
         filmStorage.deleteFilm(id);
+        eventPublisher.publishEvent(new FilmDeletedEvent(id));
+        popularityIndex.removeFilm(id);
+        recommendationIndex.removeFilm(id);
+        searchIndex.removeFilm(id);
+        resourceVersions.filmChanged(id);
     }
 
     public List<Film> findFilmsByDirector(Long directorId, String sortBy) {
         if (directorStorage.getDirector(directorId) == null) {
             throw new NotFoundException("director with that id does not exist");
         }
-        List<Film> films = new ArrayList<>();
         List<Long> filmsId = directorStorage.findFilmsByDirector(directorId, sortBy);
-        for (Long id : filmsId) {
-            films.add(findFilm(id));
-        }
-        return films;
+        return findFilmsInOrder(filmsId);
     }
 
 
@@ -150,72 +320,132 @@ public class FilmService {
             log.error("Count must be more than zero");
             throw new IllegalArgumentException("Count must be more than zero");
         }
+        if (count > maxPageSize) {
+            log.error("Count must not exceed {}", maxPageSize);
+            throw new IllegalArgumentException("Count must not exceed " + maxPageSize);
+        }
         if (genreId != 0) {
             genreStorage.findGenre(genreId);
         }
         log.info("Looking most popular films with count: {}, genreId: {}, year: {}", count, genreId, year);
-        List<Film> popularFilms = filmStorage.getPopularFilms(count, genreId, year);
-        popularFilms.forEach(film -> enrichFilm(film));
+        List<Long> filmIds = popularityIndex.getTopFilmIds(count, genreId, year);
+        List<Film> popularFilms = findIndexedFilms(filmIds);
         return popularFilms;
     }
 
-    public List<Film> getSearch(String query, String by) {
-        query = "'%" + query.toLowerCase().replace("_", "\\_").replace("%", "\\%") + "%'";
-        boolean hasTitle, hasDirector;
-        hasTitle = by.contains("title");
-        hasDirector = by.contains("director");
-
-        List<Film> searchList;
-        if (hasDirector && hasTitle) {
-            log.info("Returning search films. Title, director with text = {}", query);
-            searchList = filmStorage.getSearch("LOWER(f.name) LIKE " + query + " OR LOWER(d.name) LIKE " + query);
-        } else if (hasTitle) {
-            log.info("Returning search films. Title with text = {}", query);
-            searchList = filmStorage.getSearch("LOWER(f.name) LIKE " + query);
-        } else if (hasDirector) {
-            log.info("Returning search films. Director with text = {}", query);
-            searchList = filmStorage.getSearch("LOWER(d.name) LIKE " + query);
-        } else {
+    public List<Film> getSearch(String query, String by, Integer offset, Integer limit) {
+        if (offset < 0) {
+            log.error("Offset must not be negative");
+            throw new IllegalArgumentException("Offset must not be negative");
+        }
+        if (limit != null && limit <= 0) {
+            log.error("Limit must be more than zero");
+            throw new IllegalArgumentException("Limit must be more than zero");
+        }
+        if (limit != null && limit > maxPageSize) {
+            log.error("Limit must not exceed {}", maxPageSize);
+            throw new IllegalArgumentException("Limit must not exceed " + maxPageSize);
+        }
+        boolean hasTitle = by.contains("title");
+        boolean hasDirector = by.contains("director");
+        if (!hasTitle && !hasDirector) {
             log.error("Parameter \"by\" not found by = {} ", by);
             throw new NotFoundException("Parameter \"by\" is incorrect");
         }
-
-        searchList.forEach(film -> enrichFilm(film));
-
-        return searchList;
+        log.info("Returning search films. Text = {}, by title: {}, by director: {}", query, hasTitle, hasDirector);
+        List<Long> filmIds = searchIndex.search(query, hasTitle, hasDirector, offset, limit);
+        return findIndexedFilms(filmIds);
     }
 
     private void setMpaToFilm(Film film) {
         if (film.getMpa() != null && film.getMpa().getId() != 0) {
             Mpa mpa = mpaStorage.findMpa(film.getMpa().getId());
             film.getMpa().setName(mpa.getName());
-            log.info("Mpa {} added to film id {}", mpa, film.getId());
+            log.info("Mpa {} set to film {}", mpa, film.getName());
         }
     }
 
     private Film updateFilmGenres(Film film) {
-        genreStorage.removeGenreFromFilm(film);
-        if (film.getGenres() != null && !film.getGenres().isEmpty()) {
-            List<Genre> duplicateGenres = new ArrayList<>();
-            for (Genre genre : film.getGenres()) {
-                try {
-                    String genreName = genreStorage.addGenreToFilm(film, genre).getName();
-                    genre.setName(genreName);
-                } catch (DuplicateKeyException e) {
-                    duplicateGenres.add(genre);
-                }
-            }
-            film.getGenres().removeAll(duplicateGenres);
-        }
+        film.setGenres(genreStorage.setGenresToFilm(film.getId(), film.getGenres()));
         return film;
     }
 
     private Film enrichFilm(Film film) {
         film.setGenres(genreStorage.getFilmGenres(film.getId()));
-        film.setLikes(likesStorage.getLikes(film.getId()).stream()
-                .map(f -> f.getUserId())
-                .collect(Collectors.toList()));
+        if (!filmSummaries.isActive()) {
+            film.setLikes(likesStorage.getLikes(film.getId()).stream()
+                    .map(f -> f.getUserId())
+                    .collect(Collectors.toList()));
+            film.setLikeCount(film.getLikes().size());
+        }
         film.setDirectors(directorStorage.getDirectorsByFilm(film.getId()));
         return film;
     }
+
+    private List<Film> findFilmsInOrder(List<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return inOrder(filmIds, findFilmsById(filmIds));
+    }
+
+    /**
+     * Films listed by an in-memory index are read from a replica where possible. The indexes are updated
+     * on write, so a lagging replica may not have the newest of them yet; those are read from the primary
+     * instead of being left out of the result.
+     */
+    private List<Film> findIndexedFilms(List<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Film> filmsById = readRouting.read(() -> findFilmsById(filmIds));
+        List<Long> missing = filmIds.stream()
+                .filter(id -> !filmsById.containsKey(id))
+                .collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            log.debug("{} indexed films not found on replica, reading them from primary", missing.size());
+            filmsById.putAll(findFilmsById(missing));
+        }
+        return inOrder(filmIds, filmsById);
+    }
+
+    // a search without a limit or a director with many films can list more ids than one statement may bind
+    private Map<Long, Film> findFilmsById(List<Long> filmIds) {
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (int from = 0; from < filmIds.size(); from += ENRICH_BATCH_SIZE) {
+            List<Long> batch = filmIds.subList(from, Math.min(from + ENRICH_BATCH_SIZE, filmIds.size()));
+            enrichFilms(filmStorage.findAllFilmsByIds(batch)).forEach(film -> filmsById.put(film.getId(), film));
+        }
+        return filmsById;
+    }
+
+    private static List<Film> inOrder(List<Long> filmIds, Map<Long, Film> filmsById) {
+        return filmIds.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private List<Film> enrichFilms(List<Film> films) {
+        for (int from = 0; from < films.size(); from += ENRICH_BATCH_SIZE) {
+            List<Film> batch = films.subList(from, Math.min(from + ENRICH_BATCH_SIZE, films.size()));
+            Set<Long> filmIds = batch.stream()
+                    .map(Film::getId)
+                    .collect(Collectors.toSet());
+            Map<Long, List<Genre>> genres = genreStorage.getFilmGenres(filmIds);
+            // a summary writes the stored like_count, so the likes themselves are not read for it
+            Map<Long, List<Long>> likes = filmSummaries.isActive() ? null : likesStorage.getLikesByFilms(filmIds);
+            Map<Long, Set<Director>> directors = directorStorage.getDirectorsByFilms(filmIds);
+            for (Film film : batch) {
+                film.setGenres(genres.getOrDefault(film.getId(), new ArrayList<>()));
+                if (likes != null) {
+                    film.setLikes(likes.getOrDefault(film.getId(), new ArrayList<>()));
+                    film.setLikeCount(film.getLikes().size());
+                }
+                film.setDirectors(directors.getOrDefault(film.getId(), new HashSet<>()));
+            }
+        }
+        log.debug("Enriched {} films", films.size());
+        return films;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Marks a request that asked for the summary view of films. Films read for it are returned without their
+ * likes lists, which grow with a film's popularity; likeCount comes from films.like_count instead.
+ * The mark is kept per thread, from the start of the request until it completes.
+ */
+@Component
+public class FilmSummaries {
+    private final ThreadLocal<Boolean> summary = ThreadLocal.withInitial(() -> false);
+
+    public void begin() {
+        summary.set(true);
+    }
+
+    public void end() {
+        summary.remove();
+    }
+
+    boolean isActive() {
+        return summary.get();
+    }
+}
@@ -0,0 +1,179 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.friends.FriendsStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+import ru.yandex.practicum.filmorate.util.SortedArrays;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Friend lists kept in memory as sorted long arrays, so common friends of two users is a linear merge.
+ * friendsOf holds the friends a user added, seenBy the reverse direction,
+ * which is needed to drop a deleted user from everyone's list.
+ * The index is rebuilt from the database on startup and then kept up to date by UserService.
+ * It can be switched off with filmorate.friends.index-enabled=false, common friends are then read with a query.
+ */
+@Slf4j
+@Component
+public class FriendsIndex {
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private final UserStorage userStorage;
+    private final FriendsStorage friendsStorage;
+    private final boolean enabled;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, long[]> friendsOf = new HashMap<>();
+    private Map<Long, long[]> seenBy = new HashMap<>();
+
+    @Autowired
+    public FriendsIndex(@Qualifier("dbStorage") UserStorage userStorage,
+                        @Qualifier("dbStorage") FriendsStorage friendsStorage,
+                        @Value("${filmorate.friends.index-enabled:true}") boolean enabled) {
+        this.userStorage = userStorage;
+        this.friendsStorage = friendsStorage;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        if (!enabled) {
+            log.info("Friends index is disabled");
+            return;
+        }
+        log.info("Rebuilding friends index");
+        Map<Long, long[]> newFriendsOf = new HashMap<>();
+        Map<Long, List<Long>> newSeenBy = new HashMap<>();
+        long after = 0;
+        List<User> page;
+        do {
+            page = userStorage.getUsers(after, REBUILD_PAGE_SIZE);
+            Set<Long> userIds = page.stream()
+                    .map(User::getId)
+                    .collect(Collectors.toSet());
+            for (Map.Entry<Long, List<Long>> friends : friendsStorage.getFriendIds(userIds).entrySet()) {
+                newFriendsOf.put(friends.getKey(), SortedArrays.of(friends.getValue()));
+                for (Long friendId : friends.getValue()) {
+                    newSeenBy.computeIfAbsent(friendId, id -> new ArrayList<>()).add(friends.getKey());
+                }
+            }
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == REBUILD_PAGE_SIZE);
+        Map<Long, long[]> newSeenByArrays = new HashMap<>();
+        newSeenBy.forEach((userId, ids) -> newSeenByArrays.put(userId, SortedArrays.of(ids)));
+
+        lock.writeLock().lock();
+        try {
+            friendsOf = newFriendsOf;
+            seenBy = newSeenByArrays;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Friends index rebuilt, {} users with friends", newFriendsOf.size());
+    }
+
+    /**
+     * Mirrors DbFriendsStorage.addFriend: the friend appears in the user's list, the friend's own list does not change.
+     */
+    public void addFriend(Long userId, Long friendId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            link(userId, friendId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Mirrors DbFriendsStorage.removeFriend: if the friend is in the user's list the user leaves the friendship,
+     * otherwise the friend's pending request to the user is deleted.
+     */
+    public void removeFriend(Long userId, Long friendId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (SortedArrays.contains(friendsOf.getOrDefault(userId, SortedArrays.EMPTY), friendId)) {
+                unlink(userId, friendId);
+            } else {
+                unlink(friendId, userId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(Long userId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (long friendId : friendsOf.getOrDefault(userId, SortedArrays.EMPTY)) {
+                putOrRemove(seenBy, friendId, SortedArrays.delete(seenBy.getOrDefault(friendId, SortedArrays.EMPTY), userId));
+            }
+            for (long otherId : seenBy.getOrDefault(userId, SortedArrays.EMPTY)) {
+                putOrRemove(friendsOf, otherId, SortedArrays.delete(friendsOf.getOrDefault(otherId, SortedArrays.EMPTY), userId));
+            }
+            friendsOf.remove(userId);
+            seenBy.remove(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Long> getCommonFriends(Long userId, Long otherId) {
+        lock.readLock().lock();
+        try {
+            long[] common = SortedArrays.intersect(friendsOf.getOrDefault(userId, SortedArrays.EMPTY),
+                    friendsOf.getOrDefault(otherId, SortedArrays.EMPTY));
+            return Arrays.stream(common)
+                    .boxed()
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void link(Long userId, Long friendId) {
+        friendsOf.put(userId, SortedArrays.insert(friendsOf.getOrDefault(userId, SortedArrays.EMPTY), friendId));
+        seenBy.put(friendId, SortedArrays.insert(seenBy.getOrDefault(friendId, SortedArrays.EMPTY), userId));
+    }
+
+    private void unlink(Long userId, Long friendId) {
+        putOrRemove(friendsOf, userId, SortedArrays.delete(friendsOf.getOrDefault(userId, SortedArrays.EMPTY), friendId));
+        putOrRemove(seenBy, friendId, SortedArrays.delete(seenBy.getOrDefault(friendId, SortedArrays.EMPTY), userId));
+    }
+
+    private static void putOrRemove(Map<Long, long[]> map, Long key, long[] values) {
+        if (values.length == 0) {
+            map.remove(key);
+        } else {
+            map.put(key, values);
+        }
+    }
+}
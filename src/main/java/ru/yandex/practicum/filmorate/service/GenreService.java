@@ -5,7 +5,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.storage.genre.DbGenreStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
 
 import java.util.List;
 
@@ -13,18 +13,18 @@ import java.util.List;
 @Slf4j
 public class GenreService {
 
-    private final DbGenreStorage dbGenreStorage;
+    private final GenreStorage genreStorage;
 
     @Autowired
-    public GenreService(@Qualifier("dbStorage") DbGenreStorage dbGenreStorage) {
-        this.dbGenreStorage = dbGenreStorage;
+    public GenreService(@Qualifier("dbStorage") GenreStorage genreStorage) {
+        this.genreStorage = genreStorage;
     }
 
     public List<Genre> getAllGenres() {
-        return dbGenreStorage.getAllGenres();
+        return genreStorage.getAllGenres();
     }
 
     public Genre findGenre(Long id) {
-        return dbGenreStorage.findGenre(id);
+        return genreStorage.findGenre(id);
     }
 }
\ No newline at end of file
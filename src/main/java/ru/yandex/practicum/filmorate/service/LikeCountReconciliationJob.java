@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.likes.LikesStorage;
+
+/**
+ * Periodically recounts films.like_count from the likes table to repair drift,
+ * e.g. after rows were changed directly in the database.
+ */
+@Slf4j
+@Component
+public class LikeCountReconciliationJob {
+    private final LikesStorage likesStorage;
+
+    @Autowired
+    public LikeCountReconciliationJob(@Qualifier("dbStorage") LikesStorage likesStorage) {
+        this.likesStorage = likesStorage;
+    }
+
+    @Scheduled(initialDelayString = "${filmorate.likes.reconcile-delay-ms:3600000}",
+            fixedDelayString = "${filmorate.likes.reconcile-delay-ms:3600000}")
+    public void reconcile() {
+        int fixed = likesStorage.reconcileLikeCounts();
+        if (fixed > 0) {
+            log.warn("Like count drift found and fixed for {} films", fixed);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.likes.LikesStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory like counters with a sorted set of films per (genre, year) bucket.
+ * Genre or year 0 means "any", so the bucket (0, 0) holds every film.
+ * The index is rebuilt from the database on startup and then kept up to date by FilmService and UserService.
+ */
+@Slf4j
+@Component
+public class PopularityIndex {
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    private static final Comparator<IndexedFilm> BY_POPULARITY = Comparator
+            .comparingInt(IndexedFilm::getLikes).reversed()
+            .thenComparingLong(IndexedFilm::getId);
+
+    private final FilmStorage filmStorage;
+    private final GenreStorage genreStorage;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, IndexedFilm> films = new HashMap<>();
+    private Map<Bucket, NavigableSet<IndexedFilm>> buckets = new HashMap<>();
+
+    /**
+     * The likes storage is not read, counts come from films.like_count. It is taken so that it starts first:
+     * the write-behind storage replays its log into like_count on start, before the index is built from it.
+     */
+    @Autowired
+    public PopularityIndex(@Qualifier("dbStorage") FilmStorage filmStorage,
+                           @Qualifier("dbStorage") GenreStorage genreStorage,
+                           @Qualifier("dbStorage") LikesStorage likesStorage) {
+        this.filmStorage = filmStorage;
+        this.genreStorage = genreStorage;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        log.info("Rebuilding popularity index");
+        Map<Long, IndexedFilm> newFilms = new HashMap<>();
+        Map<Bucket, NavigableSet<IndexedFilm>> newBuckets = new HashMap<>();
+        long after = 0;
+        List<Film> page;
+        do {
+            page = filmStorage.getFilms(after, REBUILD_PAGE_SIZE);
+            Set<Long> filmIds = page.stream()
+                    .map(Film::getId)
+                    .collect(Collectors.toSet());
+            Map<Long, List<Genre>> genres = genreStorage.getFilmGenres(filmIds);
+            for (Film film : page) {
+                IndexedFilm indexed = new IndexedFilm(film.getId(),
+                        film.getReleaseDate().getYear(),
+                        toGenreIds(genres.getOrDefault(film.getId(), List.of())),
+                        (int) film.getLikeCount());
+                newFilms.put(indexed.getId(), indexed);
+                for (Bucket bucket : bucketsOf(indexed)) {
+                    newBuckets.computeIfAbsent(bucket, b -> new TreeSet<>(BY_POPULARITY)).add(indexed);
+                }
+            }
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == REBUILD_PAGE_SIZE);
+
+        lock.writeLock().lock();
+        try {
+            films = newFilms;
+            buckets = newBuckets;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Popularity index rebuilt, {} films indexed", newFilms.size());
+    }
+
+    public void addFilm(Film film) {
+        addFilms(List.of(film));
+    }
+
+    public void addFilms(List<Film> newFilms) {
+        lock.writeLock().lock();
+        try {
+            for (Film film : newFilms) {
+                replace(films.get(film.getId()), new IndexedFilm(film.getId(), film.getReleaseDate().getYear(),
+                        toGenreIds(film.getGenres()), 0));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void updateFilm(Film film) {
+        lock.writeLock().lock();
+        try {
+            IndexedFilm old = films.get(film.getId());
+            int likes = old == null ? 0 : old.getLikes();
+            replace(old, new IndexedFilm(film.getId(), film.getReleaseDate().getYear(),
+                    toGenreIds(film.getGenres()), likes));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            replace(films.get(filmId), null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addLike(Long filmId) {
+        changeLikes(filmId, 1);
+    }
+
+    public void removeLike(Long filmId) {
+        changeLikes(filmId, -1);
+    }
+
+    /**
+     * Applies like count changes of many films under one lock, for bulk like requests.
+     */
+    public void changeLikes(Map<Long, Integer> deltas) {
+        lock.writeLock().lock();
+        try {
+            deltas.forEach(this::changeLikesLocked);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Long> getTopFilmIds(int count, long genreId, int year) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<IndexedFilm> bucket = buckets.get(new Bucket(genreId, year));
+            List<Long> ids = new ArrayList<>(Math.min(count, bucket == null ? 0 : bucket.size()));
+            if (bucket == null) {
+                return ids;
+            }
+            Iterator<IndexedFilm> iterator = bucket.iterator();
+            while (iterator.hasNext() && ids.size() < count) {
+                ids.add(iterator.next().getId());
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<Long, Integer> getLikes(Collection<Long> filmIds) {
+        Map<Long, Integer> likes = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Long filmId : filmIds) {
+                IndexedFilm indexed = films.get(filmId);
+                if (indexed != null) {
+                    likes.put(filmId, indexed.getLikes());
+                }
+            }
+            return likes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void changeLikes(Long filmId, int delta) {
+        lock.writeLock().lock();
+        try {
+            changeLikesLocked(filmId, delta);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void changeLikesLocked(Long filmId, int delta) {
+        IndexedFilm old = films.get(filmId);
+        if (old == null) {
+            log.warn("Film id {} is not in popularity index", filmId);
+            return;
+        }
+        replace(old, new IndexedFilm(old.getId(), old.getYear(), old.getGenreIds(),
+                Math.max(0, old.getLikes() + delta)));
+    }
+
+    // Sorted sets can't re-sort an element in place, so every change removes the old entry and adds a new one
+    private void replace(IndexedFilm old, IndexedFilm updated) {
+        if (old != null) {
+            films.remove(old.getId());
+            for (Bucket bucket : bucketsOf(old)) {
+                NavigableSet<IndexedFilm> set = buckets.get(bucket);
+                set.remove(old);
+                if (set.isEmpty()) {
+                    buckets.remove(bucket);
+                }
+            }
+        }
+        if (updated != null) {
+            films.put(updated.getId(), updated);
+            for (Bucket bucket : bucketsOf(updated)) {
+                buckets.computeIfAbsent(bucket, b -> new TreeSet<>(BY_POPULARITY)).add(updated);
+            }
+        }
+    }
+
+    private List<Bucket> bucketsOf(IndexedFilm film) {
+        List<Bucket> result = new ArrayList<>();
+        result.add(new Bucket(0, 0));
+        result.add(new Bucket(0, film.getYear()));
+        for (Long genreId : film.getGenreIds()) {
+            result.add(new Bucket(genreId, 0));
+            result.add(new Bucket(genreId, film.getYear()));
+        }
+        return result;
+    }
+
+    private Set<Long> toGenreIds(List<Genre> genres) {
+        if (genres == null) {
+            return Set.of();
+        }
+        return genres.stream()
+                .map(Genre::getId)
+                .collect(Collectors.toSet());
+    }
+
+    @Value
+    private static class Bucket {
+        long genreId;
+        int year;
+    }
+
+    @Value
+    private static class IndexedFilm {
+        long id;
+        int year;
+        Set<Long> genreIds;
+        int likes;
+    }
+}
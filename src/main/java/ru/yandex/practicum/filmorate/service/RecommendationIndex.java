@@ -0,0 +1,256 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.likes.LikesStorage;
+import ru.yandex.practicum.filmorate.util.LongBuffer;
+import ru.yandex.practicum.filmorate.util.SortedArrays;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * User-item like graph kept in memory: the films of each user as a sorted long array and the users of each film
+ * in a growable buffer in the order they liked it, so a like to a popular film is an append, not a copy.
+ * Recommendations pick the users most similar to the given one by Jaccard similarity of liked films
+ * and rank the films they liked, weighted by similarity, that the given user hasn't liked yet.
+ * Candidates are the latest max-likers-per-film users of each liked film, which bounds the cost for popular films.
+ */
+@Slf4j
+@Component
+public class RecommendationIndex {
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private final FilmStorage filmStorage;
+    private final LikesStorage likesStorage;
+    private final int neighbours;
+    private final int maxResults;
+    private final int maxLikersPerFilm;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, long[]> filmsByUser = new HashMap<>();
+    private Map<Long, LongBuffer> usersByFilm = new HashMap<>();
+
+    @Autowired
+    public RecommendationIndex(@Qualifier("dbStorage") FilmStorage filmStorage,
+                               @Qualifier("dbStorage") LikesStorage likesStorage,
+                               @Value("${filmorate.recommendations.neighbours:10}") int neighbours,
+                               @Value("${filmorate.recommendations.max-results:50}") int maxResults,
+                               @Value("${filmorate.recommendations.max-likers-per-film:1000}") int maxLikersPerFilm) {
+        this.filmStorage = filmStorage;
+        this.likesStorage = likesStorage;
+        this.neighbours = neighbours;
+        this.maxResults = maxResults;
+        this.maxLikersPerFilm = maxLikersPerFilm;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        log.info("Rebuilding recommendation index");
+        Map<Long, List<Long>> likedFilms = new HashMap<>();
+        Map<Long, LongBuffer> newUsersByFilm = new HashMap<>();
+        long after = 0;
+        List<Film> page;
+        do {
+            page = filmStorage.getFilms(after, REBUILD_PAGE_SIZE);
+            Set<Long> filmIds = page.stream()
+                    .map(Film::getId)
+                    .collect(Collectors.toSet());
+            for (Map.Entry<Long, List<Long>> likes : likesStorage.getLikesByFilms(filmIds).entrySet()) {
+                LongBuffer likers = new LongBuffer();
+                for (Long userId : likes.getValue()) {
+                    likers.add(userId);
+                    likedFilms.computeIfAbsent(userId, id -> new ArrayList<>()).add(likes.getKey());
+                }
+                newUsersByFilm.put(likes.getKey(), likers);
+            }
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == REBUILD_PAGE_SIZE);
+        Map<Long, long[]> newFilmsByUser = new HashMap<>();
+        likedFilms.forEach((userId, filmIds) -> newFilmsByUser.put(userId, SortedArrays.of(filmIds)));
+
+        lock.writeLock().lock();
+        try {
+            filmsByUser = newFilmsByUser;
+            usersByFilm = newUsersByFilm;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Recommendation index rebuilt, {} users and {} films indexed",
+                newFilmsByUser.size(), newUsersByFilm.size());
+    }
+
+    public void addLike(Long userId, Long filmId) {
+        lock.writeLock().lock();
+        try {
+            link(userId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLike(Long userId, Long filmId) {
+        lock.writeLock().lock();
+        try {
+            unlink(userId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies likes added and removed by a bulk like request, in order and under one lock.
+     */
+    public void applyLikes(List<LikeOperation> operations) {
+        lock.writeLock().lock();
+        try {
+            for (LikeOperation operation : operations) {
+                if (operation.getOperation() == Operation.ADD) {
+                    link(operation.getUserId(), operation.getFilmId());
+                } else {
+                    unlink(operation.getUserId(), operation.getFilmId());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(Long userId) {
+        lock.writeLock().lock();
+        try {
+            for (long filmId : filmsByUser.getOrDefault(userId, SortedArrays.EMPTY)) {
+                removeLiker(filmId, userId);
+            }
+            filmsByUser.remove(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            LongBuffer likers = usersByFilm.remove(filmId);
+            if (likers == null) {
+                return;
+            }
+            for (int i = 0; i < likers.size(); i++) {
+                long userId = likers.get(i);
+                putOrRemove(filmsByUser, userId, SortedArrays.delete(filmsByUser.getOrDefault(userId, SortedArrays.EMPTY), filmId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Long> recommend(Long userId) {
+        lock.readLock().lock();
+        try {
+            long[] liked = filmsByUser.getOrDefault(userId, SortedArrays.EMPTY);
+            if (liked.length == 0) {
+                return List.of();
+            }
+
+            // only users who share at least one film can have non-zero similarity
+            Map<Long, Integer> overlaps = new HashMap<>();
+            for (long filmId : liked) {
+                LongBuffer likers = usersByFilm.get(filmId);
+                if (likers == null) {
+                    continue;
+                }
+                for (int i = likers.size() - 1; i >= Math.max(0, likers.size() - maxLikersPerFilm); i--) {
+                    long otherId = likers.get(i);
+                    if (otherId != userId) {
+                        overlaps.merge(otherId, 1, Integer::sum);
+                    }
+                }
+            }
+
+            PriorityQueue<Neighbour> closest = new PriorityQueue<>(Comparator.comparingDouble(Neighbour::getSimilarity));
+            for (Map.Entry<Long, Integer> overlap : overlaps.entrySet()) {
+                int otherSize = filmsByUser.get(overlap.getKey()).length;
+                double similarity = (double) overlap.getValue() / (liked.length + otherSize - overlap.getValue());
+                closest.add(new Neighbour(overlap.getKey(), similarity));
+                if (closest.size() > neighbours) {
+                    closest.poll();
+                }
+            }
+
+            Map<Long, Double> scores = new HashMap<>();
+            for (Neighbour neighbour : closest) {
+                for (long filmId : filmsByUser.get(neighbour.getUserId())) {
+                    if (!SortedArrays.contains(liked, filmId)) {
+                        scores.merge(filmId, neighbour.getSimilarity(), Double::sum);
+                    }
+                }
+            }
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .limit(maxResults)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void link(Long userId, Long filmId) {
+        long[] films = filmsByUser.getOrDefault(userId, SortedArrays.EMPTY);
+        long[] updated = SortedArrays.insert(films, filmId);
+        if (updated == films) {
+            return;
+        }
+        filmsByUser.put(userId, updated);
+        usersByFilm.computeIfAbsent(filmId, id -> new LongBuffer()).add(userId);
+    }
+
+    private void unlink(Long userId, Long filmId) {
+        long[] films = filmsByUser.getOrDefault(userId, SortedArrays.EMPTY);
+        long[] updated = SortedArrays.delete(films, filmId);
+        if (updated == films) {
+            return;
+        }
+        putOrRemove(filmsByUser, userId, updated);
+        removeLiker(filmId, userId);
+    }
+
+    private void removeLiker(long filmId, long userId) {
+        LongBuffer likers = usersByFilm.get(filmId);
+        if (likers != null && likers.remove(userId) && likers.size() == 0) {
+            usersByFilm.remove(filmId);
+        }
+    }
+
+    private static void putOrRemove(Map<Long, long[]> map, Long key, long[] values) {
+        if (values.length == 0) {
+            map.remove(key);
+        } else {
+            map.put(key, values);
+        }
+    }
+
+    @lombok.Value
+    private static class Neighbour {
+        long userId;
+        double similarity;
+    }
+}
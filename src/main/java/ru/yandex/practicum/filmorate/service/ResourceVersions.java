@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory version counters behind the ETags of polled resources: one per film, one per director and one for
+ * the director table. A change is counted after its transaction commits, so a version is never ahead of the data
+ * a reader can see. Every tag starts with an epoch picked at start, which covers mpa and genre: they are read-only
+ * and only change with a migration. Counters of deleted films and directors are kept, so an old tag never matches
+ * again. Like the other indexes this assumes writes go through this instance.
+ */
+@Component
+public class ResourceVersions {
+    private final String epoch = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36);
+    private final Map<Long, Long> films = new ConcurrentHashMap<>();
+    private final Map<Long, Long> directors = new ConcurrentHashMap<>();
+    private final AtomicLong directorTable = new AtomicLong();
+
+    public String filmTag(Long filmId) {
+        // films carry their directors' names, so a director change is a change of the film too
+        return epoch + "-" + films.getOrDefault(filmId, 0L) + "-" + directorTable.get();
+    }
+
+    public String directorTag(Long directorId) {
+        return epoch + "-" + directors.getOrDefault(directorId, 0L);
+    }
+
+    public String directorsTag() {
+        return epoch + "-" + directorTable.get();
+    }
+
+    public String referenceTag() {
+        return epoch;
+    }
+
+    public void filmChanged(Long filmId) {
+        afterCommit(() -> films.merge(filmId, 1L, Long::sum));
+    }
+
+    public void filmsChanged(Collection<Long> filmIds) {
+        afterCommit(() -> filmIds.forEach(filmId -> films.merge(filmId, 1L, Long::sum)));
+    }
+
+    public void directorChanged(Long directorId) {
+        afterCommit(() -> {
+            directors.merge(directorId, 1L, Long::sum);
+            directorTable.incrementAndGet();
+        });
+    }
+
+    private static void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+}
@@ -7,7 +7,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import ru.yandex.practicum.filmorate.model.Review;
-import ru.yandex.practicum.filmorate.storage.feed.EventStorage;
+import ru.yandex.practicum.filmorate.model.ReviewCursor;
+import ru.yandex.practicum.filmorate.model.ReviewPage;
 import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
 
 import java.util.List;
@@ -20,13 +21,13 @@ import static ru.yandex.practicum.filmorate.model.Operation.*;
 public class ReviewService {
 
     private final ReviewStorage reviewStorage;
-    private final EventStorage eventStorage;
+    private final FeedService feedService;
 
     @Autowired
     public ReviewService(@Qualifier("dbStorage") ReviewStorage reviewStorage,
-                         @Qualifier("dbStorage") EventStorage eventStorage) {
+                         FeedService feedService) {
         this.reviewStorage = reviewStorage;
-        this.eventStorage = eventStorage;
+        this.feedService = feedService;
     }
 
     @PostMapping
@@ -34,7 +35,7 @@ public class ReviewService {
         log.info("Adding review {}", review);
         reviewStorage.addReview(review);
         log.info("Review added {}", review);
-        eventStorage.addEvent(review.getUserId(), REVIEW, ADD, review.getReviewId());
+        feedService.addEvent(review.getUserId(), REVIEW, ADD, review.getReviewId());
         return review;
     }
 
@@ -42,7 +43,7 @@ public class ReviewService {
     public Review putReview(Review review) {
         log.info("Updating review {}", review);
         Review r = reviewStorage.updateReview(review);
-        eventStorage.addEvent(r.getUserId(), REVIEW, UPDATE, r.getFilmId());
+        feedService.addEvent(r.getUserId(), REVIEW, UPDATE, r.getFilmId());
         return r;
     }
 
@@ -50,7 +51,7 @@ public class ReviewService {
         log.info("Deleting review id {}", id);
         Review review = getReview(id);
         reviewStorage.deleteReview(id);
-        eventStorage.addEvent(review.getUserId(), REVIEW, REMOVE, review.getReviewId());
+        feedService.addEvent(review.getUserId(), REVIEW, REMOVE, review.getReviewId());
     }
 
     public Review getReview(Long id) {
@@ -60,18 +61,31 @@ public class ReviewService {
         return review;
     }
 
-    public List<Review> getFilmReviews(Long filmId, Integer count) {
-        log.info("Looking for {} reviews of film id {}", count, filmId);
-        List<Review> reviews = reviewStorage.getFilmReviews(filmId, count);
+    public ReviewPage getFilmReviews(Long filmId, Integer count, String cursor) {
+        log.info("Looking for {} reviews of film id {} after cursor {}", count, filmId, cursor);
+        // one review more than asked tells whether there is a next page
+        List<Review> reviews = reviewStorage.getFilmReviews(filmId, count + 1, parseCursor(cursor));
         log.info("Found {} reviews", reviews.size());
-        return reviews;
+        return toPage(reviews, count);
     }
 
-    public List<Review> getReviews(Integer count) {
-        log.info("Looking for reviews of film id {}", count);
-        List<Review> reviews = reviewStorage.getReviews(count);
+    public ReviewPage getReviews(Integer count, String cursor) {
+        log.info("Looking for {} reviews after cursor {}", count, cursor);
+        List<Review> reviews = reviewStorage.getReviews(count + 1, parseCursor(cursor));
         log.info("Found {} reviews", reviews.size());
-        return reviews;
+        return toPage(reviews, count);
+    }
+
+    private static ReviewCursor parseCursor(String cursor) {
+        return cursor == null || cursor.isEmpty() ? null : ReviewCursor.parse(cursor);
+    }
+
+    private static ReviewPage toPage(List<Review> reviews, int count) {
+        if (reviews.size() <= count) {
+            return new ReviewPage(reviews, null);
+        }
+        List<Review> page = reviews.subList(0, Math.max(count, 0));
+        return new ReviewPage(page, page.isEmpty() ? null : ReviewCursor.after(page.get(page.size() - 1)).toToken());
     }
 
     public void addLike(Long reviewId, Long userId) {
@@ -0,0 +1,445 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.util.SortedArrays;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Trigram index over film titles and director names for /films/search.
+ * A query of three or more characters intersects the posting lists of its trigrams and checks the survivors
+ * with a plain substring test, a shorter one reads the posting list of that one or two character substring.
+ * Matches are ranked: whole text starts with the query, then a word starts with it, then any substring;
+ * ties are broken by likes and film id.
+ * The index is rebuilt from the database on startup and then kept up to date by FilmService and DirectorService.
+ */
+@Slf4j
+@Component
+public class SearchIndex {
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    private static final int GRAM_LENGTH = 3;
+    private static final int TEXT_PREFIX = 3;
+    private static final int WORD_PREFIX = 2;
+    private static final int SUBSTRING = 1;
+
+    private final FilmStorage filmStorage;
+    private final DirectorStorage directorStorage;
+    private final PopularityIndex popularityIndex;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private TextIndex titles = new TextIndex();
+    private TextIndex directorNames = new TextIndex();
+    private Map<Long, long[]> directorsByFilm = new HashMap<>();
+    private Map<Long, PostingList> filmsByDirector = new HashMap<>();
+
+    @Autowired
+    public SearchIndex(@Qualifier("dbStorage") FilmStorage filmStorage,
+                       @Qualifier("dbStorage") DirectorStorage directorStorage,
+                       PopularityIndex popularityIndex) {
+        this.filmStorage = filmStorage;
+        this.directorStorage = directorStorage;
+        this.popularityIndex = popularityIndex;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        log.info("Rebuilding search index");
+        TextIndex newTitles = new TextIndex();
+        TextIndex newDirectorNames = new TextIndex();
+        Map<Long, long[]> newDirectorsByFilm = new HashMap<>();
+        Map<Long, PostingList> newFilmsByDirector = new HashMap<>();
+        for (Director director : directorStorage.getAllDirectors()) {
+            newDirectorNames.put(director.getId(), director.getName());
+        }
+        long after = 0;
+        List<Film> page;
+        do {
+            page = filmStorage.getFilms(after, REBUILD_PAGE_SIZE);
+            Set<Long> filmIds = page.stream()
+                    .map(Film::getId)
+                    .collect(Collectors.toSet());
+            Map<Long, Set<Director>> directors = directorStorage.getDirectorsByFilms(filmIds);
+            for (Film film : page) {
+                newTitles.put(film.getId(), film.getName());
+                long[] directorIds = toSortedArray(directors.get(film.getId()));
+                if (directorIds.length > 0) {
+                    newDirectorsByFilm.put(film.getId(), directorIds);
+                }
+                for (long directorId : directorIds) {
+                    newFilmsByDirector.computeIfAbsent(directorId, id -> new PostingList()).add(film.getId());
+                }
+            }
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == REBUILD_PAGE_SIZE);
+
+        lock.writeLock().lock();
+        try {
+            titles = newTitles;
+            directorNames = newDirectorNames;
+            directorsByFilm = newDirectorsByFilm;
+            filmsByDirector = newFilmsByDirector;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Search index rebuilt, {} titles and {} directors indexed",
+                newTitles.size(), newDirectorNames.size());
+    }
+
+    public void putFilm(Film film) {
+        putFilms(List.of(film));
+    }
+
+    public void putFilms(List<Film> films) {
+        lock.writeLock().lock();
+        try {
+            for (Film film : films) {
+                long[] directorIds = toSortedArray(film.getDirectors());
+                titles.put(film.getId(), film.getName());
+                unlinkDirectors(film.getId());
+                if (directorIds.length > 0) {
+                    directorsByFilm.put(film.getId(), directorIds);
+                }
+                for (long directorId : directorIds) {
+                    filmsByDirector.computeIfAbsent(directorId, id -> new PostingList()).add(film.getId());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            titles.remove(filmId);
+            unlinkDirectors(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putDirector(Director director) {
+        lock.writeLock().lock();
+        try {
+            directorNames.put(director.getId(), director.getName());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDirector(Long directorId) {
+        lock.writeLock().lock();
+        try {
+            directorNames.remove(directorId);
+            PostingList films = filmsByDirector.remove(directorId);
+            if (films == null) {
+                return;
+            }
+            for (long filmId : films.toArray()) {
+                long[] directorIds = SortedArrays.delete(directorsByFilm.getOrDefault(filmId, SortedArrays.EMPTY), directorId);
+                if (directorIds.length == 0) {
+                    directorsByFilm.remove(filmId);
+                } else {
+                    directorsByFilm.put(filmId, directorIds);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns ids of films matching the query, best matches first.
+     * A null limit returns every match after the offset.
+     */
+    public List<Long> search(String query, boolean byTitle, boolean byDirector, int offset, Integer limit) {
+        String normalized = normalize(query);
+        Map<Long, Integer> ranks = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            if (byTitle) {
+                ranks.putAll(titles.find(normalized));
+            }
+            if (byDirector) {
+                directorNames.find(normalized).forEach((directorId, rank) -> {
+                    PostingList films = filmsByDirector.get(directorId);
+                    if (films != null) {
+                        for (long filmId : films.toArray()) {
+                            ranks.merge(filmId, rank, Math::max);
+                        }
+                    }
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (offset >= ranks.size()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, Integer> likes = popularityIndex.getLikes(ranks.keySet());
+        List<Match> matches = new ArrayList<>(ranks.size());
+        ranks.forEach((filmId, rank) -> matches.add(new Match(filmId, rank, likes.getOrDefault(filmId, 0))));
+        Comparator<Match> bestFirst = Comparator.comparingInt(Match::getRank).reversed()
+                .thenComparing(Comparator.comparingInt(Match::getLikes).reversed())
+                .thenComparingLong(Match::getFilmId);
+        int wanted = limit == null ? matches.size() : (int) Math.min(matches.size(), (long) offset + limit);
+        return top(matches, wanted, bestFirst).stream()
+                .skip(offset)
+                .map(Match::getFilmId)
+                .collect(Collectors.toList());
+    }
+
+    private void unlinkDirectors(Long filmId) {
+        long[] old = directorsByFilm.remove(filmId);
+        if (old == null) {
+            return;
+        }
+        for (long directorId : old) {
+            PostingList films = filmsByDirector.get(directorId);
+            if (films != null && films.remove(filmId) && films.isEmpty()) {
+                filmsByDirector.remove(directorId);
+            }
+        }
+    }
+
+    // Only the first offset + limit matches are ever returned, so a bounded heap avoids sorting everything
+    private static List<Match> top(List<Match> matches, int count, Comparator<Match> bestFirst) {
+        if (count >= matches.size()) {
+            matches.sort(bestFirst);
+            return matches;
+        }
+        PriorityQueue<Match> best = new PriorityQueue<>(count + 1, bestFirst.reversed());
+        for (Match match : matches) {
+            best.add(match);
+            if (best.size() > count) {
+                best.poll();
+            }
+        }
+        List<Match> result = new ArrayList<>(best);
+        result.sort(bestFirst);
+        return result;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private static long[] toSortedArray(Collection<Director> directors) {
+        if (directors == null) {
+            return SortedArrays.EMPTY;
+        }
+        return directors.stream()
+                .mapToLong(Director::getId)
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+
+    @Value
+    private static class Match {
+        long filmId;
+        int rank;
+        int likes;
+    }
+
+    /**
+     * Lower-cased texts by id plus a posting list of ids for every trigram of the text.
+     * Texts are padded with a space on both sides so that one and two character texts still have a trigram.
+     * Every one and two character substring has a posting list as well, so short queries need no scan.
+     */
+    private static class TextIndex {
+        private final Map<Long, String> texts = new HashMap<>();
+        private final Map<String, PostingList> postings = new HashMap<>();
+        private final Map<String, PostingList> shortPostings = new HashMap<>();
+
+        int size() {
+            return texts.size();
+        }
+
+        void put(Long id, String text) {
+            remove(id);
+            String normalized = normalize(text);
+            texts.put(id, normalized);
+            for (String gram : grams(" " + normalized + " ")) {
+                postings.computeIfAbsent(gram, g -> new PostingList()).add(id);
+            }
+            for (String gram : shortGrams(normalized)) {
+                shortPostings.computeIfAbsent(gram, g -> new PostingList()).add(id);
+            }
+        }
+
+        void remove(Long id) {
+            String old = texts.remove(id);
+            if (old == null) {
+                return;
+            }
+            for (String gram : grams(" " + old + " ")) {
+                unlink(postings, gram, id);
+            }
+            for (String gram : shortGrams(old)) {
+                unlink(shortPostings, gram, id);
+            }
+        }
+
+        private static void unlink(Map<String, PostingList> postings, String gram, Long id) {
+            PostingList ids = postings.get(gram);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+
+        Map<Long, Integer> find(String query) {
+            Map<Long, Integer> result = new HashMap<>();
+            for (long id : candidates(query)) {
+                String text = texts.get(id);
+                if (text == null || !text.contains(query)) {
+                    continue;
+                }
+                int rank = text.startsWith(query) ? TEXT_PREFIX
+                        : text.contains(" " + query) ? WORD_PREFIX : SUBSTRING;
+                result.put(id, rank);
+            }
+            return result;
+        }
+
+        private long[] candidates(String query) {
+            if (query.isEmpty()) {
+                return texts.keySet().stream().mapToLong(Long::longValue).toArray();
+            }
+            if (query.length() < GRAM_LENGTH) {
+                PostingList list = shortPostings.get(query);
+                return list == null ? SortedArrays.EMPTY : list.toArray();
+            }
+            List<PostingList> lists = new ArrayList<>();
+            for (String gram : grams(query)) {
+                PostingList list = postings.get(gram);
+                if (list == null) {
+                    return SortedArrays.EMPTY;
+                }
+                lists.add(list);
+            }
+            // start from the rarest trigram so every later step only probes a short candidate list
+            lists.sort(Comparator.comparingInt(PostingList::size));
+            long[] result = lists.get(0).toArray();
+            for (int i = 1; i < lists.size() && result.length > 0; i++) {
+                result = lists.get(i).retain(result);
+            }
+            return result;
+        }
+
+        private static Set<String> grams(String text) {
+            return grams(text, GRAM_LENGTH);
+        }
+
+        private static Set<String> shortGrams(String text) {
+            Set<String> grams = new LinkedHashSet<>();
+            for (int length = 1; length < GRAM_LENGTH; length++) {
+                grams.addAll(grams(text, length));
+            }
+            return grams;
+        }
+
+        private static Set<String> grams(String text, int length) {
+            Set<String> grams = new LinkedHashSet<>();
+            for (int i = 0; i + length <= text.length(); i++) {
+                grams.add(text.substring(i, i + length));
+            }
+            return grams;
+        }
+    }
+
+    /**
+     * Growable sorted array of ids. New films get increasing ids, so adds are almost always appends.
+     */
+    private static class PostingList {
+        private long[] values = new long[4];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(long value) {
+            if (size > 0 && values[size - 1] >= value) {
+                int position = Arrays.binarySearch(values, 0, size, value);
+                if (position >= 0) {
+                    return;
+                }
+                insertAt(-position - 1, value);
+                return;
+            }
+            insertAt(size, value);
+        }
+
+        boolean remove(long value) {
+            int position = Arrays.binarySearch(values, 0, size, value);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(values, position + 1, values, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        // keeps the given sorted ids that are also in this list
+        long[] retain(long[] candidates) {
+            long[] result = new long[candidates.length];
+            int count = 0;
+            int from = 0;
+            for (long candidate : candidates) {
+                int position = Arrays.binarySearch(values, from, size, candidate);
+                if (position >= 0) {
+                    result[count++] = candidate;
+                    from = position + 1;
+                } else {
+                    from = -position - 1;
+                }
+                if (from >= size) {
+                    break;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        private void insertAt(int position, long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, position, values, position + 1, size - position);
+            values[position] = value;
+            size++;
+        }
+    }
+}
@@ -3,22 +3,22 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exceptions.FriendshipRequestExistsException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.storage.feed.EventStorage;
-import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.model.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.datasource.ReadRouting;
 import ru.yandex.practicum.filmorate.storage.friends.FriendsStorage;
-import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.likes.LikesStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import static ru.yandex.practicum.filmorate.model.EventType.FRIEND;
 import static ru.yandex.practicum.filmorate.model.Operation.ADD;
@@ -27,26 +27,46 @@ import static ru.yandex.practicum.filmorate.model.Operation.REMOVE;
 @Service
 @Slf4j
 public class UserService {
+    private static final int STREAM_PAGE_SIZE = 1000;
+
     private final UserStorage userStorage;
     private final FriendsStorage friendsStorage;
     private final LikesStorage likesStorage;
-    private final FilmStorage filmStorage;
-    private final GenreStorage genreStorage;
-    private final EventStorage eventStorage;
+    private final FeedService feedService;
+    private final FilmService filmService;
+    private final PopularityIndex popularityIndex;
+    private final RecommendationIndex recommendationIndex;
+    private final FriendsIndex friendsIndex;
+    private final ReadRouting readRouting;
+    private final ResourceVersions resourceVersions;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int maxPageSize;
 
     @Autowired
     public UserService(@Qualifier("dbStorage") UserStorage userStorage,
                        @Qualifier("dbStorage") FriendsStorage friendsStorage,
                        @Qualifier("dbStorage") LikesStorage likesStorage,
-                       @Qualifier("dbStorage") FilmStorage filmStorage,
-                       @Qualifier("dbStorage") GenreStorage genreStorage,
-                       @Qualifier("dbStorage") EventStorage eventStorage) {
+                       FeedService feedService,
+                       FilmService filmService,
+                       PopularityIndex popularityIndex,
+                       RecommendationIndex recommendationIndex,
+                       FriendsIndex friendsIndex,
+                       ReadRouting readRouting,
+                       ResourceVersions resourceVersions,
+                       ApplicationEventPublisher eventPublisher,
+                       @Value("${filmorate.http.max-page-size:1000}") int maxPageSize) {
         this.userStorage = userStorage;
         this.friendsStorage = friendsStorage;
         this.likesStorage = likesStorage;
-        this.filmStorage = filmStorage;
-        this.genreStorage = genreStorage;
-        this.eventStorage = eventStorage;
+        this.feedService = feedService;
+        this.filmService = filmService;
+        this.popularityIndex = popularityIndex;
+        this.recommendationIndex = recommendationIndex;
+        this.friendsIndex = friendsIndex;
+        this.readRouting = readRouting;
+        this.resourceVersions = resourceVersions;
+        this.eventPublisher = eventPublisher;
+        this.maxPageSize = maxPageSize;
     }
 
     public User addUser(User user) {
@@ -55,12 +75,16 @@ public class UserService {
             log.error("User name empty. Set login {} as name", user.getLogin());
             user.setName(user.getLogin());
         }
-        return userStorage.addUser(user);
+        User added = userStorage.addUser(user);
+        readRouting.wrote(added.getId());
+        return added;
     }
 
     public User putUser(User user) {
         log.info("Trying to update user: {}", user);
-        return userStorage.putUser(user);
+        User updated = userStorage.putUser(user);
+        readRouting.wrote(updated.getId());
+        return updated;
     }
 
     public List<User> getUsers() {
@@ -69,6 +93,32 @@ public class UserService {
         return users;
     }
 
+    public List<User> getUsers(Long after, Integer limit) {
+        if (limit <= 0) {
+            log.error("Limit must be more than zero");
+            throw new IllegalArgumentException("Limit must be more than zero");
+        }
+        if (limit > maxPageSize) {
+            log.error("Limit must not exceed {}", maxPageSize);
+            throw new IllegalArgumentException("Limit must not exceed " + maxPageSize);
+        }
+        List<User> users = userStorage.getUsers(after, limit);
+        log.info("Returning {} users after id {}", users.size(), after);
+        return users;
+    }
+
+    public void streamUsers(Consumer<User> consumer) {
+        long after = 0;
+        List<User> page;
+        do {
+            page = userStorage.getUsers(after, STREAM_PAGE_SIZE);
+            page.forEach(consumer);
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == STREAM_PAGE_SIZE);
+    }
+
     public User findUser(Long userId) {
         log.info("Looking for user: {}", userId);
         return userStorage.findUser(userId);
@@ -82,7 +132,8 @@ public class UserService {
         log.info("Making friends id {} and {}", userId, friendId);
         try {
             friendsStorage.addFriend(userId, friendId);
-            eventStorage.addEvent(userId, FRIEND, ADD, friendId);
+            friendsIndex.addFriend(userId, friendId);
+            feedService.addEvent(userId, FRIEND, ADD, friendId);
         } catch (FriendshipRequestExistsException e) {
             log.info(e.getMessage());
         }
@@ -95,70 +146,53 @@ public class UserService {
         }
         log.info("Deleting friends id {} and {}", userId, friendId);
         friendsStorage.removeFriend(userId, friendId);
-        eventStorage.addEvent(userId, FRIEND, REMOVE, friendId);
+        friendsIndex.removeFriend(userId, friendId);
+        feedService.addEvent(userId, FRIEND, REMOVE, friendId);
     }
 
     public List<Film> recomendFilms(long userId) {
-        List<User> users = userStorage.getAllUsersWIthlikes();
-        User currentUser = users.stream()
-                .filter(u -> u.getId() == userId)
-                .findFirst().get();
-
-        users.remove(currentUser);
-        List<Long> currentUserFilmsIds = currentUser.getLikes();
-
-        int count = 0;//max возможное пересечение
-        List<Long> filmIdsBuffer = new ArrayList<>();
-        for (User user : users) {
-            List<Long> userFilmsIds = user.getLikes();
-
-            int currentCount = (int) currentUserFilmsIds.stream() // текущий счетчик пересечения
-                    .filter(userFilmsIds::contains)
-                    .count();
-            if (currentCount > count) {
-                count = currentCount;
-                filmIdsBuffer = userFilmsIds;
-            }
-        }
-        List<Long> recommendedFilmsIds = filmIdsBuffer.stream()
-                .filter(newUserFilmId -> currentUserFilmsIds.stream()
-                        .noneMatch(newUserFilmId::equals))
-                .collect(Collectors.toList());
-
-        if (recommendedFilmsIds.isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        var recommendedFilms = filmStorage.findAllFilmsByIds(recommendedFilmsIds);
-        for (Film film : recommendedFilms) {
-            film.setGenres(genreStorage.getFilmGenres(film.getId()));
-            film.setLikes(likesStorage.getLikes(film.getId()).stream()
-                    .map(f -> f.getUserId())
-                    .collect(Collectors.toList()));
-        }
-
-        return recommendedFilms;
+        findUser(userId);
+        log.info("Looking for recommendations for user id {}", userId);
+        List<Long> recommendedFilmsIds = recommendationIndex.recommend(userId);
+        log.info("Found {} recommended films", recommendedFilmsIds.size());
+        return readRouting.readFor(userId, () -> filmService.findFilms(recommendedFilmsIds));
     }
 
     public List<User> getFriends(Long id) {
         findUser(id);
         log.info("Looking for friend of Id: {}", id);
-        return friendsStorage.getFriends(id);
+        return readRouting.readFor(id, () -> friendsStorage.getFriends(id));
     }
 
     public List<User> getCommonFriends(Long id, Long otherId) {
         log.info("Looking for common friends for {}  and {}", id, otherId);
-        return friendsStorage.getCommonFriends(id, otherId);
+        if (!friendsIndex.isEnabled()) {
+            return readRouting.readFor(id, () -> friendsStorage.getCommonFriends(id, otherId));
+        }
+        List<Long> commonIds = friendsIndex.getCommonFriends(id, otherId);
+        return readRouting.readFor(id, () -> userStorage.findUsersByIds(commonIds));
     }
 
     public List<Event> getFeedForUser(Long userId) {
+        return getFeedForUser(userId, null, null, null);
+    }
+
+    public List<Event> getFeedForUser(Long userId, Long since, Long before, Integer limit) {
         log.info("Getting feed for user id {}", userId);
         findUser(userId);
-        return eventStorage.getFeedForUser(userId);
+        return feedService.getFeed(userId, since, before, limit);
     }
 
     public void deleteUser(Long id) {
         log.info("Deleting user with id {}", id);
+        List<Long> likedFilms = likesStorage.getLikedFilms(id);
         userStorage.deleteUser(id);
+        eventPublisher.publishEvent(new UserDeletedEvent(id));
+        likedFilms.forEach(popularityIndex::removeLike);
+        // the films list the user's likes
+        resourceVersions.filmsChanged(likedFilms);
+        recommendationIndex.removeUser(id);
+        friendsIndex.removeUser(id);
+        feedService.evict(id);
     }
 }
\ No newline at end of file
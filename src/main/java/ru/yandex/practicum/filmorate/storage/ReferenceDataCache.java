@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Read-through cache for small reference tables (mpa, genre) that are read on every film write.
+ * The whole table is loaded with one query and kept until the ttl expires or invalidate() is called.
+ * Callers get copies, so changing a returned object never changes the cache.
+ * Lookups answered from memory count as cache.gets result=hit, table loads and unknown ids as result=miss.
+ */
+@Slf4j
+public class ReferenceDataCache<T> {
+    private final String name;
+    private final Supplier<List<T>> loader;
+    private final Function<T, Long> idGetter;
+    private final UnaryOperator<T> copier;
+    private final long ttlMillis;
+    private final Counter hits;
+    private final Counter misses;
+    private volatile Snapshot<T> snapshot;
+
+    public ReferenceDataCache(String name, Supplier<List<T>> loader, Function<T, Long> idGetter,
+                              UnaryOperator<T> copier, Duration ttl, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.loader = loader;
+        this.idGetter = idGetter;
+        this.copier = copier;
+        this.ttlMillis = ttl.toMillis();
+        this.hits = Counter.builder("cache.gets")
+                .tag("cache", name)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("cache.gets")
+                .tag("cache", name)
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    public List<T> getAll() {
+        return current().all.stream()
+                .map(copier)
+                .collect(Collectors.toList());
+    }
+
+    public Optional<T> get(Long id) {
+        T value = current().byId.get(id);
+        if (value == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(copier.apply(value));
+    }
+
+    public void invalidate() {
+        log.info("Cache {} invalidated", name);
+        snapshot = null;
+    }
+
+    private Snapshot<T> current() {
+        Snapshot<T> current = snapshot;
+        if (current == null || System.currentTimeMillis() - current.loadedAt > ttlMillis) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null || System.currentTimeMillis() - current.loadedAt > ttlMillis) {
+                    misses.increment();
+                    current = new Snapshot<>(loader.get(), idGetter);
+                    snapshot = current;
+                    log.info("Cache {} loaded, {} entries", name, current.all.size());
+                }
+            }
+        }
+        return current;
+    }
+
+    private static class Snapshot<T> {
+        private final List<T> all;
+        private final Map<Long, T> byId;
+        private final long loadedAt;
+
+        private Snapshot(List<T> all, Function<T, Long> idGetter) {
+            this.all = List.copyOf(all);
+            this.byId = new LinkedHashMap<>();
+            for (T value : all) {
+                byId.put(idGetter.apply(value), value);
+            }
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+}
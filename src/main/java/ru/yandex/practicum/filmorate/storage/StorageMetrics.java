@@ -0,0 +1,123 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Wraps every *Storage bean of the storage packages in a proxy that times its public methods.
+ * storage.calls is a timer tagged with storage, method and outcome (success or the exception class),
+ * so it gives latency and error rate per method; storage.rows records how many rows a list or map result had.
+ * Both are also tagged with the signature, e.g. getUsers(Long,Integer), so overloads are told apart;
+ * filtering by method alone adds the overloads up.
+ * Histograms are switched on with management.metrics.distribution.percentiles-histogram.storage.calls.
+ * Calls a storage makes to itself are not timed separately.
+ */
+@Slf4j
+@Component
+public class StorageMetrics implements BeanPostProcessor {
+    private static final String STORAGE_PACKAGE = StorageMetrics.class.getPackageName();
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final Map<Method, Meters> meters = new ConcurrentHashMap<>();
+
+    // the registry is looked up on the first call, so it is not created before the other post processors
+    public StorageMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Class<?> type = AopUtils.getTargetClass(bean);
+        if (!type.getPackageName().startsWith(STORAGE_PACKAGE) || !type.getSimpleName().endsWith("Storage")) {
+            return bean;
+        }
+        log.debug("Storage {} instrumented", type.getSimpleName());
+        MethodInterceptor interceptor = this::invoke;
+        if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+            // already proxied for @Transactional, timing goes first so it includes the commit
+            ((Advised) bean).addAdvice(0, interceptor);
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        // storages are injected by class in a few places, so the proxy has to extend it
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        return proxyFactory.getProxy(type.getClassLoader());
+    }
+
+    private Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        if (method.getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+        Meters methodMeters = meters.computeIfAbsent(method, key ->
+                new Meters(invocation.getThis().getClass().getSimpleName(), key.getName(), signature(key)));
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = invocation.proceed();
+        } catch (Throwable e) {
+            methodMeters.timer(e.getClass().getSimpleName()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+        methodMeters.timer("success").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (result instanceof Collection) {
+            methodMeters.rows.record(((Collection<?>) result).size());
+        } else if (result instanceof Map) {
+            methodMeters.rows.record(((Map<?, ?>) result).size());
+        }
+        return result;
+    }
+
+    static String signature(Method method) {
+        return Arrays.stream(method.getParameterTypes())
+                .map(Class::getSimpleName)
+                .collect(Collectors.joining(",", method.getName() + "(", ")"));
+    }
+
+    private class Meters {
+        private final String storage;
+        private final String method;
+        private final String signature;
+        private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+        private final DistributionSummary rows;
+
+        private Meters(String storage, String method, String signature) {
+            this.storage = storage;
+            this.method = method;
+            this.signature = signature;
+            this.rows = DistributionSummary.builder("storage.rows")
+                    .tag("storage", storage)
+                    .tag("method", method)
+                    .tag("signature", signature)
+                    .register(meterRegistry.getObject());
+        }
+
+        private Timer timer(String outcome) {
+            return timers.computeIfAbsent(outcome, key -> Timer.builder("storage.calls")
+                    .tag("storage", storage)
+                    .tag("method", method)
+                    .tag("signature", signature)
+                    .tag("outcome", key)
+                    .register(meterRegistry.getObject()));
+        }
+    }
+}
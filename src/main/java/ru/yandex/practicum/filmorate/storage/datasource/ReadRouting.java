@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.storage.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Marks queries that may be answered by a read replica.
+ * Only queries run inside read() or readFor() can go to a replica, everything else and everything inside
+ * a transaction stays on the primary. Without filmorate.datasource.routing.enabled there is only the primary
+ * and the marks change nothing.
+ * After a user writes something, their own reads stay on the primary for sticky-window,
+ * so they see their writes even when replicas lag behind.
+ */
+@Slf4j
+@Component
+public class ReadRouting {
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    private final ThreadLocal<Boolean> replicaRead = ThreadLocal.withInitial(() -> false);
+    private final Map<Long, Long> stickyUntil = new ConcurrentHashMap<>();
+    private final long stickyWindowNanos;
+
+    @Autowired
+    public ReadRouting(@Value("${filmorate.datasource.routing.sticky-window:PT5S}") Duration stickyWindow) {
+        this.stickyWindowNanos = stickyWindow.toNanos();
+    }
+
+    public <T> T read(Supplier<T> query) {
+        if (replicaRead.get()) {
+            return query.get();
+        }
+        replicaRead.set(true);
+        try {
+            return query.get();
+        } finally {
+            replicaRead.set(false);
+        }
+    }
+
+    public <T> T readFor(Long userId, Supplier<T> query) {
+        Long until = stickyUntil.get(userId);
+        if (until != null) {
+            if (until - System.nanoTime() > 0) {
+                log.debug("User {} wrote recently, reading from primary", userId);
+                return query.get();
+            }
+            stickyUntil.remove(userId, until);
+        }
+        return read(query);
+    }
+
+    public void wrote(Long userId) {
+        if (stickyWindowNanos == 0 || userId == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        stickyUntil.put(userId, now + stickyWindowNanos);
+        if (stickyUntil.size() > PURGE_THRESHOLD) {
+            stickyUntil.values().removeIf(until -> until - now <= 0);
+        }
+    }
+
+    boolean isReplicaRead() {
+        return replicaRead.get();
+    }
+}
@@ -0,0 +1,113 @@
+package ru.yandex.practicum.filmorate.storage.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out primary connections, except for queries marked by ReadRouting, which go round-robin
+ * to the replicas that are currently within maxLag of the primary.
+ * Replica lag is measured by checkReplicas(); until the first check, and whenever no replica qualifies,
+ * marked reads go to the primary as well.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    private static final String PRIMARY = "primary";
+
+    private final ReadRouting readRouting;
+    private final Map<String, JdbcTemplate> replicas = new LinkedHashMap<>();
+    private final List<DataSource> replicaPools = new ArrayList<>();
+    private final String lagQuery;
+    private final double maxLagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile List<String> usable = List.of();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, ReadRouting readRouting,
+                                    RoutingProperties properties) {
+        this.readRouting = readRouting;
+        this.lagQuery = properties.getLagQuery();
+        this.maxLagSeconds = properties.getMaxLag().toMillis() / 1000.0;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicas.forEach((name, dataSource) -> {
+            targets.put(name, dataSource);
+            this.replicas.put(name, new JdbcTemplate(dataSource));
+            replicaPools.add(dataSource);
+        });
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.datasource.routing.lag-check-interval:PT1S}")
+    public void checkReplicas() {
+        List<String> nowUsable = new ArrayList<>();
+        replicas.forEach((name, jdbcTemplate) -> {
+            try {
+                Double lag = jdbcTemplate.queryForObject(lagQuery, Double.class);
+                if (lag != null && lag <= maxLagSeconds) {
+                    nowUsable.add(name);
+                } else {
+                    log.debug("Replica {} is {} seconds behind", name, lag);
+                }
+            } catch (RuntimeException e) {
+                log.debug("Replica {} lag check failed: {}", name, e.getMessage());
+            }
+        });
+        if (!nowUsable.equals(usable)) {
+            log.info("Usable replicas changed from {} to {}", usable, nowUsable);
+        }
+        usable = List.copyOf(nowUsable);
+    }
+
+    void bindPoolMetrics(MeterRegistry meterRegistry) {
+        for (DataSource replica : replicaPools) {
+            if (replica instanceof HikariDataSource) {
+                try {
+                    ((HikariDataSource) replica).setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+                } catch (IllegalStateException e) {
+                    log.warn("Replica pool already started, no metrics for it: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    // the primary pool is a bean of its own and is closed by the context
+    @Override
+    public void close() {
+        for (DataSource replica : replicaPools) {
+            if (replica instanceof Closeable) {
+                try {
+                    ((Closeable) replica).close();
+                } catch (IOException e) {
+                    log.warn("Failed to close replica pool: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!readRouting.isReplicaRead()) {
+            return PRIMARY;
+        }
+        List<String> current = usable;
+        if (current.isEmpty()) {
+            return PRIMARY;
+        }
+        return current.get(Math.floorMod(next.getAndIncrement(), current.size()));
+    }
+}
@@ -3,9 +3,12 @@ package ru.yandex.practicum.filmorate.storage.director;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
@@ -18,18 +21,28 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Slf4j
 @Component
 @Qualifier("dbStorage")
+@Profile("!inMemory")
 public class DbDirectorStorage implements DirectorStorage {
+    // Postgres allows at most 32767 bind parameters per statement
+    private static final int ID_BATCH_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
     @Autowired
     public DbDirectorStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
     }
 
     @Override
@@ -94,12 +107,10 @@ public class DbDirectorStorage implements DirectorStorage {
     @Override
     public List<Long> findFilmsByDirector(Long directorId, String sortBy) {
         log.info("Query findFilmsByDirector director:{} sortBy:{}", directorId, sortBy);
-        String sqlByLikes = "SELECT fd.film_id, COUNT(fl.user_id) AS p " +
-                "FROM film_directors AS fd " +
-                "LEFT OUTER JOIN likes AS fl ON fd.film_id = fl.film_id " +
-                "WHERE director_id = ? " +
-                "GROUP BY fd.film_id " +
-                "ORDER BY p ";
+        String sqlByLikes = "SELECT f.film_id " +
+                "FROM films AS f " +
+                "INNER JOIN film_directors AS fd ON f.film_id = fd.film_id AND fd.director_id = ? " +
+                "ORDER BY f.like_count DESC";
         String sqlByYear = "SELECT f.film_id " +
                 "FROM films AS f " +
                 "INNER JOIN film_directors AS fd ON f.film_id = fd.film_id AND fd.director_id = ? " +
@@ -127,15 +138,30 @@ public class DbDirectorStorage implements DirectorStorage {
     }
 
     @Override
-    public void setDirectorsToFilm(Set<Director> directors, Long filmId) {
+    public Map<Long, Set<Director>> getDirectorsByFilms(Collection<Long> filmIds) {
+        log.info("Query getDirectorsByFilms films count:{}", filmIds.size());
+        Map<Long, Set<Director>> directors = new HashMap<>();
+        if (filmIds.isEmpty()) {
+            return directors;
+        }
+        String sql = "SELECT fd.film_id, d.director_id, d.name FROM film_directors AS fd " +
+                "JOIN director AS d ON d.director_id = fd.director_id WHERE fd.film_id IN (:ids)";
+        namedParameterJdbcTemplate.query(sql, new MapSqlParameterSource("ids", filmIds), rs -> {
+            directors.computeIfAbsent(rs.getLong("film_id"), id -> new HashSet<>()).add(mapDirector(rs));
+        });
+        return directors;
+    }
+
+    @Override
+    public Set<Director> setDirectorsToFilm(Set<Director> directors, Long filmId) {
         String del = "DELETE FROM film_directors WHERE film_id=?";
         String ins = "INSERT INTO film_directors (film_id, director_id) VALUES (?,?)";
 
         jdbcTemplate.update(del, filmId);
         if (directors == null || directors.size() == 0) {
-            return;
+            return new HashSet<>();
         }
-        List<Director> list = List.copyOf(directors);
+        List<Director> list = findDirectors(directors);
         jdbcTemplate.batchUpdate(ins, new BatchPreparedStatementSetter() {
                     @Override
                     public void setValues(PreparedStatement ps, int i) throws SQLException {
@@ -149,6 +175,52 @@ public class DbDirectorStorage implements DirectorStorage {
                     }
                 }
         );
+        return new HashSet<>(list);
+    }
+
+    @Override
+    public Map<Long, Director> getDirectorsByIds(Collection<Long> ids) {
+        Map<Long, Director> directors = new HashMap<>();
+        List<Long> idList = new ArrayList<>(ids);
+        String sql = "SELECT * FROM director WHERE director_id IN (:ids)";
+        for (int from = 0; from < idList.size(); from += ID_BATCH_SIZE) {
+            var params = new MapSqlParameterSource("ids", idList.subList(from, Math.min(from + ID_BATCH_SIZE, idList.size())));
+            namedParameterJdbcTemplate.query(sql, params, rs -> {
+                Director director = mapDirector(rs);
+                directors.put(director.getId(), director);
+            });
+        }
+        return directors;
+    }
+
+    @Override
+    public void addFilmDirectors(Collection<Film> films) {
+        List<Object[]> rows = new ArrayList<>();
+        for (Film film : films) {
+            for (Director director : film.getDirectors()) {
+                rows.add(new Object[]{film.getId(), director.getId()});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO film_directors (film_id, director_id) VALUES (?,?)", rows);
+        log.info("{} directors added to {} films", rows.size(), films.size());
+    }
+
+    private List<Director> findDirectors(Set<Director> directors) {
+        Set<Long> ids = new HashSet<>();
+        for (Director director : directors) {
+            ids.add(director.getId());
+        }
+        String sql = "SELECT * FROM director WHERE director_id IN (:ids)";
+        List<Director> found = namedParameterJdbcTemplate.query(sql, new MapSqlParameterSource("ids", ids),
+                (rs, rowNum) -> mapDirector(rs));
+        if (found.size() != ids.size()) {
+            for (Director director : found) {
+                ids.remove(director.getId());
+            }
+            log.error("Directors with ids {} not found", ids);
+            throw new NotFoundException(String.format("Directors with ids %s not found", ids));
+        }
+        return found;
     }
 
     public void validation(Director director) {
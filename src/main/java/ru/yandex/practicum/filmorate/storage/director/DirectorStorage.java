@@ -1,8 +1,11 @@
 package ru.yandex.practicum.filmorate.storage.director;
 
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public interface DirectorStorage {
@@ -21,6 +24,18 @@ public interface DirectorStorage {
 
     Set<Director> getDirectorsByFilm(Long filmId);
 
-    void setDirectorsToFilm(Set<Director> directors, Long filmId);
+    Map<Long, Set<Director>> getDirectorsByFilms(Collection<Long> filmIds);
+
+    Set<Director> setDirectorsToFilm(Set<Director> directors, Long filmId);
+
+    /**
+     * Returns the directors that exist among the given ids, by id.
+     */
+    Map<Long, Director> getDirectorsByIds(Collection<Long> ids);
+
+    /**
+     * Links new films to their directors with one batch statement. The directors must exist.
+     */
+    void addFilmDirectors(Collection<Film> films);
 
 }
\ No newline at end of file
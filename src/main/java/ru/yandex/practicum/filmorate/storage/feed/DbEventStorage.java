@@ -3,10 +3,13 @@ package ru.yandex.practicum.filmorate.storage.feed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Operation;
@@ -14,10 +17,13 @@ import ru.yandex.practicum.filmorate.model.Operation;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
 import java.util.List;
 
 @Component
 @Qualifier("dbStorage")
+@Profile("!inMemory")
 @Slf4j
 public class DbEventStorage implements EventStorage {
 
@@ -33,6 +39,7 @@ public class DbEventStorage implements EventStorage {
         log.debug("Making event: user id {}, event type {}, operation {}, entity id {}.",
                 userId, eventType, operation, entityId);
         Event event = Event.builder()
+                .timestamp(System.currentTimeMillis())
                 .userId(userId)
                 .eventType(eventType)
                 .operation(operation)
@@ -40,15 +47,16 @@ public class DbEventStorage implements EventStorage {
                 .build();
         log.info("Adding event {} to DB", event);
 
-        String sql = "INSERT INTO events (user_id,eventType, operation, entity_id) VALUES (?,?,?,?)";
+        String sql = "INSERT INTO events (timestamp, user_id, eventType, operation, entity_id) VALUES (?,?,?,?,?)";
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(connection -> {
             PreparedStatement stmt = connection.prepareStatement(sql, new String[]{"event_id"});
-            stmt.setLong(1, event.getUserId());
-            stmt.setString(2, event.getEventType().toString());
-            stmt.setString(3, event.getOperation().toString());
-            stmt.setLong(4, event.getEntityId());
+            stmt.setTimestamp(1, new Timestamp(event.getTimestamp()));
+            stmt.setLong(2, event.getUserId());
+            stmt.setString(3, event.getEventType().toString());
+            stmt.setString(4, event.getOperation().toString());
+            stmt.setLong(5, event.getEntityId());
             return stmt;
         }, keyHolder);
         event.setEventId(keyHolder.getKey().longValue());
@@ -56,15 +64,71 @@ public class DbEventStorage implements EventStorage {
         return event;
     }
 
+    // one transaction, so a batch that fails part way leaves no rows behind for the row-by-row retry to duplicate
+    @Override
+    @Transactional
+    public List<Event> addEvents(List<Event> events) {
+        log.info("Adding {} events to DB", events.size());
+        if (events.isEmpty()) {
+            return events;
+        }
+        String sql = "INSERT INTO events (timestamp, user_id, eventType, operation, entity_id) VALUES (?,?,?,?,?)";
+        return jdbcTemplate.execute((ConnectionCallback<List<Event>>) connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sql, new String[]{"event_id"})) {
+                for (Event event : events) {
+                    stmt.setTimestamp(1, new Timestamp(event.getTimestamp()));
+                    stmt.setLong(2, event.getUserId());
+                    stmt.setString(3, event.getEventType().toString());
+                    stmt.setString(4, event.getOperation().toString());
+                    stmt.setLong(5, event.getEntityId());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                int i = 0;
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    while (i < events.size() && keys.next()) {
+                        events.get(i++).setEventId(keys.getLong(1));
+                    }
+                }
+                if (i != events.size()) {
+                    throw new IllegalStateException(String.format("Got %s ids for %s inserted events", i, events.size()));
+                }
+            }
+            return events;
+        });
+    }
+
     @Override
     public List<Event> getFeedForUser(Long userId) {
         log.info("Getting feed for user id {}", userId);
-        String sql = "SELECT * FROM events WHERE user_id = ? ORDER BY timestamp ASC;";
+        String sql = "SELECT * FROM events WHERE user_id = ? ORDER BY event_id ASC";
         List<Event> events = jdbcTemplate.query(sql, (rs, rowNum) -> mapEvent(rs), userId);
         log.info("{} events registered for user", events.size());
         return events;
     }
 
+    @Override
+    public List<Event> getFeedForUser(Long userId, Long since, Long before, Integer limit) {
+        log.info("Getting feed for user id {}, since {}, before {}, limit {}", userId, since, before, limit);
+        long from = since == null ? 0 : since;
+        long to = before == null ? Long.MAX_VALUE : before;
+        int count = limit == null ? Integer.MAX_VALUE : limit;
+        List<Event> events;
+        if (since != null && before == null) {
+            String sql = "SELECT * FROM events WHERE user_id = ? AND event_id > ? " +
+                    "ORDER BY event_id ASC LIMIT ?";
+            events = jdbcTemplate.query(sql, (rs, rowNum) -> mapEvent(rs), userId, from, count);
+        } else {
+            // newest first so LIMIT keeps the latest events, then flipped back to feed order
+            String sql = "SELECT * FROM events WHERE user_id = ? AND event_id > ? AND event_id < ? " +
+                    "ORDER BY event_id DESC LIMIT ?";
+            events = jdbcTemplate.query(sql, (rs, rowNum) -> mapEvent(rs), userId, from, to, count);
+            Collections.reverse(events);
+        }
+        log.info("{} events found for user", events.size());
+        return events;
+    }
+
     private Event mapEvent(ResultSet rs) throws SQLException {
         return Event.builder()
                 .timestamp(rs.getTimestamp("timestamp").toInstant().toEpochMilli())
@@ -10,5 +10,18 @@ public interface EventStorage {
 
     Event addEvent(Long userId, EventType eventType, Operation operation, Long entityId);
 
+    /**
+     * Inserts the events with one batch statement and sets their generated ids.
+     * Events keep a null id if the driver does not return keys for batches.
+     */
+    List<Event> addEvents(List<Event> events);
+
     List<Event> getFeedForUser(Long userId);
+
+    /**
+     * Returns events of the user with since < event_id < before, oldest first. Either bound may be null.
+     * With only since given it is the first limit events after since, otherwise the latest limit events
+     * before before. A null limit returns every event in the range.
+     */
+    List<Event> getFeedForUser(Long userId, Long since, Long before, Integer limit);
 }
@@ -3,7 +3,9 @@ package ru.yandex.practicum.filmorate.storage.film;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -18,10 +20,12 @@ import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.List;
 
 @Component
 @Qualifier("dbStorage")
+@Profile("!inMemory")
 @Slf4j
 public class DbFilmStorage implements FilmStorage {
 
@@ -53,6 +57,39 @@ public class DbFilmStorage implements FilmStorage {
         return film;
     }
 
+    @Override
+    public List<Film> addFilms(List<Film> films) {
+        log.debug("Adding {} films", films.size());
+        if (films.isEmpty()) {
+            return films;
+        }
+        String sql = "INSERT INTO films (name, description, release_date, duration, mpa_id) VALUES (?,?,?,?,?)";
+        return jdbcTemplate.execute((ConnectionCallback<List<Film>>) connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sql, new String[]{"film_id"})) {
+                for (Film film : films) {
+                    stmt.setString(1, film.getName());
+                    stmt.setString(2, film.getDescription());
+                    stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
+                    stmt.setLong(4, film.getDuration());
+                    stmt.setLong(5, film.getMpa().getId());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                int i = 0;
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    while (i < films.size() && keys.next()) {
+                        films.get(i++).setId(keys.getLong(1));
+                    }
+                }
+                if (i != films.size()) {
+                    throw new IllegalStateException(String.format("Got %s ids for %s inserted films", i, films.size()));
+                }
+            }
+            log.debug("Added {} films, last id {}", films.size(), films.get(films.size() - 1).getId());
+            return films;
+        });
+    }
+
     @Override
     public Film putFilm(Film film) {
         log.debug("Updating film {}", film);
@@ -76,29 +113,22 @@ public class DbFilmStorage implements FilmStorage {
     }
 
     @Override
-    public List<Film> getPopularFilms(Integer limit) {
-        String sql = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, m.mpa_id, m.mpa FROM films f " +
-                "LEFT JOIN mpa m ON f.mpa_id = m.mpa_id " +
-                "LEFT JOIN likes l ON l.film_id = f.film_id GROUP BY f.film_id, m.mpa_id ORDER BY COUNT(l.user_id) DESC LIMIT ?";
-        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> mapFilm(rs), limit);
-        log.info("Number of top films: {}", films.size());
+    public List<Film> getFilms(Long after, Integer limit) {
+        String sql = "SELECT * FROM films f LEFT JOIN mpa m ON f.mpa_id = m.mpa_id " +
+                "WHERE f.film_id > ? ORDER BY f.film_id LIMIT ?";
+        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> mapFilm(rs), after, limit);
+        log.info("Number of films after id {}: {}", after, films.size());
         return films;
     }
 
     @Override
-    public List<Film> getSearch(String sqlText) {
-        String sql = "SELECT f.*, m.* " +
-                "FROM films f " +
+    public List<Film> getPopularFilms(Integer limit) {
+        String sql = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.like_count, " +
+                "m.mpa_id, m.mpa FROM films f " +
                 "LEFT JOIN mpa m ON f.mpa_id = m.mpa_id " +
-                "LEFT JOIN likes l ON l.film_id = f.film_id " +
-                "LEFT JOIN  film_directors fd ON f.film_id = fd.film_id " +
-                "LEFT JOIN director d ON fd.director_id = d.director_id " +
-                "WHERE " + sqlText +                     // Безопасная инъекция для упрощения жизни всем
-                // В сервис классе выполняется условие по параметрам которые ввёл пользователь,
-                // а в условии разработчик сам пишет какой sql код нужен в данный момент.
-                " GROUP BY f.film_id, m.mpa_id ORDER BY COUNT(l.user_id) DESC";
-        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> mapFilm(rs));
-        log.info("Number of search films: {}", films.size());
+                "ORDER BY f.like_count DESC LIMIT ?";
+        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> mapFilm(rs), limit);
+        log.info("Number of top films: {}", films.size());
         return films;
     }
 
@@ -124,33 +154,26 @@ public class DbFilmStorage implements FilmStorage {
             sql = "SELECT f.*, m.* " +
                     "FROM films f " +
                     "LEFT JOIN mpa m ON f.mpa_id = m.mpa_id " +
-                    "LEFT JOIN film_genre fg ON f.film_id = fg.film_id " +
-                    "LEFT JOIN genre g ON fg.genre_id = g.genre_id " +
-                    "LEFT JOIN likes l ON l.film_id = f.film_id " +
-                    "WHERE EXTRACT(YEAR FROM f.release_date) = ? AND g.genre_id = ? " +
-                    "GROUP BY f.film_id, m.mpa_id ORDER BY COUNT(l.user_id) DESC " +
+                    "WHERE f.release_date >= ? AND f.release_date < ? " +
+                    "AND EXISTS (SELECT 1 FROM film_genre fg WHERE fg.film_id = f.film_id AND fg.genre_id = ?) " +
+                    "ORDER BY f.like_count DESC " +
                     "LIMIT ?";
-            films = jdbcTemplate.query(sql, (rs, rowNum) -> mapFilm(rs), year, genreId, limit);
+            films = jdbcTemplate.query(sql, (rs, rowNum) -> mapFilm(rs), yearStart(year), yearStart(year + 1),
+                    genreId, limit);
         } else if (genreId == 0) {
             sql = "SELECT f.*, m.* " +
                     "FROM films f " +
                     "LEFT JOIN mpa m ON f.mpa_id = m.mpa_id " +
-                    "LEFT JOIN film_genre fg ON f.film_id = fg.film_id " +
-                    "LEFT JOIN genre g ON fg.genre_id = g.genre_id " +
-                    "LEFT JOIN likes l ON l.film_id = f.film_id " +
-                    "WHERE EXTRACT(YEAR FROM f.release_date) = ?" +
-                    "GROUP BY f.film_id, m.mpa_id ORDER BY COUNT(l.user_id) DESC " +
+                    "WHERE f.release_date >= ? AND f.release_date < ? " +
+                    "ORDER BY f.like_count DESC " +
                     "LIMIT ?";
-            films = jdbcTemplate.query(sql, (rs, rowNum) -> mapFilm(rs), year, limit);
+            films = jdbcTemplate.query(sql, (rs, rowNum) -> mapFilm(rs), yearStart(year), yearStart(year + 1), limit);
         } else {
             sql = "SELECT f.*, m.* " +
                     "FROM films f " +
                     "LEFT JOIN mpa m ON f.mpa_id = m.mpa_id " +
-                    "LEFT JOIN film_genre fg ON f.film_id = fg.film_id " +
-                    "LEFT JOIN genre g ON fg.genre_id = g.genre_id " +
-                    "LEFT JOIN likes l ON l.film_id = f.film_id " +
-                    "WHERE g.genre_id = ? " +
-                    "GROUP BY f.film_id, m.mpa_id ORDER BY COUNT(l.user_id) DESC " +
+                    "WHERE EXISTS (SELECT 1 FROM film_genre fg WHERE fg.film_id = f.film_id AND fg.genre_id = ?) " +
+                    "ORDER BY f.like_count DESC " +
                     "LIMIT ?";
             films = jdbcTemplate.query(sql, (rs, rowNum) -> mapFilm(rs), genreId, limit);
         }
@@ -159,6 +182,11 @@ public class DbFilmStorage implements FilmStorage {
         return films;
     }
 
+    // a range on release_date can use its index, EXTRACT(YEAR FROM release_date) cannot
+    private static Date yearStart(int year) {
+        return Date.valueOf(LocalDate.of(year, 1, 1));
+    }
+
     @Override
     public Film findFilm(Long id) {
         log.info("Looking for film: {}", id);
@@ -200,6 +228,7 @@ public class DbFilmStorage implements FilmStorage {
                 .description(rs.getString("description"))
                 .releaseDate(rs.getDate("release_date").toLocalDate())
                 .duration(rs.getLong("duration"))
+                .likeCount(rs.getLong("like_count"))
                 .mpa(Mpa.builder()
                         .id(rs.getInt("mpa_id"))
                         .name(rs.getString("mpa"))
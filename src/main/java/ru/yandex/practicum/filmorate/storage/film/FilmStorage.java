@@ -7,10 +7,18 @@ import java.util.List;
 public interface FilmStorage {
     Film addFilm(Film film);
 
+    /**
+     * Inserts new films with one batch statement and sets their generated ids.
+     * Genres and directors of the films are not written.
+     */
+    List<Film> addFilms(List<Film> films);
+
     Film putFilm(Film film);
 
     List<Film> getFilms();
 
+    List<Film> getFilms(Long after, Integer limit);
+
     Film findFilm(Long id);
 
     List<Film> getPopularFilms(Integer limit);
@@ -21,7 +29,5 @@ public interface FilmStorage {
 
     List<Film> getPopularFilms(Integer limit, Long genreId, Integer year);
 
-    List<Film> getSearch(String sqlText);
-
     List<Film> findAllFilmsByIds(List<Long> ids);
 }
\ No newline at end of file
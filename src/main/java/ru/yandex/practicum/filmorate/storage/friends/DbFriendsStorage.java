@@ -3,9 +3,12 @@ package ru.yandex.practicum.filmorate.storage.friends;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exceptions.FriendshipRequestExistsException;
 import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
@@ -13,86 +16,98 @@ import ru.yandex.practicum.filmorate.model.User;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
 @Slf4j
 @Qualifier("dbStorage")
+@Profile("!inMemory")
 public class DbFriendsStorage implements FriendsStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
     @Autowired
     public DbFriendsStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
     }
 
+    /*
+     * A row (user1_id, user2_id) means user1 added user2 as a friend, and user1's friends are exactly
+     * the user2_id values of their rows. A confirmed friendship is a pair of rows, one per side.
+     * That keeps every change a single row insert or delete: the primary key settles concurrent requests
+     * between the same pair, and there is no read-then-write window between statements.
+     */
+
     @Override
     public void addFriend(Long userId, Long friendId) {
-        String sql = "SELECT COUNT(1) AS count FROM friends WHERE user1_id = ? AND user2_id = ?";
-        SqlRowSet rsDirect = jdbcTemplate.queryForRowSet(sql, userId, friendId);
-        SqlRowSet rsReverse = jdbcTemplate.queryForRowSet(sql, friendId, userId);
-        if (rsDirect.next() && rsDirect.getInt("count") > 0) {
-            log.info("Friendship request from {}} to {} already exist.", userId, friendId);
+        String sql = "INSERT INTO friends (user1_id, user2_id) " +
+                "SELECT ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM friends WHERE user1_id = ? AND user2_id = ?)";
+        int inserted;
+        try {
+            inserted = jdbcTemplate.update(sql, userId, friendId, userId, friendId);
+        } catch (DuplicateKeyException e) {
+            inserted = 0;
+        } catch (DataIntegrityViolationException e) {
+            throw new UserNotFoundException(String.format("User with id %s or %s not found", userId, friendId));
+        }
+        if (inserted == 0) {
+            log.info("Friendship request from {} to {} already exist.", userId, friendId);
             throw new FriendshipRequestExistsException(String.format("Friendship request from %s to %s already exist.",
                     userId, friendId));
-        } else if (rsReverse.next() && rsReverse.getInt("count") > 0) {
-            String sqlUpdate = "UPDATE friends SET confirmed = true WHERE user1_id = ? AND user2_id = ?";
-            jdbcTemplate.update(sqlUpdate, friendId, userId);
-            log.info("Reverse friendship request already exist. Friendship confirmed.");
-        } else {
-            try {
-                String sqlInsert = "INSERT INTO friends (user1_id, user2_id) VALUES (?,?)";
-                jdbcTemplate.update(sqlInsert, userId, friendId);
-                log.info("Friendship request created.");
-            } catch (DataIntegrityViolationException e) {
-                throw new UserNotFoundException(String.format("User with id %s or %s not found", userId, friendId));
-            }
         }
+        log.info("Friendship request from {} to {} saved.", userId, friendId);
     }
 
+    /*
+     * The user leaves the friendship: their own row goes, the friend's row (if any) stays as a request.
+     * If the user never added the friend, the friend's pending request to the user is declined instead.
+     */
     @Override
     public void removeFriend(Long userId, Long friendId) {
-        if (checkFriendshipRequest(userId, friendId)) {
-            String sqlUpdate = "UPDATE friends SET user1_id = ?, user2_id = ?, confirmed = false " +
-                    "WHERE user1_id = ? AND user2_id = ?";
-            jdbcTemplate.update(sqlUpdate, friendId, userId, userId, friendId);
-        } else if (checkFriendshipRequest(friendId, userId)) {
-            String sqlUpdate = "UPDATE friends SET confirmed = false WHERE user1_id = ? AND user2_id = ?";
-            jdbcTemplate.update(sqlUpdate, friendId, userId);
-        } else {
-            String sqlDelete = "DELETE from friends WHERE (user1_id = ? AND user2_id = ?) " +
-                    "OR (user1_id = ? AND user2_id = ?)";
-            jdbcTemplate.update(sqlDelete, userId, friendId, friendId, userId);
-        }
+        String sql = "DELETE FROM friends WHERE (user1_id = ? AND user2_id = ?) " +
+                "OR (user1_id = ? AND user2_id = ? " +
+                "AND NOT EXISTS (SELECT 1 FROM friends WHERE user1_id = ? AND user2_id = ?))";
+        int deleted = jdbcTemplate.update(sql, userId, friendId, friendId, userId, userId, friendId);
+        log.info("Friendship between {} and {} removed, {} rows deleted", userId, friendId, deleted);
     }
 
     @Override
     public List<User> getFriends(Long userId) {
-        String sql = "SELECT * FROM filmorate_users WHERE " +
-                "user_id IN (SELECT user2_id FROM friends WHERE user1_id = ? ) " +
-                "OR (user_id IN (SELECT user1_id FROM friends WHERE user2_id = ? AND confirmed = true))";
-        List<User> friends = jdbcTemplate.query(sql, (rs, rowNum) -> mapUser(rs), userId, userId);
+        String sql = "SELECT u.* FROM friends AS f JOIN filmorate_users AS u ON u.user_id = f.user2_id " +
+                "WHERE f.user1_id = ? ORDER BY u.user_id";
+        List<User> friends = jdbcTemplate.query(sql, (rs, rowNum) -> mapUser(rs), userId);
         log.info("Number of friends: {}", friends.size());
         return friends;
     }
 
     @Override
     public List<User> getCommonFriends(Long userId, Long friendId) {
-        String sql = "SELECT * FROM filmorate_users AS u WHERE ((u.user_id IN " +
-                "(SELECT user2_id FROM friends WHERE user1_id = ?)) " +
-                "OR (u.user_id IN (SELECT user1_id FROM friends WHERE user2_id = ? AND confirmed = true))) " +
-                "AND ((u.user_id IN (SELECT user2_id FROM friends WHERE user1_id = ?)) " +
-                "OR (u.user_id IN (SELECT user1_id FROM friends WHERE user2_id = ? AND confirmed = true)))";
-
-        return jdbcTemplate.query(sql, (rs, rowNum) -> mapUser(rs), userId, userId, friendId, friendId);
+        String sql = "SELECT u.* FROM filmorate_users AS u JOIN (" +
+                "SELECT user2_id FROM friends WHERE user1_id = ? " +
+                "INTERSECT SELECT user2_id FROM friends WHERE user1_id = ?" +
+                ") AS f ON u.user_id = f.user2_id ORDER BY u.user_id";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> mapUser(rs), userId, friendId);
     }
 
-    private boolean checkFriendshipRequest(Long userId, Long friendId) {
-        String sql = "SELECT * FROM friends WHERE user1_id = ? AND user2_id = ?";
-        SqlRowSet rs = jdbcTemplate.queryForRowSet(sql, userId, friendId);
-        return rs.next() && rs.getBoolean("confirmed");
-
+    @Override
+    public Map<Long, List<Long>> getFriendIds(Collection<Long> userIds) {
+        log.info("Getting friend ids for {} users", userIds.size());
+        Map<Long, List<Long>> friendIds = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return friendIds;
+        }
+        String sql = "SELECT user1_id, user2_id FROM friends WHERE user1_id IN (:ids)";
+        namedParameterJdbcTemplate.query(sql, new MapSqlParameterSource("ids", userIds), rs -> {
+            friendIds.computeIfAbsent(rs.getLong("user1_id"), id -> new ArrayList<>()).add(rs.getLong("user2_id"));
+        });
+        return friendIds;
     }
 
     private User mapUser(ResultSet rs) throws SQLException {
@@ -2,7 +2,9 @@ package ru.yandex.practicum.filmorate.storage.friends;
 
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface FriendsStorage {
     void addFriend(Long userId, Long friendId);
@@ -12,4 +14,6 @@ public interface FriendsStorage {
     List<User> getFriends(Long userId);
 
     List<User> getCommonFriends(Long userId, Long friendId);
+
+    Map<Long, List<Long>> getFriendIds(Collection<Long> userIds);
 }
@@ -1,38 +1,63 @@
 package ru.yandex.practicum.filmorate.storage.genre;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exceptions.GenreNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.ReferenceDataCache;
 
+import javax.annotation.PostConstruct;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Component
 @Slf4j
 @Qualifier("dbStorage")
+@Profile("!inMemory")
 public class DbGenreStorage implements GenreStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final ReferenceDataCache<Genre> cache;
 
     @Autowired
-    public DbGenreStorage(JdbcTemplate jdbcTemplate) {
+    public DbGenreStorage(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                          @Value("${filmorate.cache.reference-ttl:PT1H}") Duration ttl) {
         this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.cache = new ReferenceDataCache<>("genre", this::loadAllGenres, Genre::getId,
+                genre -> new Genre(genre.getId(), genre.getName()), ttl, meterRegistry);
+    }
+
+    @PostConstruct
+    public void warmUpCache() {
+        cache.getAll();
     }
 
     @Override
     public List<Genre> getAllGenres() {
-        String sql = "SELECT * FROM genre";
-        List<Genre> genres = jdbcTemplate.query(sql, (rs, rowNum) -> mapGenre(rs));
+        List<Genre> genres = cache.getAll();
         log.info("Number of genres: {}", genres.size());
         return genres;
     }
@@ -40,15 +65,17 @@ public class DbGenreStorage implements GenreStorage {
     @Override
     public Genre findGenre(Long id) {
         log.info("Looking for genre: {}", id);
-        String sql = "SELECT * FROM genre WHERE genre_id = ?";
-        try {
-            Genre genre = jdbcTemplate.queryForObject(sql, (rs, rowNum) -> mapGenre(rs), id);
-            log.info("Genre found: {}", genre);
-            return genre;
-        } catch (EmptyResultDataAccessException e) {
+        Genre genre = cache.get(id).orElseThrow(() -> {
             log.error("Genre with id {} not found", id);
-            throw new GenreNotFoundException(String.format("Genre with id %s not found", id));
-        }
+            return new GenreNotFoundException(String.format("Genre with id %s not found", id));
+        });
+        log.info("Genre found: {}", genre);
+        return genre;
+    }
+
+    // genre is read-only for now, whatever starts writing to it must call this
+    public void invalidateCache() {
+        cache.invalidate();
     }
 
     @Override
@@ -68,17 +95,86 @@ public class DbGenreStorage implements GenreStorage {
         }
     }
 
+    @Override
+    public List<Genre> setGenresToFilm(Long filmId, Collection<Genre> genres) {
+        jdbcTemplate.update("DELETE FROM film_genre WHERE film_id = ?", filmId);
+        if (genres == null || genres.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // ordered by id, as films are read back
+        Map<Long, Genre> uniqueGenres = new TreeMap<>();
+        for (Genre genre : genres) {
+            uniqueGenres.computeIfAbsent(genre.getId(), this::findGenre);
+        }
+        List<Genre> list = new ArrayList<>(uniqueGenres.values());
+        String sql = "INSERT INTO film_genre (film_id, genre_id) VALUES (?,?)";
+        try {
+            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            ps.setLong(1, filmId);
+                            ps.setLong(2, list.get(i).getId());
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return list.size();
+                        }
+                    }
+            );
+        } catch (DataIntegrityViolationException e) {
+            log.error("Film id {} not found", filmId);
+            throw new NotFoundException(String.format("Film id %s not found", filmId));
+        }
+        log.info("Genres {} set to film id {}", uniqueGenres.keySet(), filmId);
+        return list;
+    }
+
+    @Override
+    public void addFilmGenres(Collection<Film> films) {
+        List<Object[]> rows = new ArrayList<>();
+        for (Film film : films) {
+            if (film.getGenres() != null) {
+                for (Genre genre : film.getGenres()) {
+                    rows.add(new Object[]{film.getId(), genre.getId()});
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO film_genre (film_id, genre_id) VALUES (?,?)", rows);
+        log.info("{} genres added to {} films", rows.size(), films.size());
+    }
+
     @Override
     public List<Genre> getFilmGenres(Long filmId) {
         String sql = "SELECT * FROM film_genre fg JOIN genre g ON fg.genre_id = g.genre_id WHERE film_id = ?";
         return jdbcTemplate.query(sql, (rs, rowNum) -> mapGenre(rs), filmId);
     }
 
+    @Override
+    public Map<Long, List<Genre>> getFilmGenres(Collection<Long> filmIds) {
+        Map<Long, List<Genre>> genres = new HashMap<>();
+        if (filmIds.isEmpty()) {
+            return genres;
+        }
+        String sql = "SELECT fg.film_id, g.genre_id, g.name FROM film_genre fg " +
+                "JOIN genre g ON fg.genre_id = g.genre_id WHERE fg.film_id IN (:ids) ORDER BY fg.film_id, g.genre_id";
+        namedParameterJdbcTemplate.query(sql, new MapSqlParameterSource("ids", filmIds), rs -> {
+            genres.computeIfAbsent(rs.getLong("film_id"), id -> new ArrayList<>()).add(mapGenre(rs));
+        });
+        log.info("Genres found for {} of {} films", genres.size(), filmIds.size());
+        return genres;
+    }
+
     public void removeGenreFromFilm(Film film) {
         String sql = "DELETE FROM film_genre WHERE film_id = ?";
         jdbcTemplate.update(sql, film.getId());
     }
 
+    private List<Genre> loadAllGenres() {
+        String sql = "SELECT * FROM genre ORDER BY genre_id";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> mapGenre(rs));
+    }
+
     private Genre mapGenre(ResultSet rs) throws SQLException {
         return Genre.builder()
                 .id(rs.getLong("genre_id"))
@@ -3,7 +3,9 @@ package ru.yandex.practicum.filmorate.storage.genre;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface GenreStorage {
     List<Genre> getAllGenres();
@@ -12,8 +14,17 @@ public interface GenreStorage {
 
     Genre addGenreToFilm(Film film, Genre genre);
 
+    List<Genre> setGenresToFilm(Long filmId, Collection<Genre> genres);
+
+    /**
+     * Links new films to their genres with one batch statement. The genres must exist and not repeat within a film.
+     */
+    void addFilmGenres(Collection<Film> films);
+
     List<Genre> getFilmGenres(Long filmId);
 
+    Map<Long, List<Genre>> getFilmGenres(Collection<Long> filmIds);
+
     void removeGenreFromFilm(Film film);
 
 }
\ No newline at end of file
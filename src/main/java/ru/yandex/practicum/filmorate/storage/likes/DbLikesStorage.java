@@ -3,43 +3,83 @@ package ru.yandex.practicum.filmorate.storage.likes;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeOperationResult;
 import ru.yandex.practicum.filmorate.model.Likes;
+import ru.yandex.practicum.filmorate.model.Operation;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
 @Qualifier("dbStorage")
+@Profile("!inMemory")
 public class DbLikesStorage implements LikesStorage {
+    // Postgres allows at most 32767 bind parameters per statement
+    private static final int ID_BATCH_SIZE = 1000;
+    private static final String LOCK_FILM = "SELECT film_id FROM films WHERE film_id = ? FOR UPDATE";
+    private static final String INSERT_LIKE = "INSERT INTO likes (film_id, user_id) SELECT ?, ? " +
+            "WHERE NOT EXISTS (SELECT 1 FROM likes WHERE film_id = ? AND user_id = ?)";
+
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
     @Autowired
     public DbLikesStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
     }
 
+    /*
+     * The film row is locked before the insert, so two identical likes arriving together run one after the other
+     * and the second finds the first one's row instead of both passing NOT EXISTS.
+     */
     @Override
-    public void addLike(Long filmId, Long userId) {
-        String sql = "INSERT INTO likes (film_id, user_id) VALUES (?,?)";
+    @Transactional
+    public boolean addLike(Long filmId, Long userId) {
+        if (jdbcTemplate.queryForList(LOCK_FILM, Long.class, filmId).isEmpty()) {
+            log.error("User with id {} or film with id {} not found", userId, filmId);
+            throw new NotFoundException(String.format("User with id %s or film with id %s not found", userId, filmId));
+        }
         try {
-            jdbcTemplate.update(sql, filmId, userId);
-            log.info("Like from id {} to film {} added", userId, filmId);
+            if (jdbcTemplate.update(INSERT_LIKE, filmId, userId, filmId, userId) == 0) {
+                log.info("User with id {} already liked film with id {}", userId, filmId);
+                return false;
+            }
         } catch (DuplicateKeyException e) {
-            log.error("User with id {} or film with id {} not found", userId, filmId);
+            log.info("User with id {} already liked film with id {}", userId, filmId);
+            return false;
         } catch (DataIntegrityViolationException e) {
             log.error("User with id {} or film with id {} not found", userId, filmId);
             throw new NotFoundException(String.format("User with id %s or film with id %s not found", userId, filmId));
         }
+        jdbcTemplate.update("UPDATE films SET like_count = like_count + 1 WHERE film_id = ?", filmId);
+        log.info("Like from id {} to film {} added", userId, filmId);
+        return true;
     }
 
     @Override
+    @Transactional
     public void removeLike(Long filmId, Long userId) {
         log.info("Removing like from user id {} to film id {}", userId, filmId);
         String sql = "DELETE FROM likes WHERE film_id = ? AND user_id = ?";
@@ -47,21 +87,129 @@ public class DbLikesStorage implements LikesStorage {
             log.error("User with id {} or film with id {} not found", userId, filmId);
             throw new NotFoundException(String.format("User with id %s or film with id %s not found", userId, filmId));
         }
+        jdbcTemplate.update("UPDATE films SET like_count = like_count - 1 WHERE film_id = ?", filmId);
         log.info("Like from id {} to film {} removed", userId, filmId);
     }
 
+    @Override
+    @Transactional
+    public List<LikeOperationResult> applyLikes(List<LikeOperation> operations) {
+        // films are locked in ascending id order, like in addLike, so concurrent batches cannot deadlock
+        Set<Long> films = existingIds("SELECT film_id AS id FROM films WHERE film_id IN (:ids) " +
+                        "ORDER BY film_id FOR UPDATE",
+                operations.stream().map(LikeOperation::getFilmId).collect(Collectors.toSet()));
+        Set<Long> users = existingIds("SELECT user_id AS id FROM filmorate_users WHERE user_id IN (:ids)",
+                operations.stream().map(LikeOperation::getUserId).collect(Collectors.toSet()));
+        LikeOperationResult.Status[] statuses = new LikeOperationResult.Status[operations.size()];
+        List<Integer> run = new ArrayList<>();
+        for (int i = 0; i < operations.size(); i++) {
+            LikeOperation operation = operations.get(i);
+            if (!films.contains(operation.getFilmId()) || !users.contains(operation.getUserId())) {
+                statuses[i] = LikeOperationResult.Status.NOT_FOUND;
+                continue;
+            }
+            // adds and removes stay in request order, so only a run of the same operation goes into one batch
+            if (!run.isEmpty() && operations.get(run.get(0)).getOperation() != operation.getOperation()) {
+                applyRun(operations, run, statuses);
+                run.clear();
+            }
+            run.add(i);
+        }
+        applyRun(operations, run, statuses);
+
+        // one counter update per film, on rows this transaction has already locked
+        Map<Long, Integer> deltas = new TreeMap<>();
+        List<LikeOperationResult> results = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            LikeOperation operation = operations.get(i);
+            if (statuses[i] == LikeOperationResult.Status.APPLIED) {
+                deltas.merge(operation.getFilmId(), operation.getOperation() == Operation.ADD ? 1 : -1, Integer::sum);
+            }
+            results.add(new LikeOperationResult(operation, statuses[i]));
+        }
+        List<Object[]> counterUpdates = deltas.entrySet().stream()
+                .filter(delta -> delta.getValue() != 0)
+                .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                .collect(Collectors.toList());
+        jdbcTemplate.batchUpdate("UPDATE films SET like_count = like_count + ? WHERE film_id = ?", counterUpdates);
+        log.info("{} like operations applied, like counts of {} films changed", operations.size(), counterUpdates.size());
+        return results;
+    }
+
+    private void applyRun(List<LikeOperation> operations, List<Integer> run, LikeOperationResult.Status[] statuses) {
+        if (run.isEmpty()) {
+            return;
+        }
+        boolean add = operations.get(run.get(0)).getOperation() == Operation.ADD;
+        String sql = add ? INSERT_LIKE : "DELETE FROM likes WHERE film_id = ? AND user_id = ?";
+        List<Object[]> args = run.stream()
+                .map(operations::get)
+                .map(operation -> add
+                        ? new Object[]{operation.getFilmId(), operation.getUserId(), operation.getFilmId(), operation.getUserId()}
+                        : new Object[]{operation.getFilmId(), operation.getUserId()})
+                .collect(Collectors.toList());
+        int[] counts = jdbcTemplate.batchUpdate(sql, args);
+        for (int i = 0; i < run.size(); i++) {
+            statuses[run.get(i)] = counts[i] > 0 ? LikeOperationResult.Status.APPLIED : LikeOperationResult.Status.UNCHANGED;
+        }
+    }
+
+    private Set<Long> existingIds(String sql, Set<Long> ids) {
+        Set<Long> existing = new HashSet<>();
+        List<Long> idList = ids.stream()
+                .filter(Objects::nonNull)
+                .sorted()
+                .collect(Collectors.toList());
+        for (int from = 0; from < idList.size(); from += ID_BATCH_SIZE) {
+            var params = new MapSqlParameterSource("ids", idList.subList(from, Math.min(from + ID_BATCH_SIZE, idList.size())));
+            existing.addAll(namedParameterJdbcTemplate.queryForList(sql, params, Long.class));
+        }
+        return existing;
+    }
+
     @Override
     public List<Likes> getLikes(Long filmId) {
         String sql = "SELECT * FROM likes WHERE film_id = ?";
         return jdbcTemplate.query(sql, (rs, rowNum) -> mapLikes(rs), filmId);
     }
 
+    @Override
+    public Map<Long, List<Long>> getLikesByFilms(Collection<Long> filmIds) {
+        Map<Long, List<Long>> likes = new HashMap<>();
+        if (filmIds.isEmpty()) {
+            return likes;
+        }
+        String sql = "SELECT film_id, user_id FROM likes WHERE film_id IN (:ids)";
+        namedParameterJdbcTemplate.query(sql, new MapSqlParameterSource("ids", filmIds), rs -> {
+            likes.computeIfAbsent(rs.getLong("film_id"), id -> new ArrayList<>()).add(rs.getLong("user_id"));
+        });
+        log.info("Likes found for {} of {} films", likes.size(), filmIds.size());
+        return likes;
+    }
+
     @Override
     public List<Likes> getAllLikes() {
         String sql = "SELECT * FROM likes";
         return jdbcTemplate.query(sql, (rs, rowNum) -> mapLikes(rs));
     }
 
+    @Override
+    public List<Long> getLikedFilms(Long userId) {
+        String sql = "SELECT film_id FROM likes WHERE user_id = ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> rs.getLong("film_id"), userId);
+    }
+
+    @Override
+    @Transactional
+    public int reconcileLikeCounts() {
+        String sql = "UPDATE films f SET like_count = " +
+                "(SELECT COUNT(*) FROM likes l WHERE l.film_id = f.film_id) " +
+                "WHERE like_count <> (SELECT COUNT(*) FROM likes l WHERE l.film_id = f.film_id)";
+        int fixed = jdbcTemplate.update(sql);
+        log.info("Like counts reconciled, {} films fixed", fixed);
+        return fixed;
+    }
+
     private Likes mapLikes(ResultSet rs) throws SQLException {
         return Likes.builder()
                 .userId(rs.getLong("user_id"))
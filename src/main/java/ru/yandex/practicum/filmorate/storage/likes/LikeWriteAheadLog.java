@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.storage.likes;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.Operation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Append-only file of like operations, one segment of SegmentedLikeLog or the dead-letter log.
+ * A record is 17 bytes: the operation (1 for ADD, 0 for REMOVE), the film id and the user id.
+ * Adds and removes of a like are idempotent, so replaying the whole log in order after a crash gives the same
+ * likes whether or not some of its operations had already reached the database. A torn last record is dropped.
+ * Appends survive a crash of the process once write returns; with sync they are also forced to the disk,
+ * which survives a crash of the machine at the price of an fsync per append.
+ */
+@Slf4j
+class LikeWriteAheadLog implements Closeable {
+    private static final int RECORD_SIZE = 1 + Long.BYTES + Long.BYTES;
+
+    private final Path path;
+    private final boolean sync;
+    private final FileChannel channel;
+
+    LikeWriteAheadLog(Path path, boolean sync) throws IOException {
+        this.path = path;
+        this.sync = sync;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        // appends continue after the last whole record
+        long size = channel.size();
+        if (size % RECORD_SIZE != 0) {
+            log.warn("Like log {} ends with a torn record, {} bytes ignored", path, size % RECORD_SIZE);
+            channel.truncate(size - size % RECORD_SIZE);
+        }
+        channel.position(channel.size());
+    }
+
+    // number of records in the log
+    long size() throws IOException {
+        return channel.size() / RECORD_SIZE;
+    }
+
+    // hands the records over in order, at most batchSize at a time, so the log is never held in memory whole
+    void read(int batchSize, Consumer<List<LikeOperation>> consumer) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * batchSize);
+        long position = 0;
+        while (position + RECORD_SIZE <= size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            List<LikeOperation> operations = new ArrayList<>(batchSize);
+            while (buffer.remaining() >= RECORD_SIZE && position + RECORD_SIZE <= size) {
+                Operation operation = buffer.get() == 1 ? Operation.ADD : Operation.REMOVE;
+                operations.add(new LikeOperation(buffer.getLong(), buffer.getLong(), operation));
+                position += RECORD_SIZE;
+            }
+            consumer.accept(operations);
+        }
+    }
+
+    void append(List<LikeOperation> operations) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * operations.size());
+        for (LikeOperation operation : operations) {
+            buffer.put((byte) (operation.getOperation() == Operation.ADD ? 1 : 0))
+                    .putLong(operation.getFilmId())
+                    .putLong(operation.getUserId());
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    void truncate() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,16 +1,33 @@
 package ru.yandex.practicum.filmorate.storage.likes;
 
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeOperationResult;
 import ru.yandex.practicum.filmorate.model.Likes;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface LikesStorage {
 
-    void addLike(Long filmId, Long userId);
+    boolean addLike(Long filmId, Long userId);
 
     void removeLike(Long filmId, Long userId);
 
+    /**
+     * Applies the operations in order in one transaction, with one batch statement per run of adds or removes,
+     * and changes like_count once per film. Operations on a missing film or user are skipped as NOT_FOUND.
+     * Results are in the order of the operations.
+     */
+    List<LikeOperationResult> applyLikes(List<LikeOperation> operations);
+
     List<Likes> getLikes(Long filmId);
 
+    Map<Long, List<Long>> getLikesByFilms(Collection<Long> filmIds);
+
     List<Likes> getAllLikes();
+
+    List<Long> getLikedFilms(Long userId);
+
+    int reconcileLikeCounts();
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.storage.likes;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Write-ahead log of like operations kept as numbered segment files next to the path,
+ * likes.wal.1, likes.wal.2 and so on.
+ * Appends go to the last segment, and a new one is started once it holds segmentRecords records.
+ * Operations are counted in append order. checkpoint(written) deletes every segment whose operations are all
+ * in the database and empties the last one once it is written too, so the log holds about what is still queued,
+ * whatever the load. Segments left by a crash are replayed oldest first on the next start.
+ */
+@Slf4j
+class SegmentedLikeLog implements Closeable {
+    private final Path path;
+    private final boolean sync;
+    private final long segmentRecords;
+    // segments found on start by number, replayed and deleted before the first append
+    private final TreeMap<Long, Path> leftOver = new TreeMap<>();
+    // full segments, oldest first
+    private final Deque<Segment> closed = new ArrayDeque<>();
+    private Segment current;
+    private long nextNumber = 1;
+    private long appended;
+
+    SegmentedLikeLog(Path path, boolean sync, long segmentRecords) throws IOException {
+        this.path = path;
+        this.sync = sync;
+        this.segmentRecords = segmentRecords;
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        String prefix = path.getFileName() + ".";
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix) && name.length() > prefix.length()
+                        && name.substring(prefix.length()).chars().allMatch(Character::isDigit)) {
+                    leftOver.put(Long.parseLong(name.substring(prefix.length())), file);
+                }
+            });
+        }
+        if (!leftOver.isEmpty()) {
+            nextNumber = leftOver.lastKey() + 1;
+        }
+    }
+
+    // records left by the last run
+    long size() throws IOException {
+        long size = 0;
+        for (Path file : leftOver.values()) {
+            try (LikeWriteAheadLog segment = new LikeWriteAheadLog(file, false)) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Hands the operations left by the last run over in order, at most batchSize at a time,
+     * and deletes their segments once all of them went through.
+     */
+    void replay(int batchSize, Consumer<List<LikeOperation>> consumer) throws IOException {
+        for (Path file : leftOver.values()) {
+            try (LikeWriteAheadLog segment = new LikeWriteAheadLog(file, false)) {
+                segment.read(batchSize, consumer);
+            }
+        }
+        for (Path file : leftOver.values()) {
+            Files.delete(file);
+        }
+        leftOver.clear();
+    }
+
+    void append(List<LikeOperation> operations) throws IOException {
+        if (current == null || current.records > 0 && current.records + operations.size() > segmentRecords) {
+            roll();
+        }
+        current.log.append(operations);
+        current.records += operations.size();
+        appended += operations.size();
+        current.end = appended;
+    }
+
+    /**
+     * Drops what the log holds of the first written operations appended since the start.
+     */
+    void checkpoint(long written) throws IOException {
+        while (!closed.isEmpty() && closed.peekFirst().end <= written) {
+            Segment segment = closed.pollFirst();
+            Files.delete(segment.file);
+            log.debug("Like log segment {} written, deleted", segment.file);
+        }
+        if (current != null && current.records > 0 && current.end <= written) {
+            current.log.truncate();
+            current.records = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current != null) {
+            current.log.close();
+        }
+    }
+
+    private void roll() throws IOException {
+        if (current != null) {
+            current.log.close();
+            closed.addLast(current);
+        }
+        Path file = path.resolveSibling(path.getFileName() + "." + nextNumber++);
+        current = new Segment(file, new LikeWriteAheadLog(file, sync));
+        current.end = appended;
+    }
+
+    private static class Segment {
+        private final Path file;
+        private final LikeWriteAheadLog log;
+        private long records;
+        // number of operations appended up to the end of this segment
+        private long end;
+
+        private Segment(Path file, LikeWriteAheadLog log) {
+            this.file = file;
+            this.log = log;
+        }
+    }
+}
@@ -0,0 +1,649 @@
+package ru.yandex.practicum.filmorate.storage.likes;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmDeletedEvent;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeOperationResult;
+import ru.yandex.practicum.filmorate.model.Likes;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.model.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.util.LongBuffer;
+import ru.yandex.practicum.filmorate.util.SortedArrays;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Likes served from memory and written to the likes table behind the request, when
+ * filmorate.likes.write-behind.enabled is set. The like graph keeps the films of each user as a sorted long array
+ * and the users of each film in a growable buffer in the order they liked it, so a like to a popular film is
+ * an append, not a copy; it is loaded from the database page by page on start. A like or unlike changes the graph, goes to the write-ahead log and
+ * into the queue, so it is acknowledged without a database round trip; one background thread writes the queue
+ * in batches through DbLikesStorage.applyLikes, which keeps like_count as well. After every batch the log drops
+ * the segments that are fully written, so it stays about the size of the queue; what is left of it after a crash
+ * is replayed into the database on the next start.
+ * SQL that reads the likes table itself (common films, like_count) may lag behind by one flush.
+ * A batch that keeps failing is retried max-attempts times and then written one operation at a time;
+ * operations that still fail are appended to the dead-letter log next to the log and the writer moves on.
+ * Films and users are looked up in the database the first time they are liked after a start.
+ */
+@Slf4j
+@Component
+@Primary
+@Qualifier("dbStorage")
+@Profile("!inMemory")
+@ConditionalOnProperty("filmorate.likes.write-behind.enabled")
+public class WriteBehindLikesStorage implements LikesStorage {
+    private static final int ID_BATCH_SIZE = 1000;
+    private static final int LOAD_PAGE_SIZE = 1000;
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private final DbLikesStorage likesStorage;
+    private final FilmStorage filmStorage;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final Path walPath;
+    private final boolean walSync;
+    private final long walSegmentRecords;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int capacity;
+    private final int maxAttempts;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, LongBuffer> usersByFilm = new HashMap<>();
+    private final Map<Long, long[]> filmsByUser = new HashMap<>();
+    // ids are never reused, so a film or user stays known until it is deleted; filled in without the graph lock
+    private final Set<Long> knownFilms = ConcurrentHashMap.newKeySet();
+    private final Set<Long> knownUsers = ConcurrentHashMap.newKeySet();
+
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition notEmpty = queueLock.newCondition();
+    private final Condition notFull = queueLock.newCondition();
+    private final Condition written = queueLock.newCondition();
+    private final Queue<LikeOperation> queue = new ArrayDeque<>();
+    private final Thread thread;
+    private SegmentedLikeLog wal;
+    private LikeWriteAheadLog deadLetters;
+    private long addedCount;
+    private long writtenCount;
+    private int flushWaiters;
+    private boolean running;
+
+    @Autowired
+    public WriteBehindLikesStorage(DbLikesStorage likesStorage,
+                                   @Qualifier("dbStorage") FilmStorage filmStorage,
+                                   JdbcTemplate jdbcTemplate,
+                                   @Value("${filmorate.likes.write-behind.wal-path:likes.wal}") Path walPath,
+                                   @Value("${filmorate.likes.write-behind.wal-sync:false}") boolean walSync,
+                                   @Value("${filmorate.likes.write-behind.wal-segment-records:100000}")
+                                   long walSegmentRecords,
+                                   @Value("${filmorate.likes.write-behind.batch-size:1000}") int batchSize,
+                                   @Value("${filmorate.likes.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+                                   @Value("${filmorate.likes.write-behind.queue-capacity:100000}") int capacity,
+                                   @Value("${filmorate.likes.write-behind.max-attempts:5}") int maxAttempts) {
+        this.likesStorage = likesStorage;
+        this.filmStorage = filmStorage;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.walPath = walPath;
+        this.walSync = walSync;
+        this.walSegmentRecords = walSegmentRecords;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.capacity = capacity;
+        this.maxAttempts = maxAttempts;
+        this.thread = new Thread(this::run, "like-writer");
+        this.thread.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            wal = new SegmentedLikeLog(walPath, walSync, walSegmentRecords);
+            long logged = wal.size();
+            if (logged > 0) {
+                log.warn("Replaying {} like operations from {}", logged, walPath);
+            }
+            wal.replay(batchSize, likesStorage::applyLikes);
+            Path deadLetterPath = walPath.resolveSibling(walPath.getFileName() + ".failed");
+            deadLetters = new LikeWriteAheadLog(deadLetterPath, walSync);
+            if (deadLetters.size() > 0) {
+                log.warn("{} like operations in {} were never written to the database",
+                        deadLetters.size(), deadLetterPath);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Like log " + walPath + " could not be read", e);
+        }
+        Map<Long, List<Long>> likedFilms = new HashMap<>();
+        Map<Long, LongBuffer> likingUsers = new HashMap<>();
+        long after = 0;
+        List<Film> page;
+        do {
+            page = filmStorage.getFilms(after, LOAD_PAGE_SIZE);
+            List<Long> filmIds = page.stream()
+                    .map(Film::getId)
+                    .collect(Collectors.toList());
+            knownFilms.addAll(filmIds);
+            likesStorage.getLikesByFilms(filmIds).forEach((filmId, userIds) -> {
+                LongBuffer likers = new LongBuffer();
+                for (Long userId : userIds) {
+                    likers.add(userId);
+                    likedFilms.computeIfAbsent(userId, id -> new ArrayList<>()).add(filmId);
+                }
+                likingUsers.put(filmId, likers);
+            });
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == LOAD_PAGE_SIZE);
+        lock.writeLock().lock();
+        try {
+            likedFilms.forEach((userId, filmIds) -> filmsByUser.put(userId, SortedArrays.of(filmIds)));
+            usersByFilm.putAll(likingUsers);
+            knownUsers.addAll(filmsByUser.keySet());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        queueLock.lock();
+        try {
+            running = true;
+        } finally {
+            queueLock.unlock();
+        }
+        thread.start();
+        log.info("Like writer started, {} films with likes loaded, batch size {}, queue capacity {}",
+                likingUsers.size(), batchSize, capacity);
+    }
+
+    /**
+     * Stops the writer once the queue is written; whatever could not be written stays in the log.
+     */
+    @PreDestroy
+    public void stop() {
+        queueLock.lock();
+        try {
+            running = false;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            wal.close();
+            deadLetters.close();
+        } catch (IOException e) {
+            log.warn("Like log {} not closed: {}", walPath, e.getMessage());
+        }
+        log.info("Like writer stopped, {} like operations written", writtenCount);
+    }
+
+    /**
+     * Blocks until every like operation accepted so far is in the database.
+     */
+    public void flush() {
+        queueLock.lock();
+        try {
+            long target = addedCount;
+            flushWaiters++;
+            notEmpty.signal();
+            try {
+                while (running && writtenCount < target) {
+                    written.awaitUninterruptibly();
+                }
+            } finally {
+                flushWaiters--;
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean addLike(Long filmId, Long userId) {
+        lookUpFilms(List.of(filmId));
+        lookUpUsers(List.of(userId));
+        LikeOperationResult.Status status = change(List.of(new LikeOperation(filmId, userId, Operation.ADD)))
+                .get(0).getStatus();
+        if (status == LikeOperationResult.Status.NOT_FOUND) {
+            log.error("User with id {} or film with id {} not found", userId, filmId);
+            throw new NotFoundException(String.format("User with id %s or film with id %s not found",
+                    userId, filmId));
+        }
+        if (status == LikeOperationResult.Status.UNCHANGED) {
+            log.info("User with id {} already liked film with id {}", userId, filmId);
+            return false;
+        }
+        log.info("Like from id {} to film {} added", userId, filmId);
+        return true;
+    }
+
+    @Override
+    public void removeLike(Long filmId, Long userId) {
+        log.info("Removing like from user id {} to film id {}", userId, filmId);
+        // a film and user that share a like are known, so there is nothing to look up
+        LikeOperationResult.Status status = change(List.of(new LikeOperation(filmId, userId, Operation.REMOVE)))
+                .get(0).getStatus();
+        if (status != LikeOperationResult.Status.APPLIED) {
+            log.error("User with id {} or film with id {} not found", userId, filmId);
+            throw new NotFoundException(String.format("User with id %s or film with id %s not found",
+                    userId, filmId));
+        }
+        log.info("Like from id {} to film {} removed", userId, filmId);
+    }
+
+    @Override
+    public List<LikeOperationResult> applyLikes(List<LikeOperation> operations) {
+        lookUpFilms(operations.stream().map(LikeOperation::getFilmId).collect(Collectors.toSet()));
+        lookUpUsers(operations.stream().map(LikeOperation::getUserId).collect(Collectors.toSet()));
+        List<LikeOperationResult> results = change(operations);
+        log.info("{} like operations applied, {} of them changed likes", operations.size(),
+                results.stream().filter(result -> result.getStatus() == LikeOperationResult.Status.APPLIED).count());
+        return results;
+    }
+
+    @Override
+    public List<Likes> getLikes(Long filmId) {
+        lock.readLock().lock();
+        try {
+            LongBuffer userIds = usersByFilm.get(filmId);
+            if (userIds == null) {
+                return new ArrayList<>();
+            }
+            List<Likes> likes = new ArrayList<>(userIds.size());
+            for (int i = 0; i < userIds.size(); i++) {
+                likes.add(new Likes(userIds.get(i), filmId));
+            }
+            return likes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Long, List<Long>> getLikesByFilms(Collection<Long> filmIds) {
+        Map<Long, List<Long>> likes = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Long filmId : filmIds) {
+                LongBuffer userIds = usersByFilm.get(filmId);
+                if (userIds != null) {
+                    likes.put(filmId, userIds.toList());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        log.info("Likes found for {} of {} films", likes.size(), filmIds.size());
+        return likes;
+    }
+
+    @Override
+    public List<Likes> getAllLikes() {
+        List<Likes> likes = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            usersByFilm.forEach((filmId, userIds) -> {
+                for (int i = 0; i < userIds.size(); i++) {
+                    likes.add(new Likes(userIds.get(i), filmId));
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        return likes;
+    }
+
+    @Override
+    public List<Long> getLikedFilms(Long userId) {
+        lock.readLock().lock();
+        try {
+            return toList(filmsByUser.getOrDefault(userId, SortedArrays.EMPTY));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int reconcileLikeCounts() {
+        return likesStorage.reconcileLikeCounts();
+    }
+
+    // the likes table loses the film's rows by cascade, the graph has to drop them here
+    @EventListener
+    public void onFilmDeleted(FilmDeletedEvent event) {
+        Long filmId = event.getFilmId();
+        lock.writeLock().lock();
+        try {
+            knownFilms.remove(filmId);
+            LongBuffer userIds = usersByFilm.remove(filmId);
+            if (userIds != null) {
+                for (int i = 0; i < userIds.size(); i++) {
+                    long userId = userIds.get(i);
+                    putOrRemove(filmsByUser, userId,
+                            SortedArrays.delete(filmsByUser.getOrDefault(userId, SortedArrays.EMPTY), filmId));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onUserDeleted(UserDeletedEvent event) {
+        Long userId = event.getUserId();
+        lock.writeLock().lock();
+        try {
+            knownUsers.remove(userId);
+            long[] filmIds = filmsByUser.remove(userId);
+            if (filmIds != null) {
+                for (long filmId : filmIds) {
+                    removeLiker(filmId, userId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ids not seen since the start are looked up before any lock is taken, which costs a query once per id
+    private void lookUpFilms(Collection<Long> filmIds) {
+        lookUp(knownFilms, "SELECT film_id AS id FROM films WHERE film_id IN (:ids)", filmIds);
+    }
+
+    private void lookUpUsers(Collection<Long> userIds) {
+        lookUp(knownUsers, "SELECT user_id AS id FROM filmorate_users WHERE user_id IN (:ids)", userIds);
+    }
+
+    private void lookUp(Set<Long> known, String sql, Collection<Long> ids) {
+        List<Long> unknown = ids.stream()
+                .filter(id -> !known.contains(id))
+                .collect(Collectors.toList());
+        for (int from = 0; from < unknown.size(); from += ID_BATCH_SIZE) {
+            var params = new MapSqlParameterSource("ids", unknown.subList(from,
+                    Math.min(from + ID_BATCH_SIZE, unknown.size())));
+            known.addAll(namedParameterJdbcTemplate.queryForList(sql, params, Long.class));
+        }
+    }
+
+    // membership is checked on the user's side, a binary search over the films one user liked
+    private boolean link(Long filmId, Long userId) {
+        long[] films = filmsByUser.getOrDefault(userId, SortedArrays.EMPTY);
+        long[] updated = SortedArrays.insert(films, filmId);
+        if (updated == films) {
+            return false;
+        }
+        filmsByUser.put(userId, updated);
+        usersByFilm.computeIfAbsent(filmId, id -> new LongBuffer()).add(userId);
+        return true;
+    }
+
+    private boolean unlink(Long filmId, Long userId) {
+        long[] films = filmsByUser.getOrDefault(userId, SortedArrays.EMPTY);
+        long[] updated = SortedArrays.delete(films, filmId);
+        if (updated == films) {
+            return false;
+        }
+        putOrRemove(filmsByUser, userId, updated);
+        removeLiker(filmId, userId);
+        return true;
+    }
+
+    private void removeLiker(long filmId, long userId) {
+        LongBuffer likers = usersByFilm.get(filmId);
+        if (likers != null && likers.remove(userId) && likers.size() == 0) {
+            usersByFilm.remove(filmId);
+        }
+    }
+
+    private static void putOrRemove(Map<Long, long[]> map, Long key, long[] values) {
+        if (values.length == 0) {
+            map.remove(key);
+        } else {
+            map.put(key, values);
+        }
+    }
+
+    private static List<Long> toList(long[] values) {
+        List<Long> list = new ArrayList<>(values.length);
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    /**
+     * Changes the graph and then logs and queues what changed. The queue lock is held throughout, so the log
+     * and the queue get operations in the order the graph changed; the graph lock is only held for the change
+     * itself, so reads do not wait for the log to be written.
+     */
+    private List<LikeOperationResult> change(List<LikeOperation> operations) {
+        List<LikeOperationResult> results = new ArrayList<>(operations.size());
+        List<LikeOperation> applied = new ArrayList<>();
+        queueLock.lock();
+        try {
+            if (running && queue.size() >= capacity) {
+                log.warn("Like queue is full, waiting for the writer");
+            }
+            while (running && queue.size() >= capacity) {
+                notFull.awaitUninterruptibly();
+            }
+            lock.writeLock().lock();
+            try {
+                for (LikeOperation operation : operations) {
+                    LikeOperationResult.Status status;
+                    if (!knownFilms.contains(operation.getFilmId()) || !knownUsers.contains(operation.getUserId())) {
+                        status = LikeOperationResult.Status.NOT_FOUND;
+                    } else if (operation.getOperation() == Operation.ADD
+                            ? link(operation.getFilmId(), operation.getUserId())
+                            : unlink(operation.getFilmId(), operation.getUserId())) {
+                        status = LikeOperationResult.Status.APPLIED;
+                        applied.add(operation);
+                    } else {
+                        status = LikeOperationResult.Status.UNCHANGED;
+                    }
+                    results.add(new LikeOperationResult(operation, status));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            try {
+                record(applied);
+            } catch (RuntimeException e) {
+                // nothing was acknowledged, so the graph goes back to where it was
+                revert(applied);
+                throw e;
+            }
+        } finally {
+            queueLock.unlock();
+        }
+        return results;
+    }
+
+    private void revert(List<LikeOperation> applied) {
+        lock.writeLock().lock();
+        try {
+            for (int i = applied.size() - 1; i >= 0; i--) {
+                LikeOperation operation = applied.get(i);
+                if (operation.getOperation() == Operation.ADD) {
+                    unlink(operation.getFilmId(), operation.getUserId());
+                } else {
+                    link(operation.getFilmId(), operation.getUserId());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // the caller holds the queue lock
+    private void record(List<LikeOperation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        if (!running) {
+            // after shutdown there is no writer thread left, so late operations are written by the caller
+            likesStorage.applyLikes(operations);
+            return;
+        }
+        try {
+            wal.append(operations);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Like log " + walPath + " could not be written", e);
+        }
+        queue.addAll(operations);
+        addedCount += operations.size();
+        notEmpty.signal();
+    }
+
+    private void run() {
+        while (true) {
+            List<LikeOperation> batch = nextBatch();
+            if (batch == null) {
+                return;
+            }
+            if (!write(batch)) {
+                queueLock.lock();
+                try {
+                    log.warn("Like writer stopped with {} like operations left in {} for the next start",
+                            batch.size() + queue.size(), walPath);
+                    written.signalAll();
+                } finally {
+                    queueLock.unlock();
+                }
+                return;
+            }
+            queueLock.lock();
+            try {
+                // operations are logged and queued in the same order, so the first writtenCount of them are written
+                writtenCount += batch.size();
+                wal.checkpoint(writtenCount);
+            } catch (IOException e) {
+                log.error("Like log {} not checkpointed, it will be replayed on the next start", walPath, e);
+            } finally {
+                written.signalAll();
+                queueLock.unlock();
+            }
+        }
+    }
+
+    private List<LikeOperation> nextBatch() {
+        queueLock.lock();
+        try {
+            while (running && queue.isEmpty()) {
+                notEmpty.awaitUninterruptibly();
+            }
+            if (queue.isEmpty()) {
+                return null;
+            }
+            long deadline = System.nanoTime() + flushIntervalNanos;
+            long remaining = flushIntervalNanos;
+            while (running && queue.size() < batchSize && flushWaiters == 0 && remaining > 0) {
+                try {
+                    notEmpty.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+            List<LikeOperation> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+            while (!queue.isEmpty() && batch.size() < batchSize) {
+                batch.add(queue.poll());
+            }
+            notFull.signalAll();
+            return batch;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    // a failed batch is retried a few times and then written one operation at a time; after shutdown it is left to the log
+    private boolean write(List<LikeOperation> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                likesStorage.applyLikes(batch);
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    log.error("Batch of {} like operations failed {} times, writing them one by one: {}",
+                            batch.size(), attempt, e.getMessage());
+                    break;
+                }
+                log.error("Batch of {} like operations failed, retrying in {} ms: {}", batch.size(), RETRY_DELAY_MS,
+                        e.getMessage());
+            }
+            if (!awaitRetry()) {
+                return false;
+            }
+        }
+        List<LikeOperation> failed = new ArrayList<>();
+        for (LikeOperation operation : batch) {
+            try {
+                likesStorage.applyLikes(List.of(operation));
+            } catch (RuntimeException e) {
+                log.error("Like operation {} failed: {}", operation, e.getMessage());
+                failed.add(operation);
+            }
+        }
+        if (!failed.isEmpty()) {
+            try {
+                deadLetters.append(failed);
+                log.error("{} like operations moved to the dead-letter log", failed.size());
+            } catch (IOException e) {
+                log.error("{} like operations lost, the dead-letter log could not be written: {}", failed.size(),
+                        failed, e);
+            }
+        }
+        return true;
+    }
+
+    private boolean awaitRetry() {
+        queueLock.lock();
+        try {
+            if (!running) {
+                return false;
+            }
+            notEmpty.await(RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+            return running;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Tables of the in-memory storage engine, shared by the InMemory*Storage beans of the inMemory profile.
+ * Rows are kept by id in sorted maps, so keyset pages are tail maps, next to the secondary indexes
+ * the storages query by: likes by user, films by director, friends by friend, reviews by usefulness, events by user.
+ * One read-write lock guards everything, as in the service indexes: reads run in parallel, and a write is atomic
+ * across tables like a transaction, which keeps the indexes and the schema's cascades consistent.
+ * Rows are never handed out, the storages copy them in and out.
+ */
+@Slf4j
+@Component
+@Profile("inMemory")
+public class InMemoryDatabase {
+    // same order as the review indexes of the schema: most useful first, then by id
+    static final Comparator<Review> BY_USEFUL = Comparator.comparingInt(Review::getUseful).reversed()
+            .thenComparing(Review::getReviewId);
+
+    private static final List<String> MPA = List.of("G", "PG", "PG-13", "R", "NC-17");
+    private static final List<String> GENRES = List.of("Комедия", "Драма", "Мультфильм", "Триллер",
+            "Документальный", "Боевик");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    final NavigableMap<Long, Mpa> mpa = new TreeMap<>();
+    final NavigableMap<Long, Genre> genres = new TreeMap<>();
+
+    final NavigableMap<Long, Film> films = new TreeMap<>();
+    final Map<Long, Set<Long>> filmGenres = new HashMap<>();
+    final Map<Long, Set<Long>> filmDirectors = new HashMap<>();
+    final Map<Long, Set<Long>> directorFilms = new HashMap<>();
+    final Map<Long, Set<Long>> filmLikes = new HashMap<>();
+    final Map<Long, Set<Long>> userLikes = new HashMap<>();
+
+    final NavigableMap<Long, User> users = new TreeMap<>();
+    final Map<String, Long> userEmails = new HashMap<>();
+    final Map<String, Long> userLogins = new HashMap<>();
+    // user1 added user2: friends has user1 -> user2, friendOf has user2 -> user1
+    final Map<Long, Set<Long>> friends = new HashMap<>();
+    final Map<Long, Set<Long>> friendOf = new HashMap<>();
+
+    final NavigableMap<Long, Director> directors = new TreeMap<>();
+
+    final NavigableMap<Long, Review> reviews = new TreeMap<>();
+    final NavigableSet<Review> reviewsByUseful = new TreeSet<>(BY_USEFUL);
+    final Map<Long, NavigableSet<Review>> filmReviewsByUseful = new HashMap<>();
+    final Map<Long, Set<Long>> userReviews = new HashMap<>();
+    // review id -> user id -> is liked
+    final Map<Long, Map<Long, Boolean>> reviewVotes = new HashMap<>();
+    final Map<Long, Set<Long>> userReviewVotes = new HashMap<>();
+
+    final Map<Long, NavigableMap<Long, Event>> userEvents = new HashMap<>();
+
+    private long filmSequence;
+    private long userSequence;
+    private long directorSequence;
+    private long reviewSequence;
+    private long eventSequence;
+
+    public InMemoryDatabase() {
+        clear();
+    }
+
+    /**
+     * Drops every row and restarts the id sequences, leaving the reference data of a freshly migrated database.
+     */
+    public void clear() {
+        update(() -> {
+            mpa.clear();
+            genres.clear();
+            for (int i = 0; i < MPA.size(); i++) {
+                mpa.put(i + 1L, new Mpa(i + 1L, MPA.get(i)));
+            }
+            for (int i = 0; i < GENRES.size(); i++) {
+                genres.put(i + 1L, new Genre(i + 1L, GENRES.get(i)));
+            }
+            List.of(films, filmGenres, filmDirectors, directorFilms, filmLikes, userLikes, users, userEmails,
+                    userLogins, friends, friendOf, directors, reviews, filmReviewsByUseful, userReviews,
+                    reviewVotes, userReviewVotes, userEvents).forEach(Map::clear);
+            reviewsByUseful.clear();
+            filmSequence = 0;
+            userSequence = 0;
+            directorSequence = 0;
+            reviewSequence = 0;
+            eventSequence = 0;
+        });
+        log.info("In-memory database cleared");
+    }
+
+    <T> T read(Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    <T> T write(Supplier<T> change) {
+        lock.writeLock().lock();
+        try {
+            return change.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void update(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // The methods below must be called under the lock, the sequences and cascades under the write lock
+
+    long nextFilmId() {
+        return ++filmSequence;
+    }
+
+    long nextUserId() {
+        return ++userSequence;
+    }
+
+    long nextDirectorId() {
+        return ++directorSequence;
+    }
+
+    long nextReviewId() {
+        return ++reviewSequence;
+    }
+
+    long nextEventId() {
+        return ++eventSequence;
+    }
+
+    int likeCount(long filmId) {
+        return filmLikes.getOrDefault(filmId, Set.of()).size();
+    }
+
+    Film copyFilm(Film film) {
+        Mpa filmMpa = mpa.get(film.getMpa().getId());
+        return Film.builder()
+                .id(film.getId())
+                .name(film.getName())
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .likeCount(likeCount(film.getId()))
+                .mpa(new Mpa(film.getMpa().getId(), filmMpa == null ? null : filmMpa.getName()))
+                .build();
+    }
+
+    static User copyUser(User user) {
+        return User.builder()
+                .id(user.getId())
+                .email(user.getEmail())
+                .login(user.getLogin())
+                .name(user.getName())
+                .birthday(user.getBirthday())
+                .build();
+    }
+
+    static Director copyDirector(Director director) {
+        return new Director(director.getId(), director.getName());
+    }
+
+    static Review copyReview(Review review) {
+        return Review.builder()
+                .reviewId(review.getReviewId())
+                .content(review.getContent())
+                .isPositive(review.getIsPositive())
+                .userId(review.getUserId())
+                .filmId(review.getFilmId())
+                .useful(review.getUseful())
+                .build();
+    }
+
+    static Event copyEvent(Event event) {
+        return Event.builder()
+                .eventId(event.getEventId())
+                .timestamp(event.getTimestamp())
+                .userId(event.getUserId())
+                .eventType(event.getEventType())
+                .operation(event.getOperation())
+                .entityId(event.getEntityId())
+                .build();
+    }
+
+    // link sets are sorted, so whatever is read from them comes in id order
+    static void link(Map<Long, Set<Long>> links, Long from, Long to) {
+        links.computeIfAbsent(from, id -> new TreeSet<>()).add(to);
+    }
+
+    static boolean unlink(Map<Long, Set<Long>> links, Long from, Long to) {
+        Set<Long> linked = links.get(from);
+        if (linked == null || !linked.remove(to)) {
+            return false;
+        }
+        if (linked.isEmpty()) {
+            links.remove(from);
+        }
+        return true;
+    }
+
+    void addReviewRow(Review review) {
+        reviews.put(review.getReviewId(), review);
+        reviewsByUseful.add(review);
+        filmReviewsByUseful.computeIfAbsent(review.getFilmId(), id -> new TreeSet<>(BY_USEFUL)).add(review);
+        link(userReviews, review.getUserId(), review.getReviewId());
+    }
+
+    void removeReviewRow(Review review) {
+        reviews.remove(review.getReviewId());
+        reviewsByUseful.remove(review);
+        NavigableSet<Review> filmReviews = filmReviewsByUseful.get(review.getFilmId());
+        filmReviews.remove(review);
+        if (filmReviews.isEmpty()) {
+            filmReviewsByUseful.remove(review.getFilmId());
+        }
+        unlink(userReviews, review.getUserId(), review.getReviewId());
+        Map<Long, Boolean> votes = reviewVotes.remove(review.getReviewId());
+        if (votes != null) {
+            votes.keySet().forEach(userId -> unlink(userReviewVotes, userId, review.getReviewId()));
+        }
+    }
+
+    // content and is_positive are final in Review, an update puts a new row in place of the old one, votes stay
+    void replaceReviewRow(Review old, Review review) {
+        reviewsByUseful.remove(old);
+        filmReviewsByUseful.get(old.getFilmId()).remove(old);
+        reviews.put(review.getReviewId(), review);
+        reviewsByUseful.add(review);
+        filmReviewsByUseful.get(review.getFilmId()).add(review);
+    }
+
+    // useful is a sort key of the review indexes, so the row is taken out of them while it changes
+    void changeUseful(Long reviewId, int delta) {
+        Review review = reviews.get(reviewId);
+        reviewsByUseful.remove(review);
+        filmReviewsByUseful.get(review.getFilmId()).remove(review);
+        review.setUseful(review.getUseful() + delta);
+        reviewsByUseful.add(review);
+        filmReviewsByUseful.get(review.getFilmId()).add(review);
+    }
+}
@@ -0,0 +1,187 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@Profile("inMemory")
+@Qualifier("dbStorage")
+public class InMemoryDirectorStorage implements DirectorStorage {
+
+    private final InMemoryDatabase database;
+
+    @Autowired
+    public InMemoryDirectorStorage(InMemoryDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public List<Director> getAllDirectors() {
+        log.info("Query all Directors");
+        return database.read(() -> database.directors.values().stream()
+                .map(InMemoryDatabase::copyDirector)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Director createDirector(Director director) {
+        log.info("Create Director: {}", director.getName());
+        database.update(() -> {
+            director.setId(database.nextDirectorId());
+            database.directors.put(director.getId(), InMemoryDatabase.copyDirector(director));
+        });
+        log.debug("Director added with id {}", director.getId());
+        return director;
+    }
+
+    @Override
+    public void deleteDirector(Long id) {
+        log.info("Delete Director {}", id);
+        database.update(() -> {
+            database.directors.remove(id);
+            Set<Long> films = database.directorFilms.remove(id);
+            if (films != null) {
+                films.forEach(filmId -> InMemoryDatabase.unlink(database.filmDirectors, filmId, id));
+            }
+        });
+    }
+
+    @Override
+    public Director updateDirector(Director director) {
+        log.info("Update Director: {}", director);
+        if (director.getName().isBlank()) {
+            log.error("director name is empty or contain blank");
+            throw new ValidationException("Name of director can not be empty");
+        }
+        database.update(() -> {
+            if (!database.directors.containsKey(director.getId())) {
+                log.error("Director with id {} not found", director.getId());
+                throw new NotFoundException(String.format("Director with id %s not found", director.getId()));
+            }
+            database.directors.put(director.getId(), InMemoryDatabase.copyDirector(director));
+        });
+        return director;
+    }
+
+    @Override
+    public Director getDirector(Long id) {
+        log.info("Get Director {}", id);
+        Director director = database.read(() -> database.directors.get(id));
+        if (director == null) {
+            log.error("Director with id {} not found", id);
+            throw new NotFoundException(String.format("Director wth id %s not found", id));
+        }
+        return InMemoryDatabase.copyDirector(director);
+    }
+
+    @Override
+    public List<Long> findFilmsByDirector(Long directorId, String sortBy) {
+        log.info("Query findFilmsByDirector director:{} sortBy:{}", directorId, sortBy);
+        Comparator<Film> order = "year".equals(sortBy)
+                ? Comparator.comparing(Film::getReleaseDate)
+                : Comparator.comparingInt((Film film) -> database.likeCount(film.getId())).reversed();
+        return database.read(() -> database.directorFilms.getOrDefault(directorId, Set.of()).stream()
+                .map(database.films::get)
+                .sorted(order.thenComparing(Film::getId))
+                .map(Film::getId)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Set<Director> getDirectorsByFilm(Long filmId) {
+        log.info("Query getDirectorsByFilm film:{}", filmId);
+        return database.read(() -> Set.copyOf(directorsOf(filmId)));
+    }
+
+    @Override
+    public Map<Long, Set<Director>> getDirectorsByFilms(Collection<Long> filmIds) {
+        log.info("Query getDirectorsByFilms films count:{}", filmIds.size());
+        return database.read(() -> {
+            Map<Long, Set<Director>> directors = new HashMap<>();
+            for (Long filmId : filmIds) {
+                if (database.filmDirectors.containsKey(filmId)) {
+                    directors.put(filmId, directorsOf(filmId));
+                }
+            }
+            return directors;
+        });
+    }
+
+    @Override
+    public Set<Director> setDirectorsToFilm(Set<Director> directors, Long filmId) {
+        return database.write(() -> {
+            Set<Long> ids = directors == null ? Set.of() : directors.stream()
+                    .map(Director::getId)
+                    .collect(Collectors.toCollection(TreeSet::new));
+            Set<Long> missing = ids.stream()
+                    .filter(id -> !database.directors.containsKey(id))
+                    .collect(Collectors.toCollection(TreeSet::new));
+            if (!missing.isEmpty()) {
+                log.error("Directors with ids {} not found", missing);
+                throw new NotFoundException(String.format("Directors with ids %s not found", missing));
+            }
+            if (!ids.isEmpty() && !database.films.containsKey(filmId)) {
+                throw new DataIntegrityViolationException(String.format("Film with id %s not found", filmId));
+            }
+            Set<Long> old = database.filmDirectors.remove(filmId);
+            if (old != null) {
+                old.forEach(directorId -> InMemoryDatabase.unlink(database.directorFilms, directorId, filmId));
+            }
+            ids.forEach(directorId -> link(filmId, directorId));
+            return directorsOf(filmId);
+        });
+    }
+
+    @Override
+    public Map<Long, Director> getDirectorsByIds(Collection<Long> ids) {
+        return database.read(() -> {
+            Map<Long, Director> directors = new HashMap<>();
+            for (Long id : ids) {
+                Director director = database.directors.get(id);
+                if (director != null) {
+                    directors.put(id, InMemoryDatabase.copyDirector(director));
+                }
+            }
+            return directors;
+        });
+    }
+
+    @Override
+    public void addFilmDirectors(Collection<Film> films) {
+        database.update(() -> films.forEach(film ->
+                film.getDirectors().forEach(director -> link(film.getId(), director.getId()))));
+        log.info("Directors added to {} films", films.size());
+    }
+
+    private void link(Long filmId, Long directorId) {
+        InMemoryDatabase.link(database.filmDirectors, filmId, directorId);
+        InMemoryDatabase.link(database.directorFilms, directorId, filmId);
+    }
+
+    private Set<Director> directorsOf(Long filmId) {
+        return database.filmDirectors.getOrDefault(filmId, Set.of()).stream()
+                .map(database.directors::get)
+                .map(InMemoryDatabase::copyDirector)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+}
@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.storage.feed.EventStorage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@Profile("inMemory")
+@Qualifier("dbStorage")
+public class InMemoryEventStorage implements EventStorage {
+
+    private final InMemoryDatabase database;
+
+    @Autowired
+    public InMemoryEventStorage(InMemoryDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public Event addEvent(Long userId, EventType eventType, Operation operation, Long entityId) {
+        Event event = Event.builder()
+                .timestamp(System.currentTimeMillis())
+                .userId(userId)
+                .eventType(eventType)
+                .operation(operation)
+                .entityId(entityId)
+                .build();
+        log.info("Adding event {}", event);
+        addEvents(List.of(event));
+        log.info("Event id {}", event.getEventId());
+        return event;
+    }
+
+    @Override
+    public List<Event> addEvents(List<Event> events) {
+        log.info("Adding {} events", events.size());
+        database.update(() -> {
+            for (Event event : events) {
+                if (!database.users.containsKey(event.getUserId())) {
+                    throw new DataIntegrityViolationException(String.format("User with id %s not found",
+                            event.getUserId()));
+                }
+            }
+            for (Event event : events) {
+                event.setEventId(database.nextEventId());
+                database.userEvents.computeIfAbsent(event.getUserId(), id -> new TreeMap<>())
+                        .put(event.getEventId(), InMemoryDatabase.copyEvent(event));
+            }
+        });
+        return events;
+    }
+
+    @Override
+    public List<Event> getFeedForUser(Long userId) {
+        log.info("Getting feed for user id {}", userId);
+        return database.read(() -> database.userEvents.getOrDefault(userId, Collections.emptyNavigableMap())
+                .values().stream()
+                .map(InMemoryDatabase::copyEvent)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<Event> getFeedForUser(Long userId, Long since, Long before, Integer limit) {
+        log.info("Getting feed for user id {}, since {}, before {}, limit {}", userId, since, before, limit);
+        long from = since == null ? 0 : since;
+        long to = before == null ? Long.MAX_VALUE : before;
+        int count = limit == null ? Integer.MAX_VALUE : limit;
+        List<Event> events = database.read(() -> {
+            NavigableMap<Long, Event> range = database.userEvents
+                    .getOrDefault(userId, Collections.emptyNavigableMap())
+                    .subMap(from, false, to, false);
+            // the latest events unless only since is given, always returned oldest first
+            List<Event> found = (since != null && before == null ? range : range.descendingMap()).values().stream()
+                    .limit(count)
+                    .map(InMemoryDatabase::copyEvent)
+                    .collect(Collectors.toCollection(ArrayList::new));
+            if (since == null || before != null) {
+                Collections.reverse(found);
+            }
+            return found;
+        });
+        log.info("{} events found for user", events.size());
+        return events;
+    }
+}
@@ -0,0 +1,188 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@Profile("inMemory")
+@Qualifier("dbStorage")
+public class InMemoryFilmStorage implements FilmStorage {
+
+    private final InMemoryDatabase database;
+
+    @Autowired
+    public InMemoryFilmStorage(InMemoryDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public Film addFilm(Film film) {
+        log.debug("Adding film {}", film);
+        database.update(() -> insert(film));
+        log.debug("Added with id {}", film.getId());
+        return film;
+    }
+
+    @Override
+    public List<Film> addFilms(List<Film> films) {
+        log.debug("Adding {} films", films.size());
+        database.update(() -> {
+            films.forEach(this::checkMpa);
+            films.forEach(this::insert);
+        });
+        return films;
+    }
+
+    @Override
+    public Film putFilm(Film film) {
+        log.debug("Updating film {}", film);
+        database.update(() -> {
+            if (!database.films.containsKey(film.getId())) {
+                log.error("Film with id {} not found", film.getId());
+                throw new FilmNotFoundException(String.format("Film with id %s not found", film.getId()));
+            }
+            checkMpa(film);
+            database.films.put(film.getId(), database.copyFilm(film));
+        });
+        return film;
+    }
+
+    @Override
+    public List<Film> getFilms() {
+        List<Film> films = database.read(() -> copy(database.films.values().stream()));
+        log.info("Number of films registered: {}", films.size());
+        return films;
+    }
+
+    @Override
+    public List<Film> getFilms(Long after, Integer limit) {
+        List<Film> films = database.read(() -> copy(database.films.tailMap(after, false).values().stream()
+                .limit(limit)));
+        log.info("Number of films after id {}: {}", after, films.size());
+        return films;
+    }
+
+    @Override
+    public List<Film> getPopularFilms(Integer limit) {
+        List<Film> films = database.read(() -> copy(byLikes(database.films.values().stream())
+                .limit(limit)));
+        log.info("Number of top films: {}", films.size());
+        return films;
+    }
+
+    @Override
+    public List<Film> getCommonFilms(Long userId, Long friendId) {
+        List<Film> films = database.read(() -> {
+            Set<Long> friendLikes = database.userLikes.getOrDefault(friendId, Set.of());
+            return copy(database.userLikes.getOrDefault(userId, Set.of()).stream()
+                    .filter(friendLikes::contains)
+                    .map(database.films::get));
+        });
+        log.info("List of common films: {}", films.size());
+        return films;
+    }
+
+    // same filters as DbFilmStorage, a zero genre means any genre and the year is used whenever the genre is zero
+    @Override
+    public List<Film> getPopularFilms(Integer limit, Long genreId, Integer year) {
+        List<Film> films = database.read(() -> {
+            Stream<Film> candidates = database.films.values().stream();
+            if (genreId != 0) {
+                candidates = candidates.filter(film ->
+                        database.filmGenres.getOrDefault(film.getId(), Set.of()).contains(genreId));
+            }
+            if (genreId == 0 || year != 0) {
+                candidates = candidates.filter(film -> film.getReleaseDate().getYear() == year);
+            }
+            return copy(byLikes(candidates).limit(limit));
+        });
+        log.info("Number of most populars films: {}", films.size());
+        return films;
+    }
+
+    @Override
+    public Film findFilm(Long id) {
+        log.info("Looking for film: {}", id);
+        Film film = database.read(() -> {
+            Film stored = database.films.get(id);
+            return stored == null ? null : database.copyFilm(stored);
+        });
+        if (film == null) {
+            log.error("Film with id {} not found", id);
+            throw new FilmNotFoundException(String.format("Film wth id %s not found", id));
+        }
+        log.info("Film found: {}", film);
+        return film;
+    }
+
+    @Override
+    public List<Film> findAllFilmsByIds(List<Long> ids) {
+        return database.read(() -> copy(ids.stream()
+                .distinct()
+                .map(database.films::get)
+                .filter(Objects::nonNull)));
+    }
+
+    @Override
+    public void deleteFilm(Long id) {
+        database.update(() -> {
+            if (!database.films.containsKey(id)) {
+                log.info("Film with id {} not found", id);
+                throw new FilmNotFoundException(String.format("Film with id %s not found", id));
+            }
+            // reviews reference films without a cascade in the schema
+            if (database.filmReviewsByUseful.containsKey(id)) {
+                throw new DataIntegrityViolationException(String.format("Film with id %s has reviews", id));
+            }
+            database.films.remove(id);
+            database.filmGenres.remove(id);
+            Set<Long> directors = database.filmDirectors.remove(id);
+            if (directors != null) {
+                directors.forEach(directorId -> InMemoryDatabase.unlink(database.directorFilms, directorId, id));
+            }
+            Set<Long> likes = database.filmLikes.remove(id);
+            if (likes != null) {
+                likes.forEach(userId -> InMemoryDatabase.unlink(database.userLikes, userId, id));
+            }
+        });
+        log.info("Film with id {} deleted", id);
+    }
+
+    private void insert(Film film) {
+        checkMpa(film);
+        film.setId(database.nextFilmId());
+        database.films.put(film.getId(), database.copyFilm(film));
+    }
+
+    private void checkMpa(Film film) {
+        if (!database.mpa.containsKey(film.getMpa().getId())) {
+            throw new DataIntegrityViolationException(String.format("Mpa with id %s not found", film.getMpa().getId()));
+        }
+    }
+
+    // most liked first, ties in id order
+    private Stream<Film> byLikes(Stream<Film> films) {
+        return films.sorted(Comparator.comparingInt((Film film) -> database.likeCount(film.getId())).reversed()
+                .thenComparing(Film::getId));
+    }
+
+    private List<Film> copy(Stream<Film> films) {
+        return films.map(database::copyFilm)
+                .collect(Collectors.toList());
+    }
+}
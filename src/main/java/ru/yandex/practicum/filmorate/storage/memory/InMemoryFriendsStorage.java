@@ -0,0 +1,108 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.FriendshipRequestExistsException;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.friends.FriendsStorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Same model as DbFriendsStorage: user1 -> user2 means user1 added user2, a confirmed friendship is both directions.
+ */
+@Slf4j
+@Component
+@Profile("inMemory")
+@Qualifier("dbStorage")
+public class InMemoryFriendsStorage implements FriendsStorage {
+
+    private final InMemoryDatabase database;
+
+    @Autowired
+    public InMemoryFriendsStorage(InMemoryDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public void addFriend(Long userId, Long friendId) {
+        database.update(() -> {
+            if (database.friends.getOrDefault(userId, Set.of()).contains(friendId)) {
+                log.info("Friendship request from {} to {} already exist.", userId, friendId);
+                throw new FriendshipRequestExistsException(String.format(
+                        "Friendship request from %s to %s already exist.", userId, friendId));
+            }
+            if (!database.users.containsKey(userId) || !database.users.containsKey(friendId)) {
+                throw new UserNotFoundException(String.format("User with id %s or %s not found", userId, friendId));
+            }
+            InMemoryDatabase.link(database.friends, userId, friendId);
+            InMemoryDatabase.link(database.friendOf, friendId, userId);
+        });
+        log.info("Friendship request from {} to {} saved.", userId, friendId);
+    }
+
+    @Override
+    public void removeFriend(Long userId, Long friendId) {
+        boolean removed = database.write(() -> {
+            if (InMemoryDatabase.unlink(database.friends, userId, friendId)) {
+                InMemoryDatabase.unlink(database.friendOf, friendId, userId);
+                return true;
+            }
+            // the user never added the friend, so the friend's request is declined
+            if (InMemoryDatabase.unlink(database.friends, friendId, userId)) {
+                InMemoryDatabase.unlink(database.friendOf, userId, friendId);
+                return true;
+            }
+            return false;
+        });
+        log.info("Friendship between {} and {} removed: {}", userId, friendId, removed);
+    }
+
+    @Override
+    public List<User> getFriends(Long userId) {
+        List<User> friends = database.read(() -> users(database.friends.getOrDefault(userId, Set.of()).stream()));
+        log.info("Number of friends: {}", friends.size());
+        return friends;
+    }
+
+    @Override
+    public List<User> getCommonFriends(Long userId, Long friendId) {
+        return database.read(() -> {
+            Set<Long> otherFriends = database.friends.getOrDefault(friendId, Set.of());
+            return users(database.friends.getOrDefault(userId, Set.of()).stream()
+                    .filter(otherFriends::contains));
+        });
+    }
+
+    @Override
+    public Map<Long, List<Long>> getFriendIds(Collection<Long> userIds) {
+        log.info("Getting friend ids for {} users", userIds.size());
+        return database.read(() -> {
+            Map<Long, List<Long>> friendIds = new HashMap<>();
+            for (Long userId : userIds) {
+                Set<Long> friends = database.friends.get(userId);
+                if (friends != null) {
+                    friendIds.put(userId, new ArrayList<>(friends));
+                }
+            }
+            return friendIds;
+        });
+    }
+
+    private List<User> users(Stream<Long> ids) {
+        return ids.map(database.users::get)
+                .map(InMemoryDatabase::copyUser)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,151 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.GenreNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@Profile("inMemory")
+@Qualifier("dbStorage")
+public class InMemoryGenreStorage implements GenreStorage {
+
+    private final InMemoryDatabase database;
+
+    @Autowired
+    public InMemoryGenreStorage(InMemoryDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public List<Genre> getAllGenres() {
+        List<Genre> genres = database.read(() -> database.genres.values().stream()
+                .map(InMemoryGenreStorage::copy)
+                .collect(Collectors.toList()));
+        log.info("Number of genres: {}", genres.size());
+        return genres;
+    }
+
+    @Override
+    public Genre findGenre(Long id) {
+        log.info("Looking for genre: {}", id);
+        Genre genre = database.read(() -> database.genres.get(id));
+        if (genre == null) {
+            log.error("Genre with id {} not found", id);
+            throw new GenreNotFoundException(String.format("Genre with id %s not found", id));
+        }
+        return copy(genre);
+    }
+
+    @Override
+    public Genre addGenreToFilm(Film film, Genre genre) {
+        log.info("Adding genre id {} to film id {}", genre.getId(), film.getId());
+        database.update(() -> {
+            if (database.filmGenres.getOrDefault(film.getId(), Set.of()).contains(genre.getId())) {
+                log.error("Genre id {} already added to film id {}", genre.getId(), film.getId());
+                throw new DuplicateKeyException(String.format("Genre id %s already added to film id %s",
+                        genre.getId(), film.getId()));
+            }
+            if (!database.films.containsKey(film.getId()) || !database.genres.containsKey(genre.getId())) {
+                log.error("Film id {} or genre id {} not found", film.getId(), genre.getId());
+                throw new NotFoundException(String.format("Film id %s or genre id %s not found",
+                        film.getId(), genre.getId()));
+            }
+            InMemoryDatabase.link(database.filmGenres, film.getId(), genre.getId());
+        });
+        return findGenre(genre.getId());
+    }
+
+    @Override
+    public List<Genre> setGenresToFilm(Long filmId, Collection<Genre> genres) {
+        // checked before anything changes, so a failed call leaves the film as it was
+        List<Genre> list = database.write(() -> {
+            // ordered by id, as films are read back
+            Map<Long, Genre> uniqueGenres = new TreeMap<>();
+            if (genres != null) {
+                for (Genre genre : genres) {
+                    uniqueGenres.computeIfAbsent(genre.getId(), this::findGenre);
+                }
+            }
+            if (!uniqueGenres.isEmpty() && !database.films.containsKey(filmId)) {
+                log.error("Film id {} not found", filmId);
+                throw new NotFoundException(String.format("Film id %s not found", filmId));
+            }
+            database.filmGenres.remove(filmId);
+            uniqueGenres.keySet().forEach(genreId -> InMemoryDatabase.link(database.filmGenres, filmId, genreId));
+            return new ArrayList<>(uniqueGenres.values());
+        });
+        log.info("Genres {} set to film id {}", list.stream().map(Genre::getId).collect(Collectors.toList()), filmId);
+        return list;
+    }
+
+    @Override
+    public void addFilmGenres(Collection<Film> films) {
+        int added = database.write(() -> {
+            int links = 0;
+            for (Film film : films) {
+                if (film.getGenres() != null) {
+                    for (Genre genre : film.getGenres()) {
+                        InMemoryDatabase.link(database.filmGenres, film.getId(), genre.getId());
+                        links++;
+                    }
+                }
+            }
+            return links;
+        });
+        log.info("{} genres added to {} films", added, films.size());
+    }
+
+    @Override
+    public List<Genre> getFilmGenres(Long filmId) {
+        return database.read(() -> genresOf(filmId));
+    }
+
+    @Override
+    public Map<Long, List<Genre>> getFilmGenres(Collection<Long> filmIds) {
+        Map<Long, List<Genre>> genres = database.read(() -> {
+            Map<Long, List<Genre>> found = new HashMap<>();
+            for (Long filmId : filmIds) {
+                if (database.filmGenres.containsKey(filmId)) {
+                    found.put(filmId, genresOf(filmId));
+                }
+            }
+            return found;
+        });
+        log.info("Genres found for {} of {} films", genres.size(), filmIds.size());
+        return genres;
+    }
+
+    @Override
+    public void removeGenreFromFilm(Film film) {
+        database.update(() -> database.filmGenres.remove(film.getId()));
+    }
+
+    private List<Genre> genresOf(Long filmId) {
+        return database.filmGenres.getOrDefault(filmId, Set.of()).stream()
+                .map(database.genres::get)
+                .map(InMemoryGenreStorage::copy)
+                .collect(Collectors.toList());
+    }
+
+    private static Genre copy(Genre genre) {
+        return new Genre(genre.getId(), genre.getName());
+    }
+}
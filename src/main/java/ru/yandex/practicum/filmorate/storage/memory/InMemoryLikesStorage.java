@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeOperationResult;
+import ru.yandex.practicum.filmorate.model.Likes;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.storage.likes.LikesStorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Like counts are the sizes of the like sets, so unlike films.like_count they cannot drift
+ * and there is nothing to reconcile.
+ */
+@Slf4j
+@Component
+@Profile("inMemory")
+@Qualifier("dbStorage")
+public class InMemoryLikesStorage implements LikesStorage {
+
+    private final InMemoryDatabase database;
+
+    @Autowired
+    public InMemoryLikesStorage(InMemoryDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public boolean addLike(Long filmId, Long userId) {
+        boolean added = database.write(() -> {
+            if (database.filmLikes.getOrDefault(filmId, Set.of()).contains(userId)) {
+                return false;
+            }
+            checkExists(filmId, userId);
+            link(filmId, userId);
+            return true;
+        });
+        if (added) {
+            log.info("Like from id {} to film {} added", userId, filmId);
+        } else {
+            log.info("User with id {} already liked film with id {}", userId, filmId);
+        }
+        return added;
+    }
+
+    @Override
+    public void removeLike(Long filmId, Long userId) {
+        log.info("Removing like from user id {} to film id {}", userId, filmId);
+        database.update(() -> {
+            if (!unlink(filmId, userId)) {
+                log.error("User with id {} or film with id {} not found", userId, filmId);
+                throw new NotFoundException(String.format("User with id %s or film with id %s not found",
+                        userId, filmId));
+            }
+        });
+        log.info("Like from id {} to film {} removed", userId, filmId);
+    }
+
+    @Override
+    public List<LikeOperationResult> applyLikes(List<LikeOperation> operations) {
+        List<LikeOperationResult> results = database.write(() -> {
+            List<LikeOperationResult> applied = new ArrayList<>(operations.size());
+            for (LikeOperation operation : operations) {
+                LikeOperationResult.Status status;
+                if (!database.films.containsKey(operation.getFilmId())
+                        || !database.users.containsKey(operation.getUserId())) {
+                    status = LikeOperationResult.Status.NOT_FOUND;
+                } else if (operation.getOperation() == Operation.ADD
+                        ? link(operation.getFilmId(), operation.getUserId())
+                        : unlink(operation.getFilmId(), operation.getUserId())) {
+                    status = LikeOperationResult.Status.APPLIED;
+                } else {
+                    status = LikeOperationResult.Status.UNCHANGED;
+                }
+                applied.add(new LikeOperationResult(operation, status));
+            }
+            return applied;
+        });
+        log.info("{} like operations applied", operations.size());
+        return results;
+    }
+
+    @Override
+    public List<Likes> getLikes(Long filmId) {
+        return database.read(() -> database.filmLikes.getOrDefault(filmId, Set.of()).stream()
+                .map(userId -> new Likes(userId, filmId))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Map<Long, List<Long>> getLikesByFilms(Collection<Long> filmIds) {
+        Map<Long, List<Long>> likes = database.read(() -> {
+            Map<Long, List<Long>> found = new HashMap<>();
+            for (Long filmId : filmIds) {
+                Set<Long> users = database.filmLikes.get(filmId);
+                if (users != null) {
+                    found.put(filmId, new ArrayList<>(users));
+                }
+            }
+            return found;
+        });
+        log.info("Likes found for {} of {} films", likes.size(), filmIds.size());
+        return likes;
+    }
+
+    @Override
+    public List<Likes> getAllLikes() {
+        return database.read(() -> database.filmLikes.entrySet().stream()
+                .flatMap(film -> film.getValue().stream().map(userId -> new Likes(userId, film.getKey())))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<Long> getLikedFilms(Long userId) {
+        return database.read(() -> new ArrayList<>(database.userLikes.getOrDefault(userId, Set.of())));
+    }
+
+    @Override
+    public int reconcileLikeCounts() {
+        log.info("Like counts reconciled, 0 films fixed");
+        return 0;
+    }
+
+    private void checkExists(Long filmId, Long userId) {
+        if (!database.films.containsKey(filmId) || !database.users.containsKey(userId)) {
+            log.error("User with id {} or film with id {} not found", userId, filmId);
+            throw new NotFoundException(String.format("User with id %s or film with id %s not found", userId, filmId));
+        }
+    }
+
+    private boolean link(Long filmId, Long userId) {
+        if (database.filmLikes.getOrDefault(filmId, Set.of()).contains(userId)) {
+            return false;
+        }
+        InMemoryDatabase.link(database.filmLikes, filmId, userId);
+        InMemoryDatabase.link(database.userLikes, userId, filmId);
+        return true;
+    }
+
+    private boolean unlink(Long filmId, Long userId) {
+        if (!InMemoryDatabase.unlink(database.filmLikes, filmId, userId)) {
+            return false;
+        }
+        InMemoryDatabase.unlink(database.userLikes, userId, filmId);
+        return true;
+    }
+}
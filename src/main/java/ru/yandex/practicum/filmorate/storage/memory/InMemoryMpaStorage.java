@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.MpaNotFoundException;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@Profile("inMemory")
+@Qualifier("dbStorage")
+public class InMemoryMpaStorage implements MpaStorage {
+
+    private final InMemoryDatabase database;
+
+    @Autowired
+    public InMemoryMpaStorage(InMemoryDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public List<Mpa> getAllMpa() {
+        List<Mpa> mpa = database.read(() -> database.mpa.values().stream()
+                .map(stored -> new Mpa(stored.getId(), stored.getName()))
+                .collect(Collectors.toList()));
+        log.info("Number of mpa: {}", mpa.size());
+        return mpa;
+    }
+
+    @Override
+    public Mpa findMpa(Long id) {
+        log.info("Looking for mpa: {}", id);
+        Mpa mpa = database.read(() -> database.mpa.get(id));
+        if (mpa == null) {
+            log.error("Mpa with id {} not found", id);
+            throw new MpaNotFoundException(String.format("Mpa with id %s not found", id));
+        }
+        return new Mpa(mpa.getId(), mpa.getName());
+    }
+}
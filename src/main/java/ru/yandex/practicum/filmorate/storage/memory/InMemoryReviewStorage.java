@@ -0,0 +1,162 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewCursor;
+import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@Profile("inMemory")
+@Qualifier("dbStorage")
+public class InMemoryReviewStorage implements ReviewStorage {
+
+    private final InMemoryDatabase database;
+
+    @Autowired
+    public InMemoryReviewStorage(InMemoryDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public Review addReview(Review review) {
+        database.update(() -> {
+            if (!database.users.containsKey(review.getUserId()) || !database.films.containsKey(review.getFilmId())) {
+                log.debug("User with id {} or film with id {} was not found", review.getUserId(), review.getFilmId());
+                throw new NotFoundException(String.format("User with id %s or film with id %s was not found",
+                        review.getUserId(), review.getFilmId()));
+            }
+            review.setReviewId(database.nextReviewId());
+            Review stored = InMemoryDatabase.copyReview(review);
+            stored.setUseful(0);
+            database.addReviewRow(stored);
+        });
+        log.debug("Review added: {}", review);
+        return review;
+    }
+
+    @Override
+    public Review updateReview(Review review) {
+        Review updated = database.write(() -> {
+            Review stored = database.reviews.get(review.getReviewId());
+            if (stored == null) {
+                log.debug("Review with id {} not found", review.getReviewId());
+                throw new NotFoundException(String.format("Review with id %s was not found", review.getReviewId()));
+            }
+            Review replacement = Review.builder()
+                    .reviewId(stored.getReviewId())
+                    .content(review.getContent())
+                    .isPositive(review.getIsPositive())
+                    .userId(stored.getUserId())
+                    .filmId(stored.getFilmId())
+                    .useful(stored.getUseful())
+                    .build();
+            database.replaceReviewRow(stored, replacement);
+            return InMemoryDatabase.copyReview(replacement);
+        });
+        log.debug("Review with id {} updated", review.getReviewId());
+        return updated;
+    }
+
+    @Override
+    public void deleteReview(Long id) {
+        database.update(() -> {
+            Review stored = database.reviews.get(id);
+            if (stored == null) {
+                log.debug("Review with id {} was not found", id);
+                throw new NotFoundException(String.format("Review with id %s was not found", id));
+            }
+            database.removeReviewRow(stored);
+        });
+        log.debug("Review id {} deleted", id);
+    }
+
+    @Override
+    public Review getReview(Long id) {
+        Review review = database.read(() -> {
+            Review stored = database.reviews.get(id);
+            return stored == null ? null : InMemoryDatabase.copyReview(stored);
+        });
+        if (review == null) {
+            log.debug("Review with id {} was not found", id);
+            throw new NotFoundException(String.format("Review with id %s was not found", id));
+        }
+        log.debug("Review found {}.", review);
+        return review;
+    }
+
+    @Override
+    public List<Review> getFilmReviews(Long filmId, Integer count, ReviewCursor after) {
+        List<Review> reviews = database.read(() ->
+                page(database.filmReviewsByUseful.getOrDefault(filmId, new TreeSet<>(InMemoryDatabase.BY_USEFUL)),
+                        count, after));
+        log.debug("Found {} reviews of film id {}", reviews.size(), filmId);
+        return reviews;
+    }
+
+    @Override
+    public List<Review> getReviews(Integer count, ReviewCursor after) {
+        List<Review> reviews = database.read(() -> page(database.reviewsByUseful, count, after));
+        log.debug("Found {} reviews", reviews.size());
+        return reviews;
+    }
+
+    @Override
+    public void addReviewLiking(Long reviewId, Long userId, Boolean isLiked) {
+        database.update(() -> {
+            Map<Long, Boolean> votes = database.reviewVotes.get(reviewId);
+            if ((votes != null && votes.containsKey(userId))
+                    || !database.reviews.containsKey(reviewId) || !database.users.containsKey(userId)) {
+                log.debug("User with id {} or review with id {} was not found", userId, reviewId);
+                throw new NotFoundException(String.format("User with id %s or review with id %s was not found",
+                        userId, reviewId));
+            }
+            database.reviewVotes.computeIfAbsent(reviewId, id -> new HashMap<>()).put(userId, isLiked);
+            InMemoryDatabase.link(database.userReviewVotes, userId, reviewId);
+            database.changeUseful(reviewId, isLiked ? 1 : -1);
+        });
+        log.debug("Adding like from user {} to review {}", userId, reviewId);
+    }
+
+    @Override
+    public void deleteReviewLiking(Long reviewId, Long userId) {
+        database.update(() -> {
+            Map<Long, Boolean> votes = database.reviewVotes.get(reviewId);
+            Boolean isLiked = votes == null ? null : votes.remove(userId);
+            if (isLiked == null) {
+                log.debug("User with id {} or review with id {} was not found", userId, reviewId);
+                throw new NotFoundException(String.format("User with id %s or review with id %s was not found",
+                        userId, reviewId));
+            }
+            if (votes.isEmpty()) {
+                database.reviewVotes.remove(reviewId);
+            }
+            InMemoryDatabase.unlink(database.userReviewVotes, userId, reviewId);
+            database.changeUseful(reviewId, isLiked ? -1 : 1);
+        });
+        log.debug("Like from user id {} to review id {} deleted", userId, reviewId);
+    }
+
+    private static List<Review> page(NavigableSet<Review> reviews, Integer count, ReviewCursor after) {
+        NavigableSet<Review> from = after == null ? reviews : reviews.tailSet(Review.builder()
+                .reviewId(after.getReviewId())
+                .useful(after.getUseful())
+                .build(), false);
+        return from.stream()
+                .limit(count)
+                .map(InMemoryDatabase::copyReview)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,165 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@Profile("inMemory")
+@Qualifier("dbStorage")
+public class InMemoryUserStorage implements UserStorage {
+
+    private final InMemoryDatabase database;
+
+    @Autowired
+    public InMemoryUserStorage(InMemoryDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public User addUser(User user) {
+        database.update(() -> {
+            checkUnique(user, null);
+            user.setId(database.nextUserId());
+            store(user);
+        });
+        return user;
+    }
+
+    @Override
+    public User putUser(User user) {
+        database.update(() -> {
+            User stored = database.users.get(user.getId());
+            if (stored == null) {
+                log.error("User with id {} not found", user.getId());
+                throw new UserNotFoundException(String.format("User with id %s not found", user.getId()));
+            }
+            checkUnique(user, user.getId());
+            database.userEmails.remove(stored.getEmail());
+            database.userLogins.remove(stored.getLogin());
+            store(user);
+        });
+        return user;
+    }
+
+    @Override
+    public List<User> getUsers() {
+        List<User> users = database.read(() -> database.users.values().stream()
+                .map(InMemoryDatabase::copyUser)
+                .collect(Collectors.toList()));
+        log.info("Number of users registered: {}", users.size());
+        return users;
+    }
+
+    @Override
+    public List<User> getUsers(Long after, Integer limit) {
+        List<User> users = database.read(() -> database.users.tailMap(after, false).values().stream()
+                .limit(limit)
+                .map(InMemoryDatabase::copyUser)
+                .collect(Collectors.toList()));
+        log.info("Number of users after id {}: {}", after, users.size());
+        return users;
+    }
+
+    @Override
+    public User findUser(Long id) {
+        log.info("Looking for user: {}", id);
+        User user = database.read(() -> {
+            User stored = database.users.get(id);
+            return stored == null ? null : InMemoryDatabase.copyUser(stored);
+        });
+        if (user == null) {
+            log.error("User with id {} not found", id);
+            throw new UserNotFoundException(String.format("User with id %s not found", id));
+        }
+        log.info("User found: {}", user);
+        return user;
+    }
+
+    @Override
+    public List<User> findUsersByIds(Collection<Long> ids) {
+        return database.read(() -> new TreeSet<>(ids).stream()
+                .map(database.users::get)
+                .filter(Objects::nonNull)
+                .map(InMemoryDatabase::copyUser)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public void deleteUser(Long id) {
+        database.update(() -> {
+            User user = database.users.get(id);
+            if (user == null) {
+                log.info("User with id {} not found", id);
+                throw new UserNotFoundException(String.format("User with id %s not found", id));
+            }
+            // reviews reference users without a cascade in the schema
+            if (database.userReviews.containsKey(id)) {
+                throw new DataIntegrityViolationException(String.format("User with id %s has reviews", id));
+            }
+            Set<Long> likes = database.userLikes.remove(id);
+            if (likes != null) {
+                likes.forEach(filmId -> InMemoryDatabase.unlink(database.filmLikes, filmId, id));
+            }
+            Set<Long> votes = database.userReviewVotes.remove(id);
+            if (votes != null) {
+                for (Long reviewId : votes) {
+                    Map<Long, Boolean> reviewVotes = database.reviewVotes.get(reviewId);
+                    database.changeUseful(reviewId, reviewVotes.remove(id) ? -1 : 1);
+                    if (reviewVotes.isEmpty()) {
+                        database.reviewVotes.remove(reviewId);
+                    }
+                }
+            }
+            Set<Long> friends = database.friends.remove(id);
+            if (friends != null) {
+                friends.forEach(friendId -> InMemoryDatabase.unlink(database.friendOf, friendId, id));
+            }
+            Set<Long> friendOf = database.friendOf.remove(id);
+            if (friendOf != null) {
+                friendOf.forEach(userId -> InMemoryDatabase.unlink(database.friends, userId, id));
+            }
+            database.userEvents.remove(id);
+            database.userEmails.remove(user.getEmail());
+            database.userLogins.remove(user.getLogin());
+            database.users.remove(id);
+        });
+        log.info("User with id {} deleted", id);
+    }
+
+    // email and login are unique in the schema, nulls aside
+    private void checkUnique(User user, Long ownId) {
+        Long emailOwner = user.getEmail() == null ? null : database.userEmails.get(user.getEmail());
+        Long loginOwner = user.getLogin() == null ? null : database.userLogins.get(user.getLogin());
+        if ((emailOwner != null && !emailOwner.equals(ownId)) || (loginOwner != null && !loginOwner.equals(ownId))) {
+            throw new DuplicateKeyException(String.format("User with email %s or login %s already exists",
+                    user.getEmail(), user.getLogin()));
+        }
+    }
+
+    private void store(User user) {
+        database.users.put(user.getId(), InMemoryDatabase.copyUser(user));
+        if (user.getEmail() != null) {
+            database.userEmails.put(user.getEmail(), user.getId());
+        }
+        if (user.getLogin() != null) {
+            database.userLogins.put(user.getLogin(), user.getId());
+        }
+    }
+}
@@ -1,34 +1,48 @@
 package ru.yandex.practicum.filmorate.storage.mpa;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exceptions.MpaNotFoundException;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.ReferenceDataCache;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.List;
 
 @Slf4j
 @Component
 @Qualifier("dbStorage")
+@Profile("!inMemory")
 public class DbMpaStorage implements MpaStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataCache<Mpa> cache;
 
     @Autowired
-    public DbMpaStorage(JdbcTemplate jdbcTemplate) {
+    public DbMpaStorage(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                        @Value("${filmorate.cache.reference-ttl:PT1H}") Duration ttl) {
         this.jdbcTemplate = jdbcTemplate;
+        this.cache = new ReferenceDataCache<>("mpa", this::loadAllMpa, Mpa::getId,
+                mpa -> new Mpa(mpa.getId(), mpa.getName()), ttl, meterRegistry);
+    }
+
+    @PostConstruct
+    public void warmUpCache() {
+        cache.getAll();
     }
 
     @Override
     public List<Mpa> getAllMpa() {
-        String sql = "SELECT * FROM mpa";
-        List<Mpa> mpa = jdbcTemplate.query(sql, (rs, rowNum) -> mapRating(rs));
+        List<Mpa> mpa = cache.getAll();
         log.info("Number of mpa: {}", mpa.size());
         return mpa;
     }
@@ -36,15 +50,22 @@ public class DbMpaStorage implements MpaStorage {
     @Override
     public Mpa findMpa(Long id) {
         log.info("Looking for mpa: {}", id);
-        String sql = "SELECT * FROM mpa WHERE mpa_id = ?";
-        try {
-            Mpa mpa = jdbcTemplate.queryForObject(sql, (rs, rowNum) -> mapRating(rs), id);
-            log.info("Mpa found: {}", mpa);
-            return mpa;
-        } catch (EmptyResultDataAccessException e) {
+        Mpa mpa = cache.get(id).orElseThrow(() -> {
             log.error("Mpa with id {} not found", id);
-            throw new MpaNotFoundException(String.format("Mpa with id %s not found", id));
-        }
+            return new MpaNotFoundException(String.format("Mpa with id %s not found", id));
+        });
+        log.info("Mpa found: {}", mpa);
+        return mpa;
+    }
+
+    // mpa is read-only for now, whatever starts writing to it must call this
+    public void invalidateCache() {
+        cache.invalidate();
+    }
+
+    private List<Mpa> loadAllMpa() {
+        String sql = "SELECT * FROM mpa ORDER BY mpa_id";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRating(rs));
     }
 
     private Mpa mapRating(ResultSet rs) throws SQLException {
@@ -1,15 +1,20 @@
 package ru.yandex.practicum.filmorate.storage.review;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewCursor;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -20,10 +25,18 @@ import java.util.stream.Collectors;
 @Slf4j
 @Component
 @Qualifier("dbStorage")
-@RequiredArgsConstructor
+@Profile("!inMemory")
 public class DbReviewStorage implements ReviewStorage {
+    private static final String REVIEW_COLUMNS = "REVIEW_ID, CONTENT, IS_POSITIVE, USER_ID, FILM_ID, USEFUL";
 
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    public DbReviewStorage(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
 
     @Override
     public Review addReview(Review review) {
@@ -85,15 +98,9 @@ public class DbReviewStorage implements ReviewStorage {
 
     @Override
     public Review getReview(Long id) {
-        String sql = "SELECT REVIEW.REVIEW_ID, REVIEW.CONTENT, REVIEW.IS_POSITIVE, REVIEW.USER_ID, REVIEW.FILM_ID, " +
-                "CASE WHEN REVIEW_LIKE.rating IS NULL THEN 0 ELSE REVIEW_LIKE.rating END AS useful " +
+        String sql = "SELECT " + REVIEW_COLUMNS + " " +
                 "FROM REVIEW " +
-                "LEFT JOIN ( " +
-                "SELECT REVIEW_ID, sum(CASE WHEN IS_LIKED THEN 1 ELSE -1 END) AS rating " +
-                "FROM REVIEW_LIKE " +
-                "GROUP BY REVIEW_ID) AS REVIEW_LIKE " +
-                "ON REVIEW.REVIEW_ID = REVIEW_LIKE.REVIEW_ID " +
-                "WHERE REVIEW.REVIEW_ID = ?";
+                "WHERE REVIEW_ID = ?";
 
         var queryResult = jdbcTemplate.query(sql, (x, y) -> mapRowToReview(x), id)
                 .stream()
@@ -109,54 +116,68 @@ public class DbReviewStorage implements ReviewStorage {
     }
 
     @Override
-    public List<Review> getFilmReviews(Long filmId, Integer count) {
-        String sql = "SELECT REVIEW.REVIEW_ID, REVIEW.CONTENT, REVIEW.IS_POSITIVE, REVIEW.USER_ID, REVIEW.FILM_ID, " +
-                "CASE WHEN REVIEW_LIKE.rating IS NULL THEN 0 ELSE REVIEW_LIKE.rating END AS useful " +
-                "FROM REVIEW " +
-                "LEFT JOIN ( " +
-                "SELECT REVIEW_ID, sum(CASE WHEN IS_LIKED  THEN 1 ELSE -1 END) AS rating " +
-                "FROM REVIEW_LIKE " +
-                "GROUP BY REVIEW_ID) AS REVIEW_LIKE " +
-                "ON REVIEW.REVIEW_ID = REVIEW_LIKE.REVIEW_ID " +
-                "WHERE FILM_ID = ? " +
-                "ORDER BY USEFUL DESC " +
-                "LIMIT ?";
-
-        var queryResult = jdbcTemplate.query(sql, (x, y) -> mapRowToReview(x), filmId, count)
-                .stream()
-                .collect(Collectors.toList());
-
+    public List<Review> getFilmReviews(Long filmId, Integer count, ReviewCursor after) {
+        var queryResult = getReviewPage(filmId, count, after);
         log.debug("Found {} reviews of film id {}", queryResult.size(), filmId);
         return queryResult;
     }
 
     @Override
-    public List<Review> getReviews(Integer count) {
-        String sql = "SELECT REVIEW.REVIEW_ID, REVIEW.CONTENT, REVIEW.IS_POSITIVE, REVIEW.USER_ID, REVIEW.FILM_ID, " +
-                "CASE WHEN REVIEW_LIKE.rating IS NULL THEN 0 ELSE REVIEW_LIKE.rating END AS useful " +
-                "FROM REVIEW " +
-                "LEFT JOIN ( " +
-                "SELECT REVIEW_ID, sum(CASE WHEN IS_LIKED  THEN 1 ELSE -1 END) AS rating " +
-                "FROM REVIEW_LIKE " +
-                "GROUP BY REVIEW_ID) AS REVIEW_LIKE " +
-                "ON REVIEW.REVIEW_ID = REVIEW_LIKE.REVIEW_ID " +
-                "ORDER BY USEFUL DESC " +
-                "LIMIT ?";
-
-        var queryResult = jdbcTemplate.query(sql, (x, y) -> mapRowToReview(x), count)
-                .stream()
-                .collect(Collectors.toList());
-
+    public List<Review> getReviews(Integer count, ReviewCursor after) {
+        var queryResult = getReviewPage(null, count, after);
         log.debug("Found {} reviews", queryResult.size());
         return queryResult;
     }
 
+    /**
+     * Reviews sorted by useful descending, then review id, optionally of one film and after a cursor.
+     * The page after a cursor is the rest of the cursor's useful value plus the reviews with a lower one,
+     * each read as a range of the (film_id, useful DESC, review_id) or (useful DESC, review_id) index,
+     * so a deep page costs the same as the first one.
+     */
+    private List<Review> getReviewPage(Long filmId, Integer count, ReviewCursor after) {
+        String filmFilter = filmId == null ? "" : "FILM_ID = :filmId AND ";
+        // H2 only reads the index in order when the ORDER BY starts with the film_id it is filtered on
+        String order = filmId == null ? "ORDER BY USEFUL DESC, REVIEW_ID " : "ORDER BY FILM_ID, USEFUL DESC, REVIEW_ID ";
+        var params = new MapSqlParameterSource("filmId", filmId)
+                .addValue("count", count);
+        String sql;
+        if (after == null) {
+            sql = "SELECT " + REVIEW_COLUMNS + " FROM REVIEW " +
+                    (filmId == null ? "" : "WHERE FILM_ID = :filmId ") +
+                    order +
+                    "LIMIT :count";
+        } else {
+            sql = "SELECT " + REVIEW_COLUMNS + " FROM (" +
+                    "(SELECT " + REVIEW_COLUMNS + " FROM REVIEW " +
+                    "WHERE " + filmFilter + "USEFUL = :useful AND REVIEW_ID > :reviewId " +
+                    order +
+                    "LIMIT :count) " +
+                    "UNION ALL " +
+                    "(SELECT " + REVIEW_COLUMNS + " FROM REVIEW " +
+                    "WHERE " + filmFilter + "USEFUL < :useful " +
+                    order +
+                    "LIMIT :count)" +
+                    ") AS PAGE " +
+                    "ORDER BY USEFUL DESC, REVIEW_ID " +
+                    "LIMIT :count";
+            params.addValue("useful", after.getUseful())
+                    .addValue("reviewId", after.getReviewId());
+        }
+
+        return namedParameterJdbcTemplate.query(sql, params, (x, y) -> mapRowToReview(x));
+    }
+
+    // REVIEW.USEFUL changes in the same transaction as REVIEW_LIKE, so it always equals likes minus dislikes
+    @Override
+    @Transactional
     public void addReviewLiking(Long reviewId, Long userId, Boolean isLiked) {
         String sql = "INSERT INTO REVIEW_LIKE " +
                 "(USER_ID, REVIEW_ID, IS_LIKED) " +
                 "VALUES (?, ?, ?)";
         try {
             jdbcTemplate.update(sql, userId, reviewId, isLiked);
+            jdbcTemplate.update("UPDATE REVIEW SET USEFUL = USEFUL + ? WHERE REVIEW_ID = ?", isLiked ? 1 : -1, reviewId);
             log.debug("Adding like from user {} to review {}", userId, reviewId);
         } catch (DataIntegrityViolationException e) {
             log.debug("User with id {} or review with id {} was not found", userId, reviewId);
@@ -165,14 +186,20 @@ public class DbReviewStorage implements ReviewStorage {
     }
 
     @Override
+    @Transactional
     public void deleteReviewLiking(Long reviewId, Long userId) {
+        // the vote row is locked until commit, so a concurrent delete and re-vote cannot swap it before the delete
+        var isLiked = jdbcTemplate.query("SELECT IS_LIKED FROM REVIEW_LIKE WHERE REVIEW_ID = ? and USER_ID = ? " +
+                        "FOR UPDATE",
+                (rs, rowNum) -> rs.getBoolean("is_liked"), reviewId, userId);
         String sql = "DELETE FROM REVIEW_LIKE " +
                 "WHERE REVIEW_ID = ? and USER_ID = ?";
-        var affectedRows = jdbcTemplate.update(sql, reviewId, userId);
+        var affectedRows = isLiked.isEmpty() ? 0 : jdbcTemplate.update(sql, reviewId, userId);
         if (affectedRows == 0) {
             log.debug("User with id {} or review with id {} was not found", userId, reviewId);
             throw new NotFoundException(String.format("User with id %s or review with id %s was not found", userId, reviewId));
         }
+        jdbcTemplate.update("UPDATE REVIEW SET USEFUL = USEFUL - ? WHERE REVIEW_ID = ?", isLiked.get(0) ? 1 : -1, reviewId);
         log.debug("Like from user id {} to review id {} deleted", userId, reviewId);
     }
 
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storage.review;
 
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewCursor;
 
 import java.util.List;
 
@@ -14,11 +15,11 @@ public interface ReviewStorage {
 
     Review getReview(Long id);
 
-    List<Review> getFilmReviews(Long filmId, Integer count);
+    List<Review> getFilmReviews(Long filmId, Integer count, ReviewCursor after);
 
     void addReviewLiking(Long reviewId, Long userId, Boolean isLiked);
 
     void deleteReviewLiking(Long reviewId, Long userId);
 
-    List<Review> getReviews(Integer count);
+    List<Review> getReviews(Integer count, ReviewCursor after);
 }
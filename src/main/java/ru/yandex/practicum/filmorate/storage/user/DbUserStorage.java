@@ -3,10 +3,14 @@ package ru.yandex.practicum.filmorate.storage.user;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
 
@@ -16,19 +20,23 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @Component
 @Qualifier("dbStorage")
+@Profile("!inMemory")
 @Slf4j
 public class DbUserStorage implements UserStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
     @Autowired
     public DbUserStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
     }
 
     @Override
@@ -69,19 +77,13 @@ public class DbUserStorage implements UserStorage {
     }
 
     @Override
-    public List<User> getAllUsersWIthlikes() {
-        String sql = "SELECT u.user_id, u.email, u.login, u.name, u.birthday, " +
-                "string_agg(l.film_id::varchar, ',') AS likeIds " +
-                "FROM filmorate_users u " +
-                "LEFT JOIN likes l ON u.user_id = l.user_id " +
-                "GROUP BY u.user_id";
-
-        List<User> users = jdbcTemplate.query(sql, (rs, rowNum) -> mapUserWithLike(rs));
-        log.info("Number of users registered: {}", users.size());
+    public List<User> getUsers(Long after, Integer limit) {
+        String sql = "SELECT * FROM filmorate_users WHERE user_id > ? ORDER BY user_id LIMIT ?";
+        List<User> users = jdbcTemplate.query(sql, (rs, rowNum) -> mapUser(rs), after, limit);
+        log.info("Number of users after id {}: {}", after, users.size());
         return users;
     }
 
-
     @Override
     public User findUser(Long id) {
         log.info("Looking for user: {}", id);
@@ -97,7 +99,24 @@ public class DbUserStorage implements UserStorage {
     }
 
     @Override
+    public List<User> findUsersByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT * FROM filmorate_users WHERE user_id IN (:ids) ORDER BY user_id";
+        return namedParameterJdbcTemplate.query(sql, new MapSqlParameterSource("ids", ids), (rs, rowNum) -> mapUser(rs));
+    }
+
+    @Override
+    @Transactional
     public void deleteUser(Long id) {
+        // likes and review votes go away with the user by cascade, so counters are updated first
+        jdbcTemplate.update("UPDATE films SET like_count = like_count - 1 " +
+                "WHERE film_id IN (SELECT film_id FROM likes WHERE user_id = ?)", id);
+        jdbcTemplate.update("UPDATE review r SET useful = useful - " +
+                "(SELECT CASE WHEN rl.is_liked THEN 1 ELSE -1 END FROM review_like rl " +
+                "WHERE rl.review_id = r.review_id AND rl.user_id = ?) " +
+                "WHERE review_id IN (SELECT review_id FROM review_like WHERE user_id = ?)", id, id);
         String sql = "DELETE from filmorate_users WHERE user_id = ?";
         int result = jdbcTemplate.update(sql, id);
         if (result == 1) {
@@ -117,17 +136,4 @@ public class DbUserStorage implements UserStorage {
                 .birthday(rs.getDate("birthday").toLocalDate())
                 .build();
     }
-
-    private User mapUserWithLike(ResultSet rs) throws SQLException {
-        List<Long> likeIds = new ArrayList<>();
-        if (rs.getString("likeIds") != null) {
-            String[] likeIdsArray = rs.getString("likeIds").split(",");
-            for (String likeId : likeIdsArray) {
-                likeIds.add(Long.parseLong(likeId));
-            }
-        }
-        var user = mapUser(rs);
-        user.setLikes(likeIds);
-        return user;
-    }
 }
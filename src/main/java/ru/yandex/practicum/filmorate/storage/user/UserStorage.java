@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.storage.user;
 
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface UserStorage {
@@ -11,9 +12,11 @@ public interface UserStorage {
 
     List<User> getUsers();
 
+    List<User> getUsers(Long after, Integer limit);
+
     User findUser(Long id);
 
-    void deleteUser(Long id);
+    List<User> findUsersByIds(Collection<Long> ids);
 
-    List<User> getAllUsersWIthlikes();
+    void deleteUser(Long id);
 }
@@ -0,0 +1,49 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable long array in the order values were added, for adjacency lists that mostly grow, like the users of
+ * a film. Adds append to a buffer that doubles when full; removes are rare and shift the tail down.
+ * Changed in place, so the owner guards it with its own lock.
+ */
+public final class LongBuffer {
+    private long[] values = new long[4];
+    private int size;
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public boolean remove(long value) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (values[i] == value) {
+                System.arraycopy(values, i + 1, values, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long get(int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public List<Long> toList() {
+        List<Long> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(values[i]);
+        }
+        return list;
+    }
+}
@@ -11,7 +11,7 @@ import java.lang.annotation.Target;
 @Target(ElementType.FIELD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface ReleaseDate {
-    String message() default "Invalid phone number";
+    String message() default "must be after 1895-12-28";
 
     Class<?>[] groups() default {};
 
@@ -10,6 +10,7 @@ public class ReleaseDateValidator implements ConstraintValidator<ReleaseDate, Lo
 
     @Override
     public boolean isValid(LocalDate localDate, ConstraintValidatorContext constraintValidatorContext) {
-        return localDate.isAfter(minReleaseDate);
+        // a missing date is reported by @NotNull
+        return localDate == null || localDate.isAfter(minReleaseDate);
     }
 }
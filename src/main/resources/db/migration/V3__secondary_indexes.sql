@@ -0,0 +1,15 @@
+-- Foreign key columns that queries filter or join on, and that cascading deletes look up
+CREATE INDEX IF NOT EXISTS likes_user_id_idx ON likes (user_id);
+
+CREATE INDEX IF NOT EXISTS film_genre_genre_id_idx ON film_genre (genre_id);
+
+CREATE INDEX IF NOT EXISTS film_directors_director_id_idx ON film_directors (director_id);
+
+CREATE INDEX IF NOT EXISTS review_film_id_idx ON review (film_id);
+
+CREATE INDEX IF NOT EXISTS review_user_id_idx ON review (user_id);
+
+CREATE INDEX IF NOT EXISTS review_like_review_id_idx ON review_like (review_id);
+
+-- Popular films of a year and films of a director sorted by year
+CREATE INDEX IF NOT EXISTS films_release_date_idx ON films (release_date);
@@ -0,0 +1,9 @@
+-- Review usefulness is kept on the review itself instead of summing REVIEW_LIKE on every read
+ALTER TABLE review ADD COLUMN IF NOT EXISTS useful integer DEFAULT 0 NOT NULL;
+
+UPDATE review SET useful = COALESCE((SELECT SUM(CASE WHEN rl.is_liked THEN 1 ELSE -1 END)
+                                     FROM review_like rl WHERE rl.review_id = review.review_id), 0);
+
+-- Most useful reviews of a film are read straight from the index, without sorting all reviews of the film;
+-- review_id keeps the order stable and lets a page after a cursor start with an index seek
+CREATE INDEX IF NOT EXISTS review_film_id_useful_review_id_idx ON review (film_id, useful DESC, review_id);
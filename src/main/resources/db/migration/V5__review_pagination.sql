@@ -0,0 +1,3 @@
+-- Review pages over all films are read in (useful DESC, review_id) order,
+-- so a page after a cursor starts with an index seek instead of skipping the earlier reviews
+CREATE INDEX IF NOT EXISTS review_useful_review_id_idx ON review (useful DESC, review_id);
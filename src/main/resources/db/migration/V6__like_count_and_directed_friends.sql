@@ -0,0 +1,22 @@
+-- Databases that ran schema.sql are baselined at version 2 and still have its original tables,
+-- so the columns, indexes and data changes made since then are applied here
+
+-- Likes of a film are counted on the film, so popular films are read from an index instead of grouping LIKES
+ALTER TABLE films ADD COLUMN IF NOT EXISTS like_count integer DEFAULT 0 NOT NULL;
+
+UPDATE films SET like_count = (SELECT COUNT(*) FROM likes AS l WHERE l.film_id = films.film_id);
+
+CREATE INDEX IF NOT EXISTS films_like_count_idx ON films (like_count DESC);
+
+-- Followers of a user and the feed of a user, newest events first
+CREATE INDEX IF NOT EXISTS friends_user2_id_confirmed_idx ON friends (user2_id, confirmed);
+
+CREATE INDEX IF NOT EXISTS events_user_id_event_id_idx ON events (user_id, event_id);
+
+-- A confirmed friendship used to be one row with confirmed = true, now each side has its own row
+INSERT INTO friends (user1_id, user2_id)
+SELECT f.user2_id, f.user1_id FROM friends AS f
+WHERE f.confirmed = true
+  AND NOT EXISTS (SELECT 1 FROM friends AS r WHERE r.user1_id = f.user2_id AND r.user2_id = f.user1_id);
+
+UPDATE friends SET confirmed = false WHERE confirmed = true;
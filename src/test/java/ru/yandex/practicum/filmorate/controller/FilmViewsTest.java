@@ -0,0 +1,120 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.StorageCleaner;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@AutoConfigureMockMvc
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class FilmViewsTest {
+
+    private final ObjectMapper objectMapper;
+    private final MockMvc mockMvc;
+    private final FilmService filmService;
+    private final UserService userService;
+    private final StorageCleaner storageCleaner;
+    private final MeterRegistry meterRegistry;
+
+    private Film createFilm() {
+        return Film.builder()
+                .id(1)
+                .name("Film name")
+                .description("Film description")
+                .duration(120)
+                .releaseDate(LocalDate.of(2019, 10, 1))
+                .mpa(Mpa.builder().id(1).name("G").build())
+                .likes(List.of(1L, 2L, 3L))
+                .likeCount(3)
+                .build();
+    }
+
+    @Test
+    public void fullViewIsTheDefault() throws Exception {
+        JsonNode film = objectMapper.readTree(objectMapper.writeValueAsString(createFilm()));
+
+        assertEquals(3, film.get("likes").size());
+        assertFalse(film.has("likeCount"));
+        assertEquals("Film name", film.get("name").asText());
+    }
+
+    @Test
+    public void summaryViewCountsLikes() throws Exception {
+        JsonNode film = objectMapper.readTree(objectMapper.writer(FilmViews.filters("summary"))
+                .writeValueAsString(createFilm()));
+
+        assertFalse(film.has("likes"));
+        assertEquals(3, film.get("likeCount").asInt());
+        assertEquals("G", film.get("mpa").get("name").asText());
+    }
+
+    @Test
+    public void unknownViewIsRejected() {
+        Throwable exception = assertThrows(IllegalArgumentException.class, () -> FilmViews.filters("compact"));
+        assertEquals("Unknown view: compact", exception.getMessage());
+    }
+
+    @Test
+    public void viewIsOnlyCheckedForFilmResponses() throws Exception {
+        mockMvc.perform(get("/users").param("view", "compact"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/films").param("view", "compact"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Unknown view: compact"));
+    }
+
+    @Test
+    public void summaryResponseUsesStoredLikeCount() throws Exception {
+        storageCleaner.clear();
+        Film film = filmService.addFilm(createFilm());
+        User user = userService.addUser(User.builder()
+                .email("newEmail@ya.ru")
+                .login("theLogin")
+                .name("userName")
+                .birthday(LocalDate.of(1980, 1, 1))
+                .build());
+        filmService.addLike(film.getId(), user.getId());
+        double likeReads = likeReads();
+
+        mockMvc.perform(get("/films/popular").param("view", "summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(film.getId()))
+                .andExpect(jsonPath("$[0].likeCount").value(1))
+                .andExpect(jsonPath("$[0].likes").doesNotExist());
+        assertEquals(likeReads, likeReads());
+
+        mockMvc.perform(get("/films/popular"))
+                .andExpect(jsonPath("$[0].likes[0]").value(user.getId()))
+                .andExpect(jsonPath("$[0].likeCount").doesNotExist());
+        assertTrue(likeReads() > likeReads);
+    }
+
+    private double likeReads() {
+        return meterRegistry.find("storage.calls").tag("method", "getLikesByFilms").timers().stream()
+                .mapToDouble(Timer::count)
+                .sum();
+    }
+}
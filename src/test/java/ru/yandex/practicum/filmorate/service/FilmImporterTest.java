@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.director.DbDirectorStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class FilmImporterTest {
+
+    private final FilmImporter filmImporter;
+    private final FilmService filmService;
+    private final DbDirectorStorage directorStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void cleanDatabase() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate, "events", "review_like", "review", "likes", "friends",
+                "film_genre", "film_directors", "films", "director", "filmorate_users");
+    }
+
+    private FilmImportResult importLines(String... lines) throws IOException {
+        byte[] input = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        return filmImporter.importFilms(new ByteArrayInputStream(input));
+    }
+
+    private static String film(String name, String releaseDate, long mpaId, String genres, String directors) {
+        return String.format("{\"name\":\"%s\",\"description\":\"Imported film\",\"releaseDate\":\"%s\"," +
+                "\"duration\":100,\"mpa\":{\"id\":%s},\"genres\":%s,\"directors\":%s}",
+                name, releaseDate, mpaId, genres, directors);
+    }
+
+    @Test
+    public void importValidAndRejectInvalidLines() throws IOException {
+        Director director = directorStorage.createDirector(Director.builder().name("Director").build());
+        String directors = String.format("[{\"id\":%s}]", director.getId());
+
+        FilmImportResult result = importLines(
+                film("First", "2000-01-01", 1, "[{\"id\":1},{\"id\":2},{\"id\":1}]", directors),
+                film("Too old", "1800-01-01", 1, "[]", "[]"),
+                film("Unknown mpa", "2000-01-01", 99, "[]", "[]"),
+                film("Unknown genre", "2000-01-01", 1, "[{\"id\":99}]", "[]"),
+                film("Unknown director", "2000-01-01", 1, "[]", "[{\"id\":999999}]"),
+                "{\"name\":\"Bad duration\",\"duration\":\"long\"}",
+                "",
+                film("Second", "2010-05-05", 2, "[]", "[]"));
+
+        assertEquals(2, result.getImported());
+        assertEquals(5, result.getRejected());
+        assertEquals(5, result.getErrors().size());
+        // reference errors are found when the chunk is written, after the validation errors of the same chunk
+        assertTrue(result.getErrors().contains("line 3: mpa 99 not found"));
+        assertTrue(result.getErrors().contains("line 4: genre 99 not found"));
+        assertTrue(result.getErrors().contains("line 5: director 999999 not found"));
+        assertTrue(result.getErrors().stream().anyMatch(error -> error.startsWith("line 2: releaseDate")));
+        assertTrue(result.getErrors().stream().anyMatch(error -> error.startsWith("line 6: ")));
+
+        List<Film> films = filmService.getFilms();
+        assertEquals(List.of("First", "Second"), films.stream().map(Film::getName).collect(Collectors.toList()));
+        Film first = filmService.findFilm(films.get(0).getId());
+        assertEquals(List.of(1L, 2L), first.getGenres().stream().map(Genre::getId).collect(Collectors.toList()));
+        assertEquals(director.getId(), first.getDirectors().iterator().next().getId());
+        assertNotNull(first.getMpa().getName());
+        assertEquals(2, filmService.getTopFilms(10).size());
+        assertEquals(1, filmService.getSearch("seco", "title", 0, null).size());
+    }
+
+    @Test
+    public void malformedJsonStopsImport() throws IOException {
+        FilmImportResult result = importLines(
+                film("First", "2000-01-01", 1, "[]", "[]"),
+                "{\"name\": ",
+                film("Never read", "2000-01-01", 1, "[]", "[]"));
+
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertTrue(result.getErrors().get(0).startsWith("line 3: malformed JSON"), result.getErrors().get(0));
+        assertEquals(1, filmService.getFilms().size());
+    }
+}
@@ -9,14 +9,23 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.jdbc.JdbcTestUtils;
 import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeOperationResult;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.model.User;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -27,13 +36,18 @@ import static org.junit.jupiter.api.Assertions.*;
 public class FilmServiceTest {
 
     private final FilmService filmService;
+    private final UserService userService;
     private final JdbcTemplate jdbcTemplate;
+    private final ResourceVersions resourceVersions;
+    private final RecommendationIndex recommendationIndex;
+    private final PopularityIndex popularityIndex;
     private Film film;
 
     @BeforeEach
     public void beforeEach() {
         JdbcTestUtils.deleteFromTables(jdbcTemplate, "films");
         jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        JdbcTestUtils.deleteFromTables(jdbcTemplate, "filmorate_users");
     }
 
     public void initFilms() {
@@ -49,6 +63,17 @@ public class FilmServiceTest {
                 .build();
     }
 
+    private Film filmNamed(String name) {
+        return Film.builder()
+                .name(name)
+                .description("Film description")
+                .duration(120)
+                .releaseDate(LocalDate.of(2019, 10, 1))
+                .mpa(Mpa.builder().id(1).build())
+                .genres(new ArrayList<>())
+                .build();
+    }
+
     @Test
     public void addFilmNormal() {
         initFilms();
@@ -135,6 +160,14 @@ public class FilmServiceTest {
                 );
     }
 
+    @Test
+    public void addFilmWrongDirectorRollsBack() {
+        initFilms();
+        film.setDirectors(Set.of(Director.builder().id(999999L).build()));
+        assertThrows(NotFoundException.class, () -> filmService.addFilm(film));
+        assertTrue(filmService.getFilms().isEmpty());
+    }
+
     @Test
     public void getFilmsNormal() {
         initFilms();
@@ -179,6 +212,15 @@ public class FilmServiceTest {
         assertThat(exception.getMessage().equals(String.format("Film wth id %s not found", wrongId)));
     }
 
+    @Test
+    public void pageSizeAboveMaxRejected() {
+        assertThrows(IllegalArgumentException.class, () -> filmService.getFilms(0L, 1001));
+        assertThrows(IllegalArgumentException.class, () -> filmService.getSearch("film", "title", 0, 1001));
+        assertThrows(IllegalArgumentException.class, () -> filmService.getTopFilms(1001));
+        assertThrows(IllegalArgumentException.class, () -> userService.getUsers(0L, 1001));
+        assertEquals(0, filmService.getFilms(0L, 1000).size());
+    }
+
     @Test
     public void addLikeWrongId() {
         Throwable exception1 = assertThrows(IllegalArgumentException.class, () -> filmService.addLike(-1L, 1L));
@@ -197,6 +239,196 @@ public class FilmServiceTest {
         assertEquals("FilmId and User Id must be more than zero", exception2.getMessage());
     }
 
+    @Test
+    public void getTopFilmsNormal() {
+        initFilms();
+        Film film1 = filmService.addFilm(film);
+        initFilms();
+        film.setGenres(List.of(Genre.builder().id(2L).build()));
+        Film film2 = filmService.addFilm(film);
+        User user = userService.addUser(User.builder()
+                .email("user1@ya.ru")
+                .login("user1")
+                .name("user1")
+                .birthday(LocalDate.of(1980, 1, 1))
+                .build());
+
+        filmService.addLike(film2.getId(), user.getId());
+        filmService.addLike(film2.getId(), user.getId());
+
+        List<Film> topFilms = filmService.getTopFilms(10);
+        assertEquals(2, topFilms.size());
+        assertEquals(film2.getId(), topFilms.get(0).getId());
+        assertEquals(List.of(user.getId()), topFilms.get(0).getLikes());
+        assertEquals(film1.getId(), topFilms.get(1).getId());
+
+        List<Film> topComedies = filmService.getTopFilms(10, 1L, 2019);
+        assertEquals(1, topComedies.size());
+        assertEquals(film1.getId(), topComedies.get(0).getId());
+
+        // a rebuild counts likes from films.like_count
+        popularityIndex.rebuild();
+        assertEquals(film2.getId(), filmService.getTopFilms(1).get(0).getId());
+
+        filmService.removeLike(film2.getId(), user.getId());
+        assertEquals(film1.getId(), filmService.getTopFilms(1).get(0).getId());
+    }
+
+    @Test
+    public void applyLikesNormal() {
+        Film film1 = filmService.addFilm(filmNamed("First"));
+        Film film2 = filmService.addFilm(filmNamed("Second"));
+        User user1 = userService.addUser(User.builder()
+                .email("user1@ya.ru")
+                .login("user1")
+                .name("user1")
+                .birthday(LocalDate.of(1980, 1, 1))
+                .build());
+        User user2 = userService.addUser(User.builder()
+                .email("user2@ya.ru")
+                .login("user2")
+                .name("user2")
+                .birthday(LocalDate.of(1980, 1, 1))
+                .build());
+
+        List<LikeOperationResult> results = filmService.applyLikes(List.of(
+                new LikeOperation(film2.getId(), user1.getId(), Operation.ADD),
+                new LikeOperation(film2.getId(), user2.getId(), Operation.ADD),
+                new LikeOperation(film2.getId(), user1.getId(), Operation.ADD),
+                new LikeOperation(film1.getId(), user1.getId(), Operation.REMOVE),
+                new LikeOperation(film1.getId() + 9999, user1.getId(), Operation.ADD),
+                new LikeOperation(film1.getId(), null, Operation.ADD),
+                new LikeOperation(film1.getId(), user1.getId(), Operation.ADD),
+                new LikeOperation(film1.getId(), user1.getId(), Operation.REMOVE)));
+        assertEquals(List.of(LikeOperationResult.Status.APPLIED, LikeOperationResult.Status.APPLIED,
+                        LikeOperationResult.Status.UNCHANGED, LikeOperationResult.Status.UNCHANGED,
+                        LikeOperationResult.Status.NOT_FOUND, LikeOperationResult.Status.INVALID,
+                        LikeOperationResult.Status.APPLIED, LikeOperationResult.Status.APPLIED),
+                results.stream().map(LikeOperationResult::getStatus).collect(Collectors.toList()));
+
+        List<Film> topFilms = filmService.getTopFilms(10);
+        assertEquals(film2.getId(), topFilms.get(0).getId());
+        assertEquals(2, topFilms.get(0).getLikes().size());
+        assertTrue(topFilms.get(1).getLikes().isEmpty());
+
+        List<Event> feed = userService.getFeedForUser(user1.getId(), null, null, null);
+        assertEquals(3, feed.size());
+        assertEquals(List.of(Operation.ADD, Operation.ADD, Operation.REMOVE),
+                feed.stream().map(Event::getOperation).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void filmTagChangesOnWrites() {
+        Film film1 = filmService.addFilm(filmNamed("First"));
+        User user = userService.addUser(User.builder()
+                .email("user@ya.ru")
+                .login("user")
+                .name("user")
+                .birthday(LocalDate.of(1980, 1, 1))
+                .build());
+        String tag = resourceVersions.filmTag(film1.getId());
+
+        filmService.findFilm(film1.getId());
+        assertEquals(tag, resourceVersions.filmTag(film1.getId()));
+
+        filmService.addLike(film1.getId(), user.getId());
+        String likedTag = resourceVersions.filmTag(film1.getId());
+        assertNotEquals(tag, likedTag);
+
+        Film renamed = filmNamed("Renamed");
+        renamed.setId(film1.getId());
+        filmService.putFilm(renamed);
+        assertNotEquals(likedTag, resourceVersions.filmTag(film1.getId()));
+    }
+
+    @Test
+    public void importedFilmTagChanges() {
+        // ids restart at 1 before every test, so id 1 may have a tag from an earlier film
+        String tag = resourceVersions.filmTag(1L);
+        List<Film> imported = filmService.addFilms(List.of(filmNamed("Imported")));
+        assertEquals(1L, imported.get(0).getId());
+        assertNotEquals(tag, resourceVersions.filmTag(1L));
+    }
+
+    @Test
+    public void recommendFilmsOfSimilarUsers() {
+        recommendationIndex.rebuild();
+        Film shared = filmService.addFilm(filmNamed("Shared"));
+        Film other = filmService.addFilm(filmNamed("Other"));
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            users.add(userService.addUser(User.builder()
+                    .email("user" + i + "@ya.ru")
+                    .login("user" + i)
+                    .name("user" + i)
+                    .birthday(LocalDate.of(1980, 1, 1))
+                    .build()));
+        }
+        filmService.addLike(shared.getId(), users.get(0).getId());
+        filmService.addLike(other.getId(), users.get(0).getId());
+        filmService.addLike(shared.getId(), users.get(1).getId());
+
+        assertEquals(List.of(other.getId()), userService.recomendFilms(users.get(1).getId()).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList()));
+        assertTrue(userService.recomendFilms(users.get(2).getId()).isEmpty());
+
+        filmService.removeLike(other.getId(), users.get(0).getId());
+        assertTrue(userService.recomendFilms(users.get(1).getId()).isEmpty());
+    }
+
+    @Test
+    public void getSearchRankedAndPaged() {
+        Film substring = filmService.addFilm(filmNamed("Crazebra"));
+        Film wordPrefix = filmService.addFilm(filmNamed("The Zebrafish"));
+        Film textPrefix = filmService.addFilm(filmNamed("Zebra crossing"));
+
+        List<Film> found = filmService.getSearch("zEBra", "title", 0, null);
+        assertEquals(3, found.size());
+        assertEquals(textPrefix.getId(), found.get(0).getId());
+        assertEquals(wordPrefix.getId(), found.get(1).getId());
+        assertEquals(substring.getId(), found.get(2).getId());
+
+        List<Film> page = filmService.getSearch("zebra", "title", 1, 1);
+        assertEquals(1, page.size());
+        assertEquals(wordPrefix.getId(), page.get(0).getId());
+
+        assertTrue(filmService.getSearch("zebra", "director", 0, null).isEmpty());
+
+        filmService.deleteFilm(textPrefix.getId());
+        assertEquals(2, filmService.getSearch("zebra", "title", 0, null).size());
+    }
+
+    @Test
+    public void getSearchMoreFilmsThanOneQueryBinds() {
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 1001; i++) {
+            films.add(filmNamed("Batch film " + i));
+        }
+        filmService.addFilms(films);
+
+        List<Film> found = filmService.getSearch("batch", "title", 0, null);
+        assertEquals(1001, found.size());
+        assertEquals(films.get(1000).getId(), found.get(1000).getId());
+    }
+
+    @Test
+    public void getSearchShortQuery() {
+        Film zebra = filmService.addFilm(filmNamed("Zebra"));
+        Film crazebra = filmService.addFilm(filmNamed("Crazebra"));
+        filmService.addFilm(filmNamed("Lion"));
+
+        List<Film> found = filmService.getSearch("ZE", "title", 0, null);
+        assertEquals(2, found.size());
+        assertEquals(zebra.getId(), found.get(0).getId());
+        assertEquals(crazebra.getId(), found.get(1).getId());
+        assertEquals(3, filmService.getSearch("", "title", 0, null).size());
+        assertTrue(filmService.getSearch("q", "title", 0, null).isEmpty());
+
+        filmService.deleteFilm(zebra.getId());
+        assertEquals(1, filmService.getSearch("z", "title", 0, null).size());
+    }
+
     @Test
     public void getTOpFilmsWrongCount() {
         Throwable exception = assertThrows(IllegalArgumentException.class, () -> filmService.getTopFilms(-1));
@@ -0,0 +1,442 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewCursor;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.director.DbDirectorStorage;
+import ru.yandex.practicum.filmorate.storage.feed.DbEventStorage;
+import ru.yandex.practicum.filmorate.storage.film.DbFilmStorage;
+import ru.yandex.practicum.filmorate.storage.friends.DbFriendsStorage;
+import ru.yandex.practicum.filmorate.storage.genre.DbGenreStorage;
+import ru.yandex.practicum.filmorate.storage.likes.DbLikesStorage;
+import ru.yandex.practicum.filmorate.storage.review.DbReviewStorage;
+import ru.yandex.practicum.filmorate.storage.user.DbUserStorage;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Calls every method of the Db*Storage classes over a few thousand rows, records the statements they send
+ * with the parameters they bind, and runs EXPLAIN on each of them. It fails when H2 plans a full table scan.
+ * Small reference tables (mpa, genre) may be scanned.
+ * H2 indexes every foreign key column by itself while Postgres does not, so a lookup through such an index
+ * only passes when the schema also declares a primary key, unique constraint or index starting with that column.
+ * The methods that read a whole table by design are not called: getFilms(), getUsers(), getAllLikes(),
+ * reconcileLikeCounts() and getAllDirectors(). Mpa and genre lookups are answered from a cache that is
+ * filled by reading those small tables whole.
+ */
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class QueryPlanTest {
+    private static final int USERS = 2000;
+    private static final int FILMS = 2000;
+    private static final int DIRECTORS = 200;
+    private static final int REVIEWS = FILMS / 2;
+    private static final Pattern TABLE_SCAN = Pattern.compile("/\\* PUBLIC\\.(\\w+)\\.tableScan");
+    private static final Pattern INDEX_LOOKUP = Pattern.compile("/\\* PUBLIC\\.(\\w+): ");
+    private static final Set<String> REFERENCE_TABLES = Set.of("MPA", "GENRE");
+    private static final Pattern EXPLAINED = Pattern.compile("\\s*\\(*\\s*(SELECT|INSERT|UPDATE|DELETE|MERGE)\\b",
+            Pattern.CASE_INSENSITIVE);
+    private static final StatementRecorder RECORDER = new StatementRecorder();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DbFilmStorage filmStorage;
+    private final DbUserStorage userStorage;
+    private final DbLikesStorage likesStorage;
+    private final DbFriendsStorage friendsStorage;
+    private final DbGenreStorage genreStorage;
+    private final DbDirectorStorage directorStorage;
+    private final DbReviewStorage reviewStorage;
+    private final DbEventStorage eventStorage;
+
+    @BeforeEach
+    public void seed() {
+        cleanDatabase();
+        List<Object[]> users = new ArrayList<>();
+        List<Object[]> films = new ArrayList<>();
+        List<Object[]> likes = new ArrayList<>();
+        List<Object[]> friends = new ArrayList<>();
+        List<Object[]> filmGenres = new ArrayList<>();
+        List<Object[]> directors = new ArrayList<>();
+        List<Object[]> filmDirectors = new ArrayList<>();
+        List<Object[]> reviews = new ArrayList<>();
+        List<Object[]> reviewLikes = new ArrayList<>();
+        List<Object[]> events = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            users.add(new Object[]{i, "user" + i + "@ya.ru", "user" + i, "user" + i, Date.valueOf("1980-01-01")});
+            for (int j = 1; j <= 5; j++) {
+                likes.add(new Object[]{(i * 7 + j * 13) % FILMS + 1, i});
+                friends.add(new Object[]{i, (i + j * 17) % USERS + 1});
+                events.add(new Object[]{i, "LIKE", "ADD", (i * 7 + j * 13) % FILMS + 1});
+            }
+        }
+        for (int i = 1; i <= DIRECTORS; i++) {
+            directors.add(new Object[]{i, "director" + i});
+        }
+        for (int i = 1; i <= FILMS; i++) {
+            films.add(new Object[]{i, "film" + i, "description", Date.valueOf(LocalDate.of(1950 + i % 70, 1 + i % 12, 1)),
+                    100, i % 5 + 1});
+            filmGenres.add(new Object[]{i, i % 6 + 1});
+            filmDirectors.add(new Object[]{i, i % DIRECTORS + 1});
+            // reviews block deletes of their film and user, so the second half of both has none
+            if (i <= REVIEWS) {
+                reviews.add(new Object[]{i, "review" + i, true, i % USERS + 1, i});
+                reviewLikes.add(new Object[]{(i * 3) % USERS + 1, i, true});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO filmorate_users (user_id, email, login, name, birthday) " +
+                "VALUES (?, ?, ?, ?, ?)", users);
+        jdbcTemplate.batchUpdate("INSERT INTO films (film_id, name, description, release_date, duration, mpa_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", films);
+        jdbcTemplate.batchUpdate("INSERT INTO likes (film_id, user_id) VALUES (?, ?)", likes);
+        jdbcTemplate.batchUpdate("INSERT INTO friends (user1_id, user2_id) VALUES (?, ?)", friends);
+        jdbcTemplate.batchUpdate("INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)", filmGenres);
+        jdbcTemplate.batchUpdate("INSERT INTO director (director_id, name) VALUES (?, ?)", directors);
+        jdbcTemplate.batchUpdate("INSERT INTO film_directors (film_id, director_id) VALUES (?, ?)", filmDirectors);
+        jdbcTemplate.batchUpdate("INSERT INTO review (review_id, content, is_positive, user_id, film_id) " +
+                "VALUES (?, ?, ?, ?, ?)", reviews);
+        jdbcTemplate.batchUpdate("INSERT INTO review_like (user_id, review_id, is_liked) VALUES (?, ?, ?)", reviewLikes);
+        jdbcTemplate.batchUpdate("INSERT INTO events (user_id, eventType, operation, entity_id) VALUES (?, ?, ?, ?)",
+                events);
+        // the rows above have explicit ids, new ones continue after them
+        jdbcTemplate.update("ALTER TABLE filmorate_users ALTER COLUMN user_id RESTART WITH " + (USERS + 1));
+        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH " + (FILMS + 1));
+        jdbcTemplate.update("ALTER TABLE director ALTER COLUMN director_id RESTART WITH " + (DIRECTORS + 1));
+        jdbcTemplate.update("ALTER TABLE review ALTER COLUMN review_id RESTART WITH " + (REVIEWS + 1));
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @AfterEach
+    public void cleanDatabase() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate, "events", "review_like", "review", "film_directors", "director",
+                "film_genre", "friends", "likes", "films", "filmorate_users");
+    }
+
+    @Test
+    public void filmQueriesUseIndexes() {
+        assertIndexed(() -> filmStorage.addFilm(film(0)));
+        assertIndexed(() -> filmStorage.addFilms(List.of(film(0), film(0))));
+        assertIndexed(() -> filmStorage.putFilm(film(5)));
+        assertIndexed(() -> filmStorage.getFilms(1000L, 100));
+        assertIndexed(() -> filmStorage.findFilm(1L));
+        assertIndexed(() -> filmStorage.findAllFilmsByIds(List.of(1L, 2L, 3L)));
+        assertIndexed(() -> filmStorage.getPopularFilms(10));
+        assertIndexed(() -> filmStorage.getPopularFilms(10, 1L, 2000));
+        assertIndexed(() -> filmStorage.getPopularFilms(10, 0L, 2000));
+        assertIndexed(() -> filmStorage.getPopularFilms(10, 1L, 0));
+        assertIndexed(() -> filmStorage.getCommonFilms(1L, 2L));
+        assertIndexed(() -> filmStorage.deleteFilm(1500L));
+    }
+
+    @Test
+    public void likeQueriesUseIndexes() {
+        assertIndexed(() -> likesStorage.addLike(1L, 1L));
+        assertIndexed(() -> likesStorage.removeLike(21L, 1L));
+        assertIndexed(() -> likesStorage.applyLikes(List.of(
+                new LikeOperation(2L, 1L, Operation.ADD),
+                new LikeOperation(34L, 1L, Operation.REMOVE))));
+        assertIndexed(() -> likesStorage.getLikes(1L));
+        assertIndexed(() -> likesStorage.getLikesByFilms(List.of(1L, 2L, 3L)));
+        assertIndexed(() -> likesStorage.getLikedFilms(1L));
+    }
+
+    @Test
+    public void userAndFriendQueriesUseIndexes() {
+        assertIndexed(() -> userStorage.addUser(user(0)));
+        assertIndexed(() -> userStorage.putUser(user(3)));
+        assertIndexed(() -> userStorage.getUsers(1000L, 100));
+        assertIndexed(() -> userStorage.findUser(1L));
+        assertIndexed(() -> userStorage.findUsersByIds(List.of(1L, 2L, 3L)));
+        assertIndexed(() -> userStorage.deleteUser(1500L));
+        assertIndexed(() -> friendsStorage.addFriend(1L, 2L));
+        assertIndexed(() -> friendsStorage.removeFriend(1L, 19L));
+        assertIndexed(() -> friendsStorage.getFriends(1L));
+        assertIndexed(() -> friendsStorage.getCommonFriends(1L, 2L));
+        assertIndexed(() -> friendsStorage.getFriendIds(List.of(1L, 2L, 3L)));
+    }
+
+    @Test
+    public void genreAndDirectorQueriesUseIndexes() {
+        assertIndexed(() -> genreStorage.addGenreToFilm(film(1), Genre.builder().id(3L).build()));
+        assertIndexed(() -> genreStorage.setGenresToFilm(2L, List.of(Genre.builder().id(1L).build(),
+                Genre.builder().id(4L).build())));
+        assertIndexed(() -> genreStorage.addFilmGenres(List.of(filmWithGenre(4, 3L), filmWithGenre(6, 3L))));
+        assertIndexed(() -> genreStorage.getFilmGenres(1L));
+        assertIndexed(() -> genreStorage.getFilmGenres(List.of(1L, 2L, 3L)));
+        assertIndexed(() -> genreStorage.removeGenreFromFilm(film(3)));
+        assertIndexed(() -> directorStorage.createDirector(Director.builder().name("director").build()));
+        assertIndexed(() -> directorStorage.updateDirector(Director.builder().id(6L).name("director").build()));
+        assertIndexed(() -> directorStorage.deleteDirector(5L));
+        assertIndexed(() -> directorStorage.getDirector(1L));
+        assertIndexed(() -> directorStorage.getDirectorsByIds(List.of(1L, 2L)));
+        assertIndexed(() -> directorStorage.findFilmsByDirector(1L, "likes"));
+        assertIndexed(() -> directorStorage.findFilmsByDirector(1L, "year"));
+        assertIndexed(() -> directorStorage.getDirectorsByFilm(1L));
+        assertIndexed(() -> directorStorage.getDirectorsByFilms(List.of(1L, 2L, 3L)));
+        assertIndexed(() -> directorStorage.setDirectorsToFilm(Set.of(Director.builder().id(2L).build()), 1L));
+        Film film = film(8);
+        film.setDirectors(Set.of(Director.builder().id(3L).build()));
+        assertIndexed(() -> directorStorage.addFilmDirectors(List.of(film)));
+    }
+
+    @Test
+    public void reviewAndFeedQueriesUseIndexes() {
+        assertIndexed(() -> reviewStorage.addReview(Review.builder()
+                .content("review")
+                .isPositive(true)
+                .userId(1L)
+                .filmId(2L)
+                .build()));
+        assertIndexed(() -> reviewStorage.updateReview(Review.builder()
+                .reviewId(1L)
+                .content("updated")
+                .isPositive(false)
+                .userId(2L)
+                .filmId(1L)
+                .build()));
+        assertIndexed(() -> reviewStorage.deleteReview(3L));
+        assertIndexed(() -> reviewStorage.getReview(1L));
+        assertIndexed(() -> reviewStorage.getFilmReviews(1L, 10, null));
+        assertIndexed(() -> reviewStorage.getFilmReviews(1L, 10, new ReviewCursor(0, 1L)));
+        assertIndexed(() -> reviewStorage.getReviews(10, null));
+        assertIndexed(() -> reviewStorage.getReviews(10, new ReviewCursor(0, 500L)));
+        assertIndexed(() -> reviewStorage.addReviewLiking(1L, 5L, true));
+        assertIndexed(() -> reviewStorage.deleteReviewLiking(1L, 4L));
+        assertIndexed(() -> eventStorage.addEvent(1L, EventType.LIKE, Operation.ADD, 2L));
+        assertIndexed(() -> eventStorage.addEvents(List.of(Event.builder()
+                .timestamp(System.currentTimeMillis())
+                .userId(1L)
+                .eventType(EventType.FRIEND)
+                .operation(Operation.ADD)
+                .entityId(2L)
+                .build())));
+        assertIndexed(() -> eventStorage.getFeedForUser(1L));
+        assertIndexed(() -> eventStorage.getFeedForUser(1L, null, null, 10));
+        assertIndexed(() -> eventStorage.getFeedForUser(1L, 0L, 100L, 10));
+    }
+
+    private Film film(long id) {
+        return Film.builder()
+                .id(id)
+                .name("film" + id)
+                .description("description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .mpa(Mpa.builder().id(1).build())
+                .genres(new ArrayList<>())
+                .build();
+    }
+
+    private Film filmWithGenre(long id, Long genreId) {
+        Film film = film(id);
+        film.setGenres(List.of(Genre.builder().id(genreId).build()));
+        return film;
+    }
+
+    private User user(long id) {
+        return User.builder()
+                .id(id)
+                .email("new" + id + "@ya.ru")
+                .login("new" + id)
+                .name("new" + id)
+                .birthday(LocalDate.of(1980, 1, 1))
+                .build();
+    }
+
+    // runs the storage call and checks the plan of every statement it sent, with the parameters it bound
+    private void assertIndexed(Runnable call) {
+        Map<String, Object[]> statements = RECORDER.record(call);
+        assertFalse(statements.isEmpty(), "No statements recorded");
+        statements.forEach((sql, args) -> {
+            if (EXPLAINED.matcher(sql).lookingAt()) {
+                assertIndexed(sql, args);
+            }
+        });
+    }
+
+    private void assertIndexed(String sql, Object... args) {
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, args));
+        Matcher scan = TABLE_SCAN.matcher(plan);
+        while (scan.find()) {
+            assertTrue(REFERENCE_TABLES.contains(scan.group(1)),
+                    String.format("Table scan on %s in plan:%n%s", scan.group(1), plan));
+        }
+        Map<String, String> foreignKeyIndexes = foreignKeyIndexes();
+        Set<String> declaredIndexes = declaredIndexes(foreignKeyIndexes.keySet());
+        Matcher lookup = INDEX_LOOKUP.matcher(plan);
+        while (lookup.find()) {
+            String column = foreignKeyIndexes.get(lookup.group(1));
+            assertTrue(column == null || declaredIndexes.contains(column),
+                    String.format("No index on %s outside of H2, plan:%n%s", column, plan));
+        }
+    }
+
+    // index name -> table.leading_column for the indexes H2 made for foreign keys
+    private Map<String, String> foreignKeyIndexes() {
+        Map<String, String> indexes = new HashMap<>();
+        jdbcTemplate.query("SELECT ic.index_name, ic.table_name, ic.column_name " +
+                "FROM information_schema.index_columns ic " +
+                "JOIN information_schema.table_constraints tc " +
+                "ON tc.index_name = ic.index_name AND tc.table_schema = ic.table_schema " +
+                "WHERE ic.table_schema = 'PUBLIC' AND ic.ordinal_position = 1 AND tc.constraint_type = 'FOREIGN KEY'",
+                rs -> {
+                    indexes.put(rs.getString("index_name"), rs.getString("table_name") + "." + rs.getString("column_name"));
+                });
+        return indexes;
+    }
+
+    // table.leading_column of every index Postgres would have too
+    private Set<String> declaredIndexes(Set<String> foreignKeyIndexNames) {
+        Set<String> indexes = new HashSet<>();
+        jdbcTemplate.query("SELECT index_name, table_name, column_name FROM information_schema.index_columns " +
+                "WHERE table_schema = 'PUBLIC' AND ordinal_position = 1", rs -> {
+                    if (!foreignKeyIndexNames.contains(rs.getString("index_name"))) {
+                        indexes.add(rs.getString("table_name") + "." + rs.getString("column_name"));
+                    }
+                });
+        return indexes;
+    }
+
+    @TestConfiguration
+    static class RecordingConfig {
+        @Bean
+        static BeanPostProcessor recordingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource ? RECORDER.wrap((DataSource) bean) : bean;
+                }
+            };
+        }
+    }
+
+    /**
+     * Wraps the data source so the statements the test thread sends during a call are kept with their parameters.
+     * A statement run several times, e.g. in a batch, is kept with the parameters of its first run.
+     */
+    private static class StatementRecorder {
+        private final Map<String, Object[]> statements = new LinkedHashMap<>();
+        private volatile Thread recording;
+
+        Map<String, Object[]> record(Runnable call) {
+            statements.clear();
+            recording = Thread.currentThread();
+            try {
+                call.run();
+            } finally {
+                recording = null;
+            }
+            return new LinkedHashMap<>(statements);
+        }
+
+        DataSource wrap(DataSource dataSource) {
+            return proxy(DataSource.class, dataSource, (method, args, result) ->
+                    method.getName().equals("getConnection") ? wrap((Connection) result) : result);
+        }
+
+        private Connection wrap(Connection connection) {
+            return proxy(Connection.class, connection, (method, args, result) -> {
+                if (method.getName().equals("prepareStatement")) {
+                    return wrap((PreparedStatement) result, (String) args[0]);
+                }
+                if (method.getName().equals("createStatement")) {
+                    return proxy(Statement.class, (Statement) result, (statementMethod, statementArgs, value) -> {
+                        if (statementArgs != null && statementArgs.length > 0 && statementArgs[0] instanceof String
+                                && (statementMethod.getName().startsWith("execute")
+                                || statementMethod.getName().equals("addBatch"))) {
+                            add((String) statementArgs[0], Map.of());
+                        }
+                        return value;
+                    });
+                }
+                return result;
+            });
+        }
+
+        private PreparedStatement wrap(PreparedStatement statement, String sql) {
+            Map<Integer, Object> parameters = new TreeMap<>();
+            InvocationHandler handler = (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                } else if (name.equals("clearParameters")) {
+                    parameters.clear();
+                } else if ((name.startsWith("execute") || name.equals("addBatch")) && args == null) {
+                    add(sql, parameters);
+                }
+                return invoke(statement, method, args);
+            };
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, handler);
+        }
+
+        private void add(String sql, Map<Integer, Object> parameters) {
+            if (recording != Thread.currentThread()) {
+                return;
+            }
+            Object[] args = new Object[parameters.keySet().stream().max(Integer::compare).orElse(0)];
+            parameters.forEach((index, value) -> args[index - 1] = value);
+            statements.putIfAbsent(sql, args);
+        }
+
+        private static <T> T proxy(Class<T> type, T target, ResultWrapper wrapper) {
+            InvocationHandler handler = (proxy, method, args) ->
+                    wrapper.wrap(method, args, invoke(target, method, args));
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private interface ResultWrapper {
+            Object wrap(Method method, Object[] args, Object result) throws Throwable;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import ru.yandex.practicum.filmorate.storage.memory.InMemoryDatabase;
+
+/**
+ * Lets the storage tests run against either engine: the H2 database by default, the in-memory one
+ * when the inMemory profile is active.
+ */
+@Component
+public class StorageCleaner {
+    private final ObjectProvider<JdbcTemplate> jdbcTemplate;
+    private final ObjectProvider<InMemoryDatabase> database;
+
+    public StorageCleaner(ObjectProvider<JdbcTemplate> jdbcTemplate, ObjectProvider<InMemoryDatabase> database) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.database = database;
+    }
+
+    public void clear() {
+        InMemoryDatabase inMemory = database.getIfAvailable();
+        if (inMemory != null) {
+            inMemory.clear();
+            return;
+        }
+        JdbcTemplate jdbc = jdbcTemplate.getObject();
+        JdbcTestUtils.deleteFromTables(jdbc, "events", "review_like", "review", "likes", "friends",
+                "film_genre", "film_directors", "films", "director", "filmorate_users");
+        jdbc.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        jdbc.update("ALTER TABLE filmorate_users ALTER COLUMN user_id RESTART WITH 1");
+    }
+}
@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class StorageMetricsTest {
+
+    private final UserStorage userStorage;
+    private final StorageCleaner storageCleaner;
+    private final MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void cleanDatabase() {
+        storageCleaner.clear();
+    }
+
+    @Test
+    public void storageCallsAreTimed() {
+        User user = userStorage.addUser(User.builder()
+                .email("newEmail@ya.ru")
+                .login("theLogin")
+                .name("userName")
+                .birthday(LocalDate.of(1980, 1, 1))
+                .build());
+        long successes = countCalls("findUser(Long)", "success");
+        long failures = countCalls("findUser(Long)", "UserNotFoundException");
+        userStorage.findUser(user.getId());
+        assertThrows(UserNotFoundException.class, () -> userStorage.findUser(user.getId() + 1));
+        assertEquals(successes + 1, countCalls("findUser(Long)", "success"));
+        assertEquals(failures + 1, countCalls("findUser(Long)", "UserNotFoundException"));
+    }
+
+    @Test
+    public void overloadsAreTaggedBySignature() {
+        long all = countRows("getUsers()");
+        long page = countRows("getUsers(Long,Integer)");
+        userStorage.getUsers();
+        assertEquals(all + 1, countRows("getUsers()"));
+        assertEquals(page, countRows("getUsers(Long,Integer)"));
+
+        userStorage.getUsers(0L, 10);
+        assertEquals(all + 1, countRows("getUsers()"));
+        assertEquals(page + 1, countRows("getUsers(Long,Integer)"));
+    }
+
+    private long countCalls(String signature, String outcome) {
+        Timer timer = meterRegistry.find("storage.calls")
+                .tags("storage", storage(), "signature", signature, "outcome", outcome)
+                .timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private long countRows(String signature) {
+        DistributionSummary rows = meterRegistry.find("storage.rows")
+                .tags("storage", storage(), "signature", signature)
+                .summary();
+        return rows == null ? 0 : rows.count();
+    }
+
+    private String storage() {
+        return AopUtils.getTargetClass(userStorage).getSimpleName();
+    }
+}
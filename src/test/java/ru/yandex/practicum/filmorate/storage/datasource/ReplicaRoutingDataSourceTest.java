@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.storage.datasource;
+
+import lombok.RequiredArgsConstructor;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = {
+        "spring.datasource.driverClassName=org.h2.Driver",
+        "spring.datasource.url=jdbc:h2:mem:routing-primary",
+        "filmorate.datasource.routing.enabled=true",
+        "filmorate.datasource.routing.sticky-window=PT1M",
+        "filmorate.datasource.routing.lag-query=SELECT 0",
+        "filmorate.datasource.routing.replicas[0].url=" + ReplicaRoutingDataSourceTest.REPLICA_URL,
+        "filmorate.datasource.routing.replicas[0].username=root",
+        "filmorate.datasource.routing.replicas[0].password=root"
+})
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class ReplicaRoutingDataSourceTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+    private static final String DATABASE_NAME = "SELECT DATABASE()";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadRouting readRouting;
+    private final ReplicaRoutingDataSource dataSource;
+    private final FilmService filmService;
+
+    @Test
+    public void markedReadsGoToReplica() {
+        dataSource.checkReplicas();
+        assertEquals("ROUTING-PRIMARY", jdbcTemplate.queryForObject(DATABASE_NAME, String.class));
+        assertEquals("ROUTING-REPLICA",
+                readRouting.read(() -> jdbcTemplate.queryForObject(DATABASE_NAME, String.class)));
+    }
+
+    @Test
+    public void readsStayOnPrimaryAfterOwnWrite() {
+        dataSource.checkReplicas();
+        readRouting.wrote(1L);
+        assertEquals("ROUTING-PRIMARY",
+                readRouting.readFor(1L, () -> jdbcTemplate.queryForObject(DATABASE_NAME, String.class)));
+        assertEquals("ROUTING-REPLICA",
+                readRouting.readFor(2L, () -> jdbcTemplate.queryForObject(DATABASE_NAME, String.class)));
+    }
+
+    @Test
+    public void indexedFilmsMissingOnReplicaAreReadFromPrimary() {
+        // the replica has the schema but none of the rows written to the primary, like one that lags behind
+        Flyway.configure().dataSource(REPLICA_URL, "root", "root").load().migrate();
+        dataSource.checkReplicas();
+        Film film = filmService.addFilm(Film.builder()
+                .name("Film name")
+                .description("Film description")
+                .duration(120)
+                .releaseDate(LocalDate.of(2019, 10, 1))
+                .mpa(Mpa.builder().id(1).build())
+                .genres(new ArrayList<>())
+                .build());
+
+        List<Film> top = filmService.getTopFilms(10);
+
+        assertEquals(List.of(film.getId()), top.stream().map(Film::getId).collect(Collectors.toList()));
+    }
+}
@@ -5,6 +5,8 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.filmorate.controller.DirectorController;
 import ru.yandex.practicum.filmorate.controller.FilmController;
@@ -18,6 +20,7 @@ import java.time.LocalDate;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
@@ -82,14 +85,14 @@ public class DbDbdbDirectorStorageTest {
         Director director = createDirector();
         Director director1 = directorController.createDirector(director);
         directorController.deleteDirector(director1.getId());
-        assertEquals(0, directorController.getAll().size());
+        assertEquals(0, directorController.getAll(null).getBody().size());
     }
 
     @Test
     void getDirectorTest() {
         Director director = createDirector();
         Director director1 = directorController.createDirector(director);
-        Director director2 = directorController.getDirector(director1.getId());
+        Director director2 = directorController.getDirector(director1.getId(), null).getBody();
         assertEquals(director1, director2);
     }
 
@@ -97,12 +100,28 @@ public class DbDbdbDirectorStorageTest {
     void getAllDirectorsTest() {
         Director director = createDirector();
         Director director1 = directorController.createDirector(director);
-        List<Director> directors = directorController.getAll();
+        List<Director> directors = directorController.getAll(null).getBody();
         assertEquals(director1, directors.get(0));
         Director director2 = directorController.createDirector(director);
-        directors = directorController.getAll();
+        directors = directorController.getAll(null).getBody();
         assertEquals(2, directors.size());
     }
 
+    @Test
+    void getDirectorNotModifiedTest() {
+        Director director1 = directorController.createDirector(createDirector());
+        ResponseEntity<Director> response = directorController.getDirector(director1.getId(), null);
+        String eTag = response.getHeaders().getETag();
+
+        ResponseEntity<Director> notModified = directorController.getDirector(director1.getId(), eTag);
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        assertNull(notModified.getBody());
+        assertEquals(eTag, notModified.getHeaders().getETag());
 
+        director1.setName("name2");
+        directorController.updateDirector(director1);
+        ResponseEntity<Director> modified = directorController.getDirector(director1.getId(), eTag);
+        assertEquals(HttpStatus.OK, modified.getStatusCode());
+        assertEquals(director1, modified.getBody());
+    }
 }
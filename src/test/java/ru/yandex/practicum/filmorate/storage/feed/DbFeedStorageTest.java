@@ -1,22 +1,27 @@
 package ru.yandex.practicum.filmorate.storage.feed;
 
 import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.dao.DataAccessException;
 import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.service.FeedService;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.StorageCleaner;
 
 import java.time.LocalDate;
 import java.util.List;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
@@ -24,17 +29,17 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 public class DbFeedStorageTest {
 
     private final FilmService filmService;
+    private final FeedService feedService;
     private final UserService userService;
-    private final JdbcTemplate jdbcTemplate;
+    private final StorageCleaner storageCleaner;
+    private final EventStorage eventStorage;
     private Film film1;
     private User user1;
     private User user2;
 
+    @BeforeEach
     public void cleanDatabase() {
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "films");
-        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "filmorate_users");
-        jdbcTemplate.update("ALTER TABLE filmorate_users ALTER COLUMN user_id RESTART WITH 1");
+        storageCleaner.clear();
     }
 
     public void initFilms() {
@@ -87,6 +92,56 @@ public class DbFeedStorageTest {
                 .hasFieldOrPropertyWithValue("entityId", expectedEvent.getEntityId());
     }
 
+    @Test
+    public void getFeedPagesNormal() {
+        initFilms();
+        initUser();
+        // buffers outlive rows removed directly from the tables by other tests
+        feedService.evict(user1.getId());
+        filmService.addLike(film1.getId(), user1.getId());
+        filmService.removeLike(film1.getId(), user1.getId());
+        filmService.addLike(film1.getId(), user1.getId());
+        filmService.removeLike(film1.getId(), user1.getId());
+
+        List<Event> feed = userService.getFeedForUser(user1.getId());
+        assertEquals(4, feed.size());
+        List<Event> latest = userService.getFeedForUser(user1.getId(), null, null, 2);
+        assertEquals(feed.subList(2, 4), latest);
+        assertEquals(feed.subList(0, 2),
+                userService.getFeedForUser(user1.getId(), null, latest.get(0).getEventId(), 2));
+        assertEquals(feed.subList(1, 3),
+                userService.getFeedForUser(user1.getId(), feed.get(0).getEventId(), null, 2));
+
+        filmService.addLike(film1.getId(), user1.getId());
+        List<Event> updated = userService.getFeedForUser(user1.getId(), null, null, 1);
+        assertEquals(1, updated.size());
+        assertEquals(Operation.ADD, updated.get(0).getOperation());
+        assertEquals(5, userService.getFeedForUser(user1.getId()).size());
+    }
+
+    @Test
+    @Tag("jdbc")
+    public void addEventsFailingPartWayAddsNone() {
+        initUser();
+        Event valid = Event.builder()
+                .timestamp(System.currentTimeMillis())
+                .userId(user1.getId())
+                .eventType(EventType.FRIEND)
+                .operation(Operation.ADD)
+                .entityId(user2.getId())
+                .build();
+        Event orphan = Event.builder()
+                .timestamp(System.currentTimeMillis())
+                .userId(99999L)
+                .eventType(EventType.FRIEND)
+                .operation(Operation.ADD)
+                .entityId(user2.getId())
+                .build();
+
+        assertThrows(DataAccessException.class, () -> eventStorage.addEvents(List.of(valid, orphan)));
+        assertTrue(eventStorage.getFeedForUser(user1.getId()).isEmpty());
+    }
+
     @Test
     public void getFeedForUserWrongUserId() {
         Long wrongId = 99999L;
@@ -6,15 +6,14 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.test.jdbc.JdbcTestUtils;
 import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.storage.likes.DbLikesStorage;
-import ru.yandex.practicum.filmorate.storage.user.DbUserStorage;
+import ru.yandex.practicum.filmorate.storage.StorageCleaner;
+import ru.yandex.practicum.filmorate.storage.likes.LikesStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -29,10 +28,10 @@ import static org.junit.jupiter.api.Assertions.*;
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class DbFilmStorageTest {
 
-    private final DbFilmStorage filmStorage;
-    private final DbUserStorage userStorage;
-    private final DbLikesStorage likesStorage;
-    private final JdbcTemplate jdbcTemplate;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final LikesStorage likesStorage;
+    private final StorageCleaner storageCleaner;
     private Film film1;
     private Film film2;
     private User user1;
@@ -40,12 +39,7 @@ public class DbFilmStorageTest {
 
     @BeforeEach
     public void cleanDatabase() {
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "likes");
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "film_genre");
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "films");
-        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "filmorate_users");
-        jdbcTemplate.update("ALTER TABLE filmorate_users ALTER COLUMN user_id RESTART WITH 1");
+        storageCleaner.clear();
     }
 
     public void initFilms() {
@@ -158,6 +152,20 @@ public class DbFilmStorageTest {
                 .hasFieldOrPropertyWithValue("releaseDate", film2.getReleaseDate());
     }
 
+    @Test
+    public void getFilmsPageNormal() {
+        initFilms();
+        List<Film> firstPage = filmStorage.getFilms(0L, 1);
+        assertEquals(1, firstPage.size());
+        assertEquals(film1.getId(), firstPage.get(0).getId());
+
+        List<Film> secondPage = filmStorage.getFilms(firstPage.get(0).getId(), 1);
+        assertEquals(1, secondPage.size());
+        assertEquals(film2.getId(), secondPage.get(0).getId());
+
+        assertTrue(filmStorage.getFilms(film2.getId(), 1).isEmpty());
+    }
+
     @Test
     public void getFilmsEmpty() {
         List<Film> films = filmStorage.getFilms();
@@ -6,14 +6,18 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.test.jdbc.JdbcTestUtils;
+import ru.yandex.practicum.filmorate.exceptions.FriendshipRequestExistsException;
 import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.storage.user.DbUserStorage;
+import ru.yandex.practicum.filmorate.service.FriendsIndex;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.StorageCleaner;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -23,9 +27,11 @@ import static org.junit.jupiter.api.Assertions.*;
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class DbFriendsStorageTest {
 
-    private final DbUserStorage userStorage;
-    private final DbFriendsStorage friendsStorage;
-    private final JdbcTemplate jdbcTemplate;
+    private final UserStorage userStorage;
+    private final FriendsStorage friendsStorage;
+    private final UserService userService;
+    private final FriendsIndex friendsIndex;
+    private final StorageCleaner storageCleaner;
     private User user1;
     private User user2;
     private User user3;
@@ -33,9 +39,7 @@ public class DbFriendsStorageTest {
 
     @BeforeEach
     public void cleanDatabase() {
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "friends");
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "filmorate_users");
-        jdbcTemplate.update("ALTER TABLE filmorate_users ALTER COLUMN user_id RESTART WITH 1");
+        storageCleaner.clear();
     }
 
     public void initUsers() {
@@ -120,6 +124,19 @@ public class DbFriendsStorageTest {
         assertEquals(String.format("User with id %s or %s not found", wrongId, user1.getId()), exception2.getMessage());
     }
 
+    @Test
+    public void addFriendsTwice() {
+        initUsers();
+        friendsStorage.addFriend(user1.getId(), user2.getId());
+        assertThrows(FriendshipRequestExistsException.class, () ->
+                friendsStorage.addFriend(user1.getId(), user2.getId()));
+        friendsStorage.addFriend(user2.getId(), user1.getId());
+        assertThrows(FriendshipRequestExistsException.class, () ->
+                friendsStorage.addFriend(user2.getId(), user1.getId()));
+        assertEquals(1, friendsStorage.getFriends(user1.getId()).size());
+        assertEquals(1, friendsStorage.getFriends(user2.getId()).size());
+    }
+
     @Test
     public void removeFriendNormal() {
         initUsers();
@@ -206,4 +223,39 @@ public class DbFriendsStorageTest {
         List<User> savedCommonFriendsReverse = friendsStorage.getCommonFriends(user3.getId(), user1.getId());
         assertTrue(savedCommonFriendsReverse.isEmpty());
     }
+
+    @Test
+    public void getFriendIdsNormal() {
+        initUsers();
+        friendsStorage.addFriend(user1.getId(), user2.getId());
+        friendsStorage.addFriend(user3.getId(), user1.getId());
+        friendsStorage.addFriend(user1.getId(), user3.getId());
+
+        Map<Long, List<Long>> friendIds = friendsStorage.getFriendIds(List.of(user1.getId(), user2.getId(), user3.getId()));
+        assertEquals(Set.of(user2.getId(), user3.getId()), Set.copyOf(friendIds.get(user1.getId())));
+        assertEquals(List.of(user1.getId()), friendIds.get(user3.getId()));
+        assertFalse(friendIds.containsKey(user2.getId()));
+    }
+
+    @Test
+    public void getCommonFriendsFromIndex() {
+        initUsers();
+        friendsIndex.rebuild();
+        userService.addFriend(user1.getId(), user2.getId());
+        userService.addFriend(user3.getId(), user2.getId());
+        userService.addFriend(user2.getId(), user3.getId());
+        userService.addFriend(user4.getId(), user1.getId());
+        assertEquals(friendsStorage.getCommonFriends(user1.getId(), user3.getId()),
+                userService.getCommonFriends(user1.getId(), user3.getId()));
+        assertEquals(1, userService.getCommonFriends(user1.getId(), user3.getId()).size());
+
+        userService.deleteFriend(user2.getId(), user3.getId());
+        userService.deleteFriend(user1.getId(), user4.getId());
+        for (User user : List.of(user1, user2, user3, user4)) {
+            for (User other : List.of(user1, user2, user3, user4)) {
+                assertEquals(friendsStorage.getCommonFriends(user.getId(), other.getId()),
+                        userService.getCommonFriends(user.getId(), other.getId()));
+            }
+        }
+    }
 }
@@ -7,18 +7,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.dao.DuplicateKeyException;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.test.jdbc.JdbcTestUtils;
 import ru.yandex.practicum.filmorate.exceptions.GenreNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
-import ru.yandex.practicum.filmorate.storage.film.DbFilmStorage;
+import ru.yandex.practicum.filmorate.storage.StorageCleaner;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -30,16 +30,14 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class DbGenreStorageTest {
 
-    private final DbGenreStorage genreStorage;
-    private final DbFilmStorage filmStorage;
-    private final JdbcTemplate jdbcTemplate;
+    private final GenreStorage genreStorage;
+    private final FilmStorage filmStorage;
+    private final StorageCleaner storageCleaner;
     private Film film;
 
     @BeforeEach
     public void beforeEach() {
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "film_genre");
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "films");
-        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
+        storageCleaner.clear();
         film = null;
     }
 
@@ -100,6 +98,48 @@ public class DbGenreStorageTest {
         assertEquals(expectedGenres, savedGenres);
     }
 
+    @Test
+    public void getFilmGenresBatchNormal() {
+        initFilms();
+        genreStorage.addGenreToFilm(film, Genre.builder().id(2L).build());
+        genreStorage.addGenreToFilm(film, Genre.builder().id(1L).build());
+
+        List<Genre> expectedGenres = new ArrayList<>();
+        expectedGenres.add(new Genre(1L, "Комедия"));
+        expectedGenres.add(new Genre(2L, "Драма"));
+
+        Map<Long, List<Genre>> savedGenres = genreStorage.getFilmGenres(List.of(film.getId(), 999999L));
+        assertEquals(1, savedGenres.size());
+        assertEquals(expectedGenres, savedGenres.get(film.getId()));
+    }
+
+    @Test
+    public void setGenresToFilmWithDuplicates() {
+        initFilms();
+        genreStorage.addGenreToFilm(film, Genre.builder().id(3L).build());
+        List<Genre> genres = new ArrayList<>();
+        genres.add(Genre.builder().id(2L).build());
+        genres.add(Genre.builder().id(1L).build());
+        genres.add(Genre.builder().id(2L).build());
+
+        List<Genre> expectedGenres = new ArrayList<>();
+        expectedGenres.add(new Genre(1L, "Комедия"));
+        expectedGenres.add(new Genre(2L, "Драма"));
+
+        assertEquals(expectedGenres, genreStorage.setGenresToFilm(film.getId(), genres));
+        assertEquals(2, genreStorage.getFilmGenres(film.getId()).size());
+    }
+
+    @Test
+    public void setGenresToFilmWrongGenreId() {
+        initFilms();
+        Long wrongId = 999999L;
+        List<Genre> genres = List.of(Genre.builder().id(wrongId).build());
+        Throwable exception = assertThrows(GenreNotFoundException.class, () ->
+                genreStorage.setGenresToFilm(film.getId(), genres));
+        assertEquals(String.format("Genre with id %s not found", wrongId), exception.getMessage());
+    }
+
     @Test
     public void addGenreToFilmWrongGenreId() {
         initFilms();
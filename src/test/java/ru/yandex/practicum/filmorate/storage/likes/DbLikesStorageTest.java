@@ -2,21 +2,33 @@ package ru.yandex.practicum.filmorate.storage.likes;
 
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.test.jdbc.JdbcTestUtils;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeOperationResult;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Operation;
 import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.storage.film.DbFilmStorage;
-import ru.yandex.practicum.filmorate.storage.user.DbUserStorage;
+import ru.yandex.practicum.filmorate.storage.StorageCleaner;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -26,10 +38,11 @@ import static org.junit.jupiter.api.Assertions.*;
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class DbLikesStorageTest {
 
-    private final DbFilmStorage filmStorage;
-    private final DbUserStorage userStorage;
-    private final DbLikesStorage likesStorage;
-    private final JdbcTemplate jdbcTemplate;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final LikesStorage likesStorage;
+    private final StorageCleaner storageCleaner;
+    private final ObjectProvider<JdbcTemplate> jdbcTemplate;
     private Film film1;
     private Film film2;
     private User user1;
@@ -37,11 +50,7 @@ public class DbLikesStorageTest {
 
     @BeforeEach
     public void cleanDatabase() {
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "likes");
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "films");
-        jdbcTemplate.update("ALTER TABLE films ALTER COLUMN film_id RESTART WITH 1");
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "filmorate_users");
-        jdbcTemplate.update("ALTER TABLE filmorate_users ALTER COLUMN user_id RESTART WITH 1");
+        storageCleaner.clear();
     }
 
     public void initFilmsAndUsers() {
@@ -123,6 +132,25 @@ public class DbLikesStorageTest {
                 exception.getMessage());
     }
 
+    @Test
+    public void getLikesByFilmsNormal() {
+        initFilmsAndUsers();
+        initLikes();
+
+        Map<Long, List<Long>> likes = likesStorage.getLikesByFilms(List.of(film1.getId(), film2.getId()));
+        assertEquals(2, likes.size());
+        assertEquals(List.of(user1.getId()), likes.get(film1.getId()));
+        assertEquals(2, likes.get(film2.getId()).size());
+        assertTrue(likes.get(film2.getId()).containsAll(List.of(user1.getId(), user2.getId())));
+    }
+
+    @Test
+    public void getLikesByFilmsEmpty() {
+        initFilmsAndUsers();
+        assertTrue(likesStorage.getLikesByFilms(List.of(film1.getId())).isEmpty());
+        assertTrue(likesStorage.getLikesByFilms(List.of()).isEmpty());
+    }
+
     @Test
     public void removeLikeNormal() {
         initFilmsAndUsers();
@@ -139,6 +167,90 @@ public class DbLikesStorageTest {
                 .hasFieldOrPropertyWithValue("releaseDate", film1.getReleaseDate());
     }
 
+    @Test
+    public void likeCountMaintained() {
+        initFilmsAndUsers();
+        initLikes();
+        assertFalse(likesStorage.addLike(film2.getId(), user1.getId()));
+        assertEquals(1, getLikeCount(film1.getId()));
+        assertEquals(2, getLikeCount(film2.getId()));
+
+        likesStorage.removeLike(film2.getId(), user2.getId());
+        assertEquals(1, getLikeCount(film2.getId()));
+    }
+
+    @Test
+    @Tag("jdbc")
+    public void reconcileLikeCountsNormal() {
+        initFilmsAndUsers();
+        initLikes();
+        jdbcTemplate.getObject().update("UPDATE films SET like_count = 10 WHERE film_id = ?", film1.getId());
+
+        assertEquals(1, likesStorage.reconcileLikeCounts());
+        assertEquals(1, getLikeCount(film1.getId()));
+        assertEquals(2, getLikeCount(film2.getId()));
+    }
+
+    @Test
+    public void applyLikesKeepsOrderAndCounts() {
+        initFilmsAndUsers();
+        initLikes();
+
+        List<LikeOperationResult> results = likesStorage.applyLikes(List.of(
+                new LikeOperation(film1.getId(), user2.getId(), Operation.ADD),
+                new LikeOperation(film1.getId(), user2.getId(), Operation.REMOVE),
+                new LikeOperation(film1.getId(), user2.getId(), Operation.ADD),
+                new LikeOperation(film2.getId(), user1.getId(), Operation.REMOVE),
+                new LikeOperation(film2.getId(), user1.getId(), Operation.REMOVE),
+                new LikeOperation(film2.getId(), user2.getId() + 9999, Operation.ADD)));
+
+        assertEquals(LikeOperationResult.Status.APPLIED, results.get(0).getStatus());
+        assertEquals(LikeOperationResult.Status.APPLIED, results.get(1).getStatus());
+        assertEquals(LikeOperationResult.Status.APPLIED, results.get(2).getStatus());
+        assertEquals(LikeOperationResult.Status.APPLIED, results.get(3).getStatus());
+        assertEquals(LikeOperationResult.Status.UNCHANGED, results.get(4).getStatus());
+        assertEquals(LikeOperationResult.Status.NOT_FOUND, results.get(5).getStatus());
+        assertEquals(2, getLikeCount(film1.getId()));
+        assertEquals(1, getLikeCount(film2.getId()));
+        assertEquals(0, likesStorage.reconcileLikeCounts());
+    }
+
+    // the in-memory engine has no like_count column, its counts are the likes themselves
+    @Test
+    public void concurrentSameLikeIsAddedOnce() throws Exception {
+        initFilmsAndUsers();
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return likesStorage.addLike(film1.getId(), user1.getId());
+            }));
+        }
+        start.countDown();
+        int added = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(10, TimeUnit.SECONDS)) {
+                added++;
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(1, added);
+        assertEquals(1, likesStorage.getLikes(film1.getId()).size());
+        assertEquals(1, getLikeCount(film1.getId()));
+    }
+
+    private int getLikeCount(Long filmId) {
+        JdbcTemplate jdbc = jdbcTemplate.getIfAvailable();
+        if (jdbc == null) {
+            return likesStorage.getLikes(filmId).size();
+        }
+        return jdbc.queryForObject("SELECT like_count FROM films WHERE film_id = ?", Integer.class, filmId);
+    }
+
     @Test
     public void removeLikeWrongUserId() {
         initFilmsAndUsers();
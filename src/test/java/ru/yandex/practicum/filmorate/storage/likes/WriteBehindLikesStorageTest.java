@@ -0,0 +1,263 @@
+package ru.yandex.practicum.filmorate.storage.likes;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmDeletedEvent;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeOperationResult;
+import ru.yandex.practicum.filmorate.model.Likes;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.StorageCleaner;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Tag("jdbc")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class WriteBehindLikesStorageTest {
+
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final DbLikesStorage dbLikesStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final StorageCleaner storageCleaner;
+    @TempDir
+    Path directory;
+    private WriteBehindLikesStorage likesStorage;
+    private Film film;
+    private User user1;
+    private User user2;
+
+    @BeforeEach
+    public void cleanDatabase() {
+        storageCleaner.clear();
+        film = Film.builder()
+                .name("Film name")
+                .description("Film description")
+                .duration(120)
+                .releaseDate(LocalDate.of(2019, 10, 1))
+                .mpa(Mpa.builder().id(1).build())
+                .build();
+        filmStorage.addFilm(film);
+        user1 = addUser("user1");
+        user2 = addUser("user2");
+    }
+
+    @AfterEach
+    public void stopWriter() {
+        if (likesStorage != null) {
+            likesStorage.stop();
+        }
+    }
+
+    @Test
+    public void likesAreReadBeforeTheyAreWritten() {
+        startStorage();
+
+        assertTrue(likesStorage.addLike(film.getId(), user1.getId()));
+        assertFalse(likesStorage.addLike(film.getId(), user1.getId()));
+        assertEquals(List.of(user1.getId()), userIds(likesStorage.getLikes(film.getId())));
+        assertEquals(List.of(film.getId()), likesStorage.getLikedFilms(user1.getId()));
+
+        likesStorage.flush();
+        assertEquals(List.of(user1.getId()), userIds(dbLikesStorage.getLikes(film.getId())));
+        assertEquals(1, getLikeCount(film.getId()));
+
+        likesStorage.removeLike(film.getId(), user1.getId());
+        assertTrue(likesStorage.getLikes(film.getId()).isEmpty());
+        likesStorage.flush();
+        assertTrue(dbLikesStorage.getLikes(film.getId()).isEmpty());
+        assertEquals(0, getLikeCount(film.getId()));
+    }
+
+    @Test
+    public void likesInTheDatabaseAreLoadedOnStart() {
+        dbLikesStorage.addLike(film.getId(), user2.getId());
+        dbLikesStorage.addLike(film.getId(), user1.getId());
+        startStorage();
+
+        assertEquals(Set.of(user1.getId(), user2.getId()), Set.copyOf(userIds(likesStorage.getLikes(film.getId()))));
+        assertEquals(List.of(film.getId()), likesStorage.getLikedFilms(user1.getId()));
+        assertFalse(likesStorage.addLike(film.getId(), user1.getId()));
+        likesStorage.removeLike(film.getId(), user2.getId());
+        assertEquals(List.of(user1.getId()), userIds(likesStorage.getLikes(film.getId())));
+    }
+
+    @Test
+    public void likesOfMissingFilmsAndUsersAreNotFound() {
+        startStorage();
+        Long wrongFilmId = film.getId() + 9999;
+
+        Throwable exception = assertThrows(NotFoundException.class,
+                () -> likesStorage.addLike(wrongFilmId, user1.getId()));
+        assertEquals(String.format("User with id %s or film with id %s not found", user1.getId(), wrongFilmId),
+                exception.getMessage());
+        assertThrows(NotFoundException.class, () -> likesStorage.removeLike(film.getId(), user1.getId()));
+
+        likesStorage.addLike(film.getId(), user1.getId());
+        filmStorage.deleteFilm(film.getId());
+        likesStorage.onFilmDeleted(new FilmDeletedEvent(film.getId()));
+        assertTrue(likesStorage.getLikedFilms(user1.getId()).isEmpty());
+        assertThrows(NotFoundException.class, () -> likesStorage.addLike(film.getId(), user2.getId()));
+    }
+
+    @Test
+    public void applyLikesKeepsOrder() {
+        startStorage();
+
+        List<LikeOperationResult> results = likesStorage.applyLikes(List.of(
+                new LikeOperation(film.getId(), user1.getId(), Operation.ADD),
+                new LikeOperation(film.getId(), user1.getId(), Operation.REMOVE),
+                new LikeOperation(film.getId(), user1.getId(), Operation.ADD),
+                new LikeOperation(film.getId(), user2.getId(), Operation.REMOVE),
+                new LikeOperation(film.getId(), user2.getId() + 9999, Operation.ADD)));
+
+        assertEquals(List.of(LikeOperationResult.Status.APPLIED, LikeOperationResult.Status.APPLIED,
+                        LikeOperationResult.Status.APPLIED, LikeOperationResult.Status.UNCHANGED,
+                        LikeOperationResult.Status.NOT_FOUND),
+                results.stream().map(LikeOperationResult::getStatus).collect(Collectors.toList()));
+        likesStorage.flush();
+        assertEquals(List.of(user1.getId()), userIds(dbLikesStorage.getLikes(film.getId())));
+        assertEquals(1, getLikeCount(film.getId()));
+    }
+
+    @Test
+    public void logIsReplayedOnStart() throws Exception {
+        Path walPath = directory.resolve("likes.wal.1");
+        try (LikeWriteAheadLog wal = new LikeWriteAheadLog(walPath, false)) {
+            wal.append(List.of(
+                    new LikeOperation(film.getId(), user1.getId(), Operation.ADD),
+                    new LikeOperation(film.getId(), user2.getId(), Operation.ADD),
+                    new LikeOperation(film.getId(), user1.getId(), Operation.REMOVE)));
+        }
+        // a record torn by the crash
+        Files.write(walPath, new byte[]{1, 0, 0}, StandardOpenOption.APPEND);
+
+        startStorage();
+
+        assertEquals(List.of(user2.getId()), userIds(dbLikesStorage.getLikes(film.getId())));
+        assertEquals(List.of(user2.getId()), userIds(likesStorage.getLikes(film.getId())));
+        assertEquals(1, getLikeCount(film.getId()));
+        assertFalse(Files.exists(walPath));
+    }
+
+    @Test
+    public void logIsEmptiedOnceWritten() throws Exception {
+        startStorage();
+        Path walPath = directory.resolve("likes.wal.1");
+
+        likesStorage.addLike(film.getId(), user1.getId());
+        assertTrue(Files.size(walPath) > 0);
+        likesStorage.flush();
+        assertEquals(0, Files.size(walPath));
+    }
+
+    @Test
+    public void writtenLogSegmentsAreDropped() throws Exception {
+        LikeOperation like = new LikeOperation(film.getId(), user1.getId(), Operation.ADD);
+        LikeOperation unlike = new LikeOperation(film.getId(), user1.getId(), Operation.REMOVE);
+        try (SegmentedLikeLog wal = new SegmentedLikeLog(directory.resolve("likes.wal"), false, 2)) {
+            wal.append(List.of(like, unlike));
+            wal.append(List.of(like));
+            wal.append(List.of(unlike, like));
+            assertTrue(Files.exists(directory.resolve("likes.wal.1")));
+            assertTrue(Files.exists(directory.resolve("likes.wal.3")));
+
+            // the writer is behind, the log keeps only what it has not written yet
+            wal.checkpoint(3);
+            assertFalse(Files.exists(directory.resolve("likes.wal.1")));
+            assertFalse(Files.exists(directory.resolve("likes.wal.2")));
+            assertEquals(2 * 17, Files.size(directory.resolve("likes.wal.3")));
+
+            wal.checkpoint(5);
+            assertEquals(0, Files.size(directory.resolve("likes.wal.3")));
+        }
+    }
+
+    @Test
+    public void failingOperationsAreDeadLettered() throws Exception {
+        DbLikesStorage failing = mock(DbLikesStorage.class);
+        when(failing.applyLikes(anyList())).thenAnswer(invocation -> {
+            List<LikeOperation> operations = invocation.getArgument(0);
+            if (operations.stream().anyMatch(operation -> operation.getUserId().equals(user2.getId()))) {
+                throw new DataIntegrityViolationException("broken");
+            }
+            return List.of();
+        });
+        likesStorage = new WriteBehindLikesStorage(failing, filmStorage, jdbcTemplate,
+                directory.resolve("likes.wal"), false, 1000, 100, 60_000, 1000, 2);
+        likesStorage.start();
+
+        likesStorage.addLike(film.getId(), user1.getId());
+        likesStorage.addLike(film.getId(), user2.getId());
+        likesStorage.flush();
+
+        verify(failing).applyLikes(List.of(new LikeOperation(film.getId(), user1.getId(), Operation.ADD)));
+        try (LikeWriteAheadLog deadLetters = new LikeWriteAheadLog(directory.resolve("likes.wal.failed"), false)) {
+            List<LikeOperation> failed = new ArrayList<>();
+            deadLetters.read(100, failed::addAll);
+            assertEquals(List.of(new LikeOperation(film.getId(), user2.getId(), Operation.ADD)), failed);
+        }
+        // the writer goes on with the next batch
+        likesStorage.removeLike(film.getId(), user1.getId());
+        likesStorage.flush();
+        verify(failing).applyLikes(List.of(new LikeOperation(film.getId(), user1.getId(), Operation.REMOVE)));
+    }
+
+    // batches only go out on flush, so the tests see what is still queued
+    private void startStorage() {
+        likesStorage = new WriteBehindLikesStorage(dbLikesStorage, filmStorage, jdbcTemplate,
+                directory.resolve("likes.wal"), false, 1000, 100, 60_000, 1000, 5);
+        likesStorage.start();
+    }
+
+    private User addUser(String login) {
+        User user = User.builder()
+                .email(login + "@ya.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1980, 1, 1))
+                .build();
+        return userStorage.addUser(user);
+    }
+
+    private int getLikeCount(Long filmId) {
+        return jdbcTemplate.queryForObject("SELECT like_count FROM films WHERE film_id = ?", Integer.class, filmId);
+    }
+
+    private static List<Long> userIds(List<Likes> likes) {
+        return likes.stream()
+                .map(Likes::getUserId)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,233 @@
+package ru.yandex.practicum.filmorate.storage.review;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewCursor;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.StorageCleaner;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class DbReviewStorageTest {
+
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final ReviewStorage reviewStorage;
+    private final StorageCleaner storageCleaner;
+    private Film film;
+    private User user1;
+    private User user2;
+    private User user3;
+
+    @BeforeEach
+    public void cleanDatabase() {
+        storageCleaner.clear();
+    }
+
+    public void initFilmAndUsers() {
+        film = Film.builder()
+                .name("Film name")
+                .description("Film description")
+                .duration(120)
+                .releaseDate(LocalDate.of(2019, 10, 1))
+                .mpa(Mpa.builder().id(1).build())
+                .build();
+        filmStorage.addFilm(film);
+        user1 = addUser("user1");
+        user2 = addUser("user2");
+        user3 = addUser("user3");
+    }
+
+    private User addUser(String login) {
+        User user = User.builder()
+                .email(login + "@ya.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1980, 1, 1))
+                .build();
+        return userStorage.addUser(user);
+    }
+
+    private Review addReview(User author) {
+        return reviewStorage.addReview(Review.builder()
+                .content("Review by " + author.getLogin())
+                .isPositive(true)
+                .userId(author.getId())
+                .filmId(film.getId())
+                .build());
+    }
+
+    @Test
+    public void usefulFollowsLikesAndDislikes() {
+        initFilmAndUsers();
+        Review review = addReview(user1);
+        assertEquals(0, reviewStorage.getReview(review.getReviewId()).getUseful());
+
+        reviewStorage.addReviewLiking(review.getReviewId(), user1.getId(), true);
+        reviewStorage.addReviewLiking(review.getReviewId(), user2.getId(), true);
+        reviewStorage.addReviewLiking(review.getReviewId(), user3.getId(), false);
+        assertEquals(1, reviewStorage.getReview(review.getReviewId()).getUseful());
+
+        reviewStorage.deleteReviewLiking(review.getReviewId(), user3.getId());
+        assertEquals(2, reviewStorage.getReview(review.getReviewId()).getUseful());
+        reviewStorage.deleteReviewLiking(review.getReviewId(), user1.getId());
+        assertEquals(1, reviewStorage.getReview(review.getReviewId()).getUseful());
+    }
+
+    @Test
+    public void usefulUnchangedOnFailedLiking() {
+        initFilmAndUsers();
+        Review review = addReview(user1);
+        reviewStorage.addReviewLiking(review.getReviewId(), user2.getId(), true);
+
+        assertThrows(NotFoundException.class,
+                () -> reviewStorage.addReviewLiking(review.getReviewId(), user2.getId(), true));
+        assertThrows(NotFoundException.class,
+                () -> reviewStorage.addReviewLiking(review.getReviewId(), user2.getId() + 9999, true));
+        assertThrows(NotFoundException.class,
+                () -> reviewStorage.deleteReviewLiking(review.getReviewId(), user3.getId()));
+        assertEquals(1, reviewStorage.getReview(review.getReviewId()).getUseful());
+    }
+
+    @Test
+    public void usefulFollowsConcurrentVoteChanges() throws Exception {
+        initFilmAndUsers();
+        Review review = addReview(user1);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            boolean isLiked = i % 2 == 0;
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < 50; j++) {
+                    try {
+                        reviewStorage.deleteReviewLiking(review.getReviewId(), user2.getId());
+                    } catch (NotFoundException | ConcurrencyFailureException e) {
+                        // another thread deleted the vote first
+                    }
+                    try {
+                        reviewStorage.addReviewLiking(review.getReviewId(), user2.getId(), isLiked);
+                    } catch (NotFoundException | ConcurrencyFailureException e) {
+                        // another thread voted first
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        int useful = reviewStorage.getReview(review.getReviewId()).getUseful();
+        try {
+            reviewStorage.deleteReviewLiking(review.getReviewId(), user2.getId());
+        } catch (NotFoundException e) {
+            // the last delete won
+        }
+        assertEquals(0, reviewStorage.getReview(review.getReviewId()).getUseful(),
+                "useful was " + useful + " before the last vote was taken back");
+    }
+
+    @Test
+    public void usefulUpdatedOnUserDelete() {
+        initFilmAndUsers();
+        Review review = addReview(user1);
+        reviewStorage.addReviewLiking(review.getReviewId(), user2.getId(), false);
+        reviewStorage.addReviewLiking(review.getReviewId(), user3.getId(), false);
+
+        userStorage.deleteUser(user3.getId());
+        assertEquals(-1, reviewStorage.getReview(review.getReviewId()).getUseful());
+    }
+
+    @Test
+    public void getFilmReviewsSortedByUseful() {
+        initFilmAndUsers();
+        Review review1 = addReview(user1);
+        Review review2 = addReview(user2);
+        Review review3 = addReview(user3);
+        reviewStorage.addReviewLiking(review1.getReviewId(), user2.getId(), false);
+        reviewStorage.addReviewLiking(review3.getReviewId(), user1.getId(), true);
+
+        List<Long> ids = reviewStorage.getFilmReviews(film.getId(), 10, null).stream()
+                .map(Review::getReviewId)
+                .collect(Collectors.toList());
+        assertEquals(List.of(review3.getReviewId(), review2.getReviewId(), review1.getReviewId()), ids);
+        assertEquals(2, reviewStorage.getFilmReviews(film.getId(), 2, null).size());
+        assertEquals(review3.getReviewId(), reviewStorage.getReviews(1, null).get(0).getReviewId());
+    }
+
+    @Test
+    public void reviewPagesFollowCursor() {
+        initFilmAndUsers();
+        List<Review> reviews = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            reviews.add(addReview(user1));
+        }
+        // useful 1, 0, 1, -1, 0, 1, 0 so every page boundary falls inside a group of equal usefulness
+        reviewStorage.addReviewLiking(reviews.get(0).getReviewId(), user2.getId(), true);
+        reviewStorage.addReviewLiking(reviews.get(2).getReviewId(), user2.getId(), true);
+        reviewStorage.addReviewLiking(reviews.get(3).getReviewId(), user2.getId(), false);
+        reviewStorage.addReviewLiking(reviews.get(5).getReviewId(), user2.getId(), true);
+        List<Long> expected = List.of(0, 2, 5, 1, 4, 6, 3).stream()
+                .map(i -> reviews.get(i).getReviewId())
+                .collect(Collectors.toList());
+
+        List<Long> filmPages = new ArrayList<>();
+        List<Long> allPages = new ArrayList<>();
+        ReviewCursor filmCursor = null;
+        ReviewCursor allCursor = null;
+        for (int page = 0; page < 4; page++) {
+            List<Review> filmPage = reviewStorage.getFilmReviews(film.getId(), 2, filmCursor);
+            List<Review> allPage = reviewStorage.getReviews(2, allCursor);
+            filmPage.forEach(review -> filmPages.add(review.getReviewId()));
+            allPage.forEach(review -> allPages.add(review.getReviewId()));
+            if (!filmPage.isEmpty()) {
+                filmCursor = ReviewCursor.parse(ReviewCursor.after(filmPage.get(filmPage.size() - 1)).toToken());
+            }
+            if (!allPage.isEmpty()) {
+                allCursor = ReviewCursor.after(allPage.get(allPage.size() - 1));
+            }
+        }
+        assertEquals(expected, filmPages);
+        assertEquals(expected, allPages);
+        assertTrue(reviewStorage.getFilmReviews(film.getId(), 2, filmCursor).isEmpty());
+    }
+
+    @Test
+    public void invalidCursor() {
+        assertThrows(ValidationException.class, () -> ReviewCursor.parse("not a cursor"));
+        assertThrows(ValidationException.class, () -> ReviewCursor.parse(
+                Base64.getUrlEncoder().encodeToString("1:x".getBytes(StandardCharsets.UTF_8))));
+    }
+}
@@ -6,10 +6,9 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.test.jdbc.JdbcTestUtils;
 import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.StorageCleaner;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -23,14 +22,13 @@ import static org.junit.jupiter.api.Assertions.*;
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class DbUserStorageTest {
 
-    private final DbUserStorage userStorage;
-    private final JdbcTemplate jdbcTemplate;
+    private final UserStorage userStorage;
+    private final StorageCleaner storageCleaner;
     private User user;
 
     @BeforeEach
     public void cleanDatabase() {
-        JdbcTestUtils.deleteFromTables(jdbcTemplate, "filmorate_users");
-        jdbcTemplate.update("ALTER TABLE filmorate_users ALTER COLUMN user_id RESTART WITH 1");
+        storageCleaner.clear();
     }
 
     public void initUser() {